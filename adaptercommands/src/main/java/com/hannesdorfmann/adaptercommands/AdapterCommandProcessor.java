@@ -18,6 +18,7 @@ package com.hannesdorfmann.adaptercommands;
 
 import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
 import com.hannesdorfmann.adaptercommands.command.AdapterCommand;
 import java.util.List;
@@ -31,6 +32,8 @@ import java.util.List;
 public class AdapterCommandProcessor {
 
   private final RecyclerView.Adapter<?> adapter;
+  private DispatchProfiler profiler;
+  private int profiledCommandCount;
 
   public AdapterCommandProcessor(@NonNull RecyclerView.Adapter<?> adapter) {
     if (adapter == null) {
@@ -50,8 +53,83 @@ public class AdapterCommandProcessor {
     if (commands == null) {
       throw new NullPointerException("commands == null");
     }
+    if (profiler == null) {
+      for (int i = 0; i < commands.size(); i++) {
+        commands.get(i).execute(adapter);
+      }
+      return;
+    }
+
+    long start = nanoTime();
     for (int i = 0; i < commands.size(); i++) {
-      commands.get(i).execute(adapter);
+      dispatch(commands.get(i));
+    }
+    batchDispatched(start);
+  }
+
+  /**
+   * Set a profiler that gets notified about every dispatched command and batch of commands. If no
+   * profiler is set (default), commands are dispatched without any measurement.
+   *
+   * @param profiler The profiler or null to disable profiling
+   * @since 1.0.5
+   */
+  @MainThread public void setProfiler(@Nullable DispatchProfiler profiler) {
+    this.profiler = profiler;
+    this.profiledCommandCount = 0;
+  }
+
+  /**
+   * @return The profiler or null
+   * @since 1.0.5
+   */
+  @Nullable public DispatchProfiler getProfiler() {
+    return profiler;
+  }
+
+  /**
+   * Executes the given command on the adapter and reports it to the profiler, if there is one.
+   * Subclasses should dispatch all commands through this method.
+   *
+   * @param command The command to execute
+   * @since 1.0.5
+   */
+  @MainThread protected final void dispatch(@NonNull AdapterCommand command) {
+    DispatchProfiler profiler = this.profiler;
+    if (profiler == null) {
+      command.execute(adapter);
+      return;
+    }
+    long start = nanoTime();
+    command.execute(adapter);
+    profiler.onCommandDispatched(command, nanoTime() - start);
+    profiledCommandCount++;
+  }
+
+  /**
+   * Reports all commands dispatched by {@link #dispatch(AdapterCommand)} since the last call of
+   * this method as one batch to the profiler, if there is one.
+   *
+   * @param startNanos The time the batch has been started, from {@link #nanoTime()}
+   * @since 1.0.5
+   */
+  @MainThread protected final void batchDispatched(long startNanos) {
+    DispatchProfiler profiler = this.profiler;
+    if (profiler == null) {
+      return;
     }
+    int count = profiledCommandCount;
+    profiledCommandCount = 0;
+    profiler.onBatchDispatched(count, nanoTime() - startNanos, adapter.hasObservers());
+  }
+
+  /**
+   * The time source used for profiling
+   *
+   * @return The current time in nano seconds
+   * @since 1.0.5
+   */
+  protected long nanoTime() {
+    return System.nanoTime();
   }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import java.util.List;
+
+/**
+ * An {@link ItemChangedDetector} that checks many pairs of items at once. Implement this if
+ * detecting changes is expensive (i.e. comparing rich models with nested lists). The {@link
+ * com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculator} passes all matching pairs of
+ * old and new items in chunks and, if an executor has been set (see {@link
+ * com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculator#setChangeDetectionExecutor(java.util.concurrent.ExecutorService,
+ * int)}), evaluates the chunks in parallel. Hence implementations must be thread safe.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public interface BulkItemChangedDetector<T> extends ItemChangedDetector<T> {
+
+  /**
+   * Determines for every pair of old and new item (same index in both lists) whether the item has
+   * been changed
+   *
+   * @param oldItems The old items
+   * @param newItems The new items, same size as oldItems
+   * @param changed Receives the result: changed[k] is true if newItems.get(k) has been changed
+   * compared to oldItems.get(k). Same size as oldItems, all elements false initially.
+   */
+  public void detectChanges(List<T> oldItems, List<T> newItems, boolean[] changed);
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+
+/**
+ * A {@link FrameClock} backed by android's {@link Choreographer}. Requires API 16.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN) public class ChoreographerFrameClock
+    implements FrameClock {
+
+  private final Choreographer choreographer;
+
+  /**
+   * Creates a new instance. Must be called from the main thread, because {@link Choreographer} is
+   * thread local.
+   */
+  @MainThread public ChoreographerFrameClock() {
+    this.choreographer = Choreographer.getInstance();
+  }
+
+  @Override public long nanoTime() {
+    return System.nanoTime();
+  }
+
+  @MainThread @Override public void postFrameCallback(@NonNull final Runnable callback) {
+    choreographer.postFrameCallback(new Choreographer.FrameCallback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        callback.run();
+      }
+    });
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import com.hannesdorfmann.adaptercommands.command.AdapterCommand;
+
+/**
+ * Gets notified by an {@link AdapterCommandProcessor} about every dispatched command and batch of
+ * commands, see {@link AdapterCommandProcessor#setProfiler(DispatchProfiler)}. All methods are
+ * called on the main thread right after dispatching, so implementations must be cheap.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ * @see HistogramDispatchProfiler
+ */
+public interface DispatchProfiler {
+
+  /**
+   * A command has been executed
+   *
+   * @param command The command
+   * @param elapsedNanos The time {@link AdapterCommand#execute(android.support.v7.widget.RecyclerView.Adapter)}
+   * took, including all observers of the adapter
+   */
+  @MainThread public void onCommandDispatched(@NonNull AdapterCommand command, long elapsedNanos);
+
+  /**
+   * A batch of commands has been executed
+   *
+   * @param commandCount The number of commands of the batch
+   * @param elapsedNanos The time the whole batch took
+   * @param hasObservers Whether the adapter had observers (i.e. is attached to a RecyclerView). If
+   * not, the commands have been dispatched to no one.
+   */
+  @MainThread public void onBatchDispatched(int commandCount, long elapsedNanos,
+      boolean hasObservers);
+}
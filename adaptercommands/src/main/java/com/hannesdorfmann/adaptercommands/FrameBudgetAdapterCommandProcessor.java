@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.RecyclerView;
+import com.hannesdorfmann.adaptercommands.command.AdapterCommand;
+import com.hannesdorfmann.adaptercommands.command.EntireDataSetChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemInsertedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemMovedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeInsertedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeRemovedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRemovedCommand;
+import java.util.List;
+
+/**
+ * A {@link AdapterCommandProcessor} that spreads the execution of a large list of {@link
+ * AdapterCommand}s over multiple frames, so that each frame only spends a given time budget on
+ * notifying the adapter.
+ *
+ * <p>
+ * When {@link #execute(List)} is called, the adapter's backing data has already been changed.
+ * Hence structural commands (insert, remove, move) can't be deferred to the next frame, because
+ * RecyclerView would run a layout pass with an adapter that is inconsistent with the notifications
+ * it has received so far. Therefore structural commands are always executed immediately. If the
+ * time budget of the current frame is exceeded while there are still structural commands left,
+ * the remaining commands are collapsed into a single {@link EntireDataSetChangedCommand}.
+ * </p>
+ *
+ * <p>
+ * Item change commands ({@link ItemChangedCommand} and {@link ItemRangeChangedCommand}) don't
+ * change the adapter's structure and are therefore deferred: they are coalesced into ranges and
+ * executed in slices on the following frames, each slice sized to the time budget. If a new list
+ * of commands is executed before all deferred changes have been dispatched, the remaining deferred
+ * changes are dispatched first.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class FrameBudgetAdapterCommandProcessor extends AdapterCommandProcessor {
+
+  /**
+   * Default time budget per frame: half of a 60 fps frame, so that there is enough time left for
+   * the layout pass
+   */
+  public static final long DEFAULT_FRAME_BUDGET_NANOS = 8000000L;
+
+  private final RecyclerView.Adapter<?> adapter;
+  private final FrameClock clock;
+  private final long frameBudgetNanos;
+  private final PendingChangeRanges pendingChanges = new PendingChangeRanges();
+  private boolean frameCallbackPosted;
+
+  private final Runnable frameCallback = new Runnable() {
+    @Override public void run() {
+      frameCallbackPosted = false;
+      long frameStart = clock.nanoTime();
+      dispatchPendingChanges(frameStart, false);
+      batchDispatched(frameStart);
+    }
+  };
+
+  /**
+   * Creates a new instance driven by a {@link ChoreographerFrameClock} with {@link
+   * #DEFAULT_FRAME_BUDGET_NANOS}. Requires API 16.
+   *
+   * @param adapter The adapter
+   */
+  @TargetApi(Build.VERSION_CODES.JELLY_BEAN) @MainThread
+  public FrameBudgetAdapterCommandProcessor(@NonNull RecyclerView.Adapter<?> adapter) {
+    this(adapter, new ChoreographerFrameClock(), DEFAULT_FRAME_BUDGET_NANOS);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param adapter The adapter
+   * @param clock The clock that drives this processor
+   * @param frameBudgetNanos The time in nano seconds that can be spent per frame to dispatch
+   * commands
+   */
+  public FrameBudgetAdapterCommandProcessor(@NonNull RecyclerView.Adapter<?> adapter,
+      @NonNull FrameClock clock, long frameBudgetNanos) {
+    super(adapter);
+    if (clock == null) {
+      throw new NullPointerException("clock == null");
+    }
+    if (frameBudgetNanos <= 0) {
+      throw new IllegalArgumentException("frameBudgetNanos <= 0");
+    }
+    this.adapter = adapter;
+    this.clock = clock;
+    this.frameBudgetNanos = frameBudgetNanos;
+  }
+
+  /**
+   * Executes all structural commands immediately and defers the item change commands to the
+   * following frames.
+   *
+   * @param commands The comands to execute
+   */
+  @MainThread @Override public void execute(@NonNull List<AdapterCommand> commands) {
+    if (commands == null) {
+      throw new NullPointerException("commands == null");
+    }
+
+    long start = clock.nanoTime();
+
+    // Positions of deferred changes are only valid until the next structural change
+    dispatchAllPendingChanges();
+
+    for (int i = 0; i < commands.size(); i++) {
+      AdapterCommand command = commands.get(i);
+
+      if (command instanceof ItemChangedCommand) {
+        pendingChanges.add(((ItemChangedCommand) command).getPosition(), 1);
+        continue;
+      }
+
+      if (command instanceof ItemRangeChangedCommand) {
+        ItemRangeChangedCommand c = (ItemRangeChangedCommand) command;
+        pendingChanges.add(c.getStartPosition(), c.getItemCount());
+        continue;
+      }
+
+      if (command instanceof EntireDataSetChangedCommand) {
+        pendingChanges.clear();
+        dispatch(command);
+        continue;
+      }
+
+      if (clock.nanoTime() - start > frameBudgetNanos) {
+        // Budget exceeded, but structural commands can't be deferred safely
+        pendingChanges.clear();
+        dispatch(new EntireDataSetChangedCommand());
+        batchDispatched(start);
+        return;
+      }
+
+      if (command instanceof ItemInsertedCommand) {
+        pendingChanges.inserted(((ItemInsertedCommand) command).getPosition(), 1);
+      } else if (command instanceof ItemRangeInsertedCommand) {
+        ItemRangeInsertedCommand c = (ItemRangeInsertedCommand) command;
+        pendingChanges.inserted(c.getStartPosition(), c.getItemCount());
+      } else if (command instanceof ItemRemovedCommand) {
+        pendingChanges.removed(((ItemRemovedCommand) command).getPosition(), 1);
+      } else if (command instanceof ItemRangeRemovedCommand) {
+        ItemRangeRemovedCommand c = (ItemRangeRemovedCommand) command;
+        pendingChanges.removed(c.getStartPosition(), c.getItemCount());
+      } else if (command instanceof ItemMovedCommand) {
+        ItemMovedCommand c = (ItemMovedCommand) command;
+        pendingChanges.moved(c.getFromPosition(), c.getToPosition());
+      } else {
+        // Unknown command, we can't transform deferred changes
+        dispatchAllPendingChanges();
+      }
+
+      dispatch(command);
+    }
+
+    pendingChanges.normalize();
+    dispatchPendingChanges(start, true);
+    batchDispatched(start);
+  }
+
+  /**
+   * Dispatches all deferred item change commands immediately
+   */
+  @MainThread public void flush() {
+    if (pendingChanges.isEmpty()) {
+      return;
+    }
+    long start = clock.nanoTime();
+    dispatchAllPendingChanges();
+    batchDispatched(start);
+  }
+
+  private void dispatchAllPendingChanges() {
+    if (pendingChanges.isEmpty()) {
+      return;
+    }
+    pendingChanges.normalize();
+    while (!pendingChanges.isEmpty()) {
+      dispatchNextPendingChange();
+    }
+  }
+
+  /**
+   * @return true if there are item change commands that haven't been dispatched yet
+   */
+  @MainThread public boolean hasPendingCommands() {
+    return !pendingChanges.isEmpty();
+  }
+
+  /**
+   * Dispatches deferred changes until the frame budget is exceeded
+   *
+   * @param frameStart The time the current frame has started
+   * @param budgetMayBeExceeded true if the budget might already be exceeded by structural
+   * commands
+   */
+  private void dispatchPendingChanges(long frameStart, boolean budgetMayBeExceeded) {
+    boolean dispatchedOne = budgetMayBeExceeded;
+    while (!pendingChanges.isEmpty()) {
+      if (dispatchedOne && clock.nanoTime() - frameStart >= frameBudgetNanos) {
+        break;
+      }
+      dispatchNextPendingChange();
+      dispatchedOne = true; // Ensures progress on every frame
+    }
+
+    if (!pendingChanges.isEmpty() && !frameCallbackPosted) {
+      frameCallbackPosted = true;
+      clock.postFrameCallback(frameCallback);
+    }
+  }
+
+  private void dispatchNextPendingChange() {
+    int start = pendingChanges.nextStart();
+    int count = pendingChanges.nextCount();
+    pendingChanges.poll();
+    if (getProfiler() != null) {
+      dispatch(count == 1 ? new ItemChangedCommand(start)
+          : new ItemRangeChangedCommand(start, count));
+    } else if (count == 1) {
+      adapter.notifyItemChanged(start);
+    } else {
+      adapter.notifyItemRangeChanged(start, count);
+    }
+  }
+
+  @Override protected long nanoTime() {
+    return clock.nanoTime();
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+/**
+ * A clock that drives {@link FrameBudgetAdapterCommandProcessor}. It tells the current time and
+ * runs callbacks on the next frame.
+ *
+ * @author Hannes Dorfmann
+ * @see ChoreographerFrameClock
+ * @see ManualFrameClock
+ * @since 1.0.5
+ */
+public interface FrameClock {
+
+  /**
+   * @return The current time in nano seconds. Only the difference between two values is
+   * meaningful.
+   */
+  public long nanoTime();
+
+  /**
+   * Runs the given callback (on the main thread) when the next frame starts
+   *
+   * @param callback The callback to run
+   */
+  @MainThread public void postFrameCallback(@NonNull Runnable callback);
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.hannesdorfmann.adaptercommands.command.AdapterCommand;
+import com.hannesdorfmann.adaptercommands.command.EntireDataSetChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeInsertedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeRemovedCommand;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DispatchProfiler} that records dispatch times, command counts and range sizes per
+ * command type into {@link Log2Histogram}s. Recording doesn't allocate except for the first
+ * command of each type.
+ *
+ * <pre>
+ * HistogramDispatchProfiler profiler = new HistogramDispatchProfiler();
+ * processor.setProfiler(profiler);
+ * ...
+ * profiler.dump(System.out);
+ * </pre>
+ *
+ * <p>
+ * <b>This class is not thread safe!</b> It must only be accessed from the main thread.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class HistogramDispatchProfiler implements DispatchProfiler {
+
+  /**
+   * The duration of a frame at 60 fps
+   */
+  public static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+  /**
+   * The statistics of one command type
+   */
+  public static final class CommandTypeStatistics {
+
+    private final Class<? extends AdapterCommand> commandType;
+    private final Log2Histogram dispatchNanos = new Log2Histogram();
+    private final Log2Histogram rangeSizes = new Log2Histogram();
+
+    CommandTypeStatistics(Class<? extends AdapterCommand> commandType) {
+      this.commandType = commandType;
+    }
+
+    /**
+     * @return The command type
+     */
+    @NonNull public Class<? extends AdapterCommand> getCommandType() {
+      return commandType;
+    }
+
+    /**
+     * @return The number of dispatched commands of this type
+     */
+    public long getCount() {
+      return dispatchNanos.getCount();
+    }
+
+    /**
+     * @return The dispatch time of the commands in nano seconds
+     */
+    @NonNull public Log2Histogram getDispatchNanos() {
+      return dispatchNanos;
+    }
+
+    /**
+     * @return The number of items affected by each command. {@link EntireDataSetChangedCommand}s
+     * are not recorded.
+     */
+    @NonNull public Log2Histogram getRangeSizes() {
+      return rangeSizes;
+    }
+  }
+
+  private final long frameIntervalNanos;
+  private final Map<Class<? extends AdapterCommand>, CommandTypeStatistics> commandTypes =
+      new LinkedHashMap<>();
+  private final Log2Histogram batchNanos = new Log2Histogram();
+  private final Log2Histogram batchSizes = new Log2Histogram();
+  private long batchesExceedingFrame;
+  private long batchesWithoutObservers;
+
+  // Cache for the common case of subsequent commands of the same type
+  private CommandTypeStatistics lastCommandType;
+
+  public HistogramDispatchProfiler() {
+    this(DEFAULT_FRAME_INTERVAL_NANOS);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param frameIntervalNanos The duration of a frame. Batches taking longer are counted by {@link
+   * #getBatchesExceedingFrame()}.
+   */
+  public HistogramDispatchProfiler(long frameIntervalNanos) {
+    if (frameIntervalNanos <= 0) {
+      throw new IllegalArgumentException("frameIntervalNanos <= 0");
+    }
+    this.frameIntervalNanos = frameIntervalNanos;
+  }
+
+  @Override public void onCommandDispatched(@NonNull AdapterCommand command, long elapsedNanos) {
+    Class<? extends AdapterCommand> type = command.getClass();
+    CommandTypeStatistics stats = lastCommandType;
+    if (stats == null || stats.commandType != type) {
+      stats = commandTypes.get(type);
+      if (stats == null) {
+        stats = new CommandTypeStatistics(type);
+        commandTypes.put(type, stats);
+      }
+      lastCommandType = stats;
+    }
+
+    stats.dispatchNanos.record(elapsedNanos);
+    if (!(command instanceof EntireDataSetChangedCommand)) {
+      stats.rangeSizes.record(rangeSize(command));
+    }
+  }
+
+  @Override
+  public void onBatchDispatched(int commandCount, long elapsedNanos, boolean hasObservers) {
+    batchNanos.record(elapsedNanos);
+    batchSizes.record(commandCount);
+    if (elapsedNanos > frameIntervalNanos) {
+      batchesExceedingFrame++;
+    }
+    if (!hasObservers) {
+      batchesWithoutObservers++;
+    }
+  }
+
+  /**
+   * Get the number of items affected by a command
+   */
+  static int rangeSize(AdapterCommand command) {
+    if (command instanceof ItemRangeInsertedCommand) {
+      return ((ItemRangeInsertedCommand) command).getItemCount();
+    }
+    if (command instanceof ItemRangeRemovedCommand) {
+      return ((ItemRangeRemovedCommand) command).getItemCount();
+    }
+    if (command instanceof ItemRangeChangedCommand) {
+      return ((ItemRangeChangedCommand) command).getItemCount();
+    }
+    return 1;
+  }
+
+  /**
+   * Get the statistics of a command type
+   *
+   * @param commandType The command type like {@code ItemInsertedCommand.class}
+   * @return The statistics or null if no command of this type has been dispatched
+   */
+  @Nullable public CommandTypeStatistics getCommandTypeStatistics(
+      @NonNull Class<? extends AdapterCommand> commandType) {
+    return commandTypes.get(commandType);
+  }
+
+  /**
+   * @return The statistics of all dispatched command types, in order of their first dispatch
+   */
+  @NonNull public List<CommandTypeStatistics> getCommandTypeStatistics() {
+    return new ArrayList<>(commandTypes.values());
+  }
+
+  /**
+   * @return The dispatch time of the batches in nano seconds
+   */
+  @NonNull public Log2Histogram getBatchNanos() {
+    return batchNanos;
+  }
+
+  /**
+   * @return The number of commands per batch
+   */
+  @NonNull public Log2Histogram getBatchSizes() {
+    return batchSizes;
+  }
+
+  /**
+   * @return The number of batches that took longer than a frame
+   */
+  public long getBatchesExceedingFrame() {
+    return batchesExceedingFrame;
+  }
+
+  /**
+   * @return The number of batches dispatched while the adapter had no observers
+   */
+  public long getBatchesWithoutObservers() {
+    return batchesWithoutObservers;
+  }
+
+  /**
+   * Removes all recorded values
+   */
+  @MainThread public void clear() {
+    commandTypes.clear();
+    lastCommandType = null;
+    batchNanos.clear();
+    batchSizes.clear();
+    batchesExceedingFrame = 0;
+    batchesWithoutObservers = 0;
+  }
+
+  /**
+   * Writes a human readable summary, one line per histogram
+   *
+   * @param out Where to write to
+   */
+  @MainThread public void dump(@NonNull Appendable out) throws IOException {
+    out.append("batches [ns]: ");
+    batchNanos.dump(out);
+    out.append("\nbatch sizes: ");
+    batchSizes.dump(out);
+    out.append("\nbatches exceeding frame: ")
+        .append(String.valueOf(batchesExceedingFrame))
+        .append(", without observers: ")
+        .append(String.valueOf(batchesWithoutObservers))
+        .append('\n');
+    for (CommandTypeStatistics stats : commandTypes.values()) {
+      out.append(stats.commandType.getSimpleName()).append(" [ns]: ");
+      stats.dispatchNanos.dump(out);
+      out.append('\n');
+      if (stats.rangeSizes.getCount() > 0) {
+        out.append(stats.commandType.getSimpleName()).append(" range sizes: ");
+        stats.rangeSizes.dump(out);
+        out.append('\n');
+      }
+    }
+  }
+}
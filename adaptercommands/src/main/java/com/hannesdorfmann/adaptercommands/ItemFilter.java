@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+/**
+ * Decides whether an item is part of a filtered list
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public interface ItemFilter<T> {
+
+  /**
+   * @param item The item
+   * @return true if the item should be shown, otherwise false
+   */
+  public boolean accept(T item);
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+/**
+ * Calculates a 64 bit fingerprint of an item. Two items that are equal (see {@link
+ * Object#equals(Object)}) and have not been changed (see {@link ItemChangedDetector}) must have
+ * the same fingerprint. Whenever the content of an item changes, the fingerprint should change too.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public interface ItemFingerprinter<T> {
+
+  /**
+   * Calculates the fingerprint of the given item
+   *
+   * @param item The item
+   * @return the fingerprint of the item (identity and content)
+   */
+  public long fingerprint(T item);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A histogram of non negative values with one bucket per power of two: bucket k counts the values
+ * in [2^(k-1), 2^k), bucket 0 counts zeros. Recording a value is a couple of arithmetic operations
+ * without allocations, percentiles are precise within a factor of two.
+ *
+ * <p>
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class Log2Histogram {
+
+  private final long[] buckets = new long[65];
+  private long count;
+  private long sum;
+  private long max;
+
+  /**
+   * Records a value, negative values are recorded as 0
+   */
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    buckets[64 - Long.numberOfLeadingZeros(value)]++;
+    count++;
+    sum += value;
+    if (value > max) {
+      max = value;
+    }
+  }
+
+  /**
+   * @return The number of recorded values
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return The sum of all recorded values
+   */
+  public long getSum() {
+    return sum;
+  }
+
+  /**
+   * @return The largest recorded value
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * @return The average of the recorded values or 0 if there are none
+   */
+  public double getMean() {
+    return count == 0 ? 0 : (double) sum / count;
+  }
+
+  /**
+   * Get the number of values in the given bucket
+   *
+   * @param bucket The bucket, 0 to 64
+   * @return The count
+   */
+  public long getBucketCount(int bucket) {
+    return buckets[bucket];
+  }
+
+  /**
+   * Get an upper bound of the given percentile: the exclusive upper bound of the bucket that
+   * contains the percentile (but not more than the max. value)
+   *
+   * @param percentile The percentile, 0 to 100
+   * @return The upper bound or 0 if there are no values
+   */
+  public long getPercentile(double percentile) {
+    if (percentile < 0 || percentile > 100) {
+      throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(percentile / 100 * count);
+    long seen = 0;
+    for (int bucket = 0; bucket < buckets.length; bucket++) {
+      seen += buckets[bucket];
+      if (seen >= rank && seen > 0) {
+        long upper = bucket == 0 ? 0 : (bucket >= 63 ? Long.MAX_VALUE : 1L << bucket);
+        return Math.min(upper, max);
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Removes all values
+   */
+  public void clear() {
+    Arrays.fill(buckets, 0);
+    count = 0;
+    sum = 0;
+    max = 0;
+  }
+
+  /**
+   * Writes count, mean, percentiles (p50, p90, p99) and max. in a single line
+   */
+  public void dump(Appendable out) throws IOException {
+    out.append("count=").append(String.valueOf(count))
+        .append(" mean=").append(String.valueOf(Math.round(getMean())))
+        .append(" p50=").append(String.valueOf(getPercentile(50)))
+        .append(" p90=").append(String.valueOf(getPercentile(90)))
+        .append(" p99=").append(String.valueOf(getPercentile(99)))
+        .append(" max=").append(String.valueOf(max));
+  }
+
+  @Override public String toString() {
+    StringBuilder builder = new StringBuilder("Log2Histogram{");
+    try {
+      dump(builder);
+    } catch (IOException e) {
+      // StringBuilder doesn't throw
+    }
+    return builder.append('}').toString();
+  }
+}
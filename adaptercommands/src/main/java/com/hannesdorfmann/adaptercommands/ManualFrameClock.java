@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link FrameClock} that is driven by hand: time only advances by calling {@link
+ * #advance(long)} and frames only start by calling {@link #doFrame()}. Useful to run a {@link
+ * FrameBudgetAdapterCommandProcessor} on the JVM (i.e. in unit tests).
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class ManualFrameClock implements FrameClock {
+
+  private long nanoTime;
+  private List<Runnable> callbacks = new ArrayList<>();
+
+  @Override public long nanoTime() {
+    return nanoTime;
+  }
+
+  @Override public void postFrameCallback(@NonNull Runnable callback) {
+    if (callback == null) {
+      throw new NullPointerException("callback == null");
+    }
+    callbacks.add(callback);
+  }
+
+  /**
+   * Advances the time of this clock
+   *
+   * @param nanos the nano seconds to advance
+   */
+  public void advance(long nanos) {
+    if (nanos < 0) {
+      throw new IllegalArgumentException("nanos < 0");
+    }
+    nanoTime += nanos;
+  }
+
+  /**
+   * Starts a new frame by running all callbacks posted so far. Callbacks posted while running
+   * will run on the next frame.
+   *
+   * @return true if at least one callback has been run, otherwise false
+   */
+  public boolean doFrame() {
+    if (callbacks.isEmpty()) {
+      return false;
+    }
+    List<Runnable> toRun = callbacks;
+    callbacks = new ArrayList<>();
+    for (int i = 0; i < toRun.size(); i++) {
+      toRun.get(i).run();
+    }
+    return true;
+  }
+
+  /**
+   * @return true if callbacks are waiting for the next frame
+   */
+  public boolean hasFrameCallbacks() {
+    return !callbacks.isEmpty();
+  }
+}
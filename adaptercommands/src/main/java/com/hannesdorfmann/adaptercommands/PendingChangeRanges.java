@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import java.util.Arrays;
+
+/**
+ * Position ranges of item change notifications that have not been dispatched yet. Whenever a
+ * structural change (insert, remove, move) is dispatched, the pending ranges are transformed so
+ * that they still point to the same items.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+class PendingChangeRanges {
+
+  private int[] starts = new int[16];
+  private int[] counts = new int[16];
+  private int size;
+  private int next;
+
+  boolean isEmpty() {
+    return next == size;
+  }
+
+  void clear() {
+    size = 0;
+    next = 0;
+  }
+
+  void add(int start, int count) {
+    if (size == starts.length) {
+      int capacity = size * 2;
+      starts = Arrays.copyOf(starts, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+    }
+    starts[size] = start;
+    counts[size] = count;
+    size++;
+  }
+
+  /**
+   * Items have been inserted
+   */
+  void inserted(int position, int itemCount) {
+    int oldSize = size;
+    for (int i = next; i < oldSize; i++) {
+      int start = starts[i];
+      int end = start + counts[i];
+      if (start >= position) {
+        starts[i] = start + itemCount;
+      } else if (end > position) {
+        // Split range: [start, position) stays, [position, end) is shifted
+        counts[i] = position - start;
+        add(position + itemCount, end - position);
+      }
+    }
+  }
+
+  /**
+   * Items have been removed
+   */
+  void removed(int position, int itemCount) {
+    int removedEnd = position + itemCount;
+    int oldSize = size;
+    for (int i = next; i < oldSize; i++) {
+      int start = starts[i];
+      int end = start + counts[i];
+      if (start >= removedEnd) {
+        starts[i] = start - itemCount;
+      } else if (end > position) {
+        // overlaps with removed range
+        int before = Math.max(0, position - start);
+        int after = Math.max(0, end - removedEnd);
+        if (before > 0) {
+          counts[i] = before;
+          if (after > 0) {
+            add(position, after);
+          }
+        } else {
+          starts[i] = position;
+          counts[i] = after; // might be 0, skipped while dispatching
+        }
+      }
+    }
+  }
+
+  /**
+   * An item has been moved
+   */
+  void moved(int from, int to) {
+    if (from == to) {
+      return;
+    }
+    // Only positions between from and to (inclusive) are affected: from becomes to, the positions
+    // in between are shifted by one towards from
+    int low = Math.min(from, to);
+    int high = Math.max(from, to);
+    int shift = from < to ? -1 : 1;
+    int shiftedStart = from < to ? from + 1 : to;
+    int shiftedEnd = from < to ? to + 1 : from;
+    int oldSize = size;
+    for (int i = next; i < oldSize; i++) {
+      int start = starts[i];
+      int end = start + counts[i];
+      if (end <= low || start > high) {
+        continue; // not affected
+      }
+
+      // Head before the affected positions stays in place
+      counts[i] = Math.max(0, Math.min(end, low) - start);
+      if (start <= from && from < end) {
+        add(to, 1);
+      }
+      int shiftedFrom = Math.max(start, shiftedStart);
+      int shiftedTo = Math.min(end, shiftedEnd);
+      if (shiftedTo > shiftedFrom) {
+        add(shiftedFrom + shift, shiftedTo - shiftedFrom);
+      }
+      if (end > high + 1) {
+        add(Math.max(start, high + 1), end - Math.max(start, high + 1));
+      }
+    }
+  }
+
+  /**
+   * Sorts the pending ranges and merges overlapping or adjacent ranges
+   */
+  void normalize() {
+    int count = 0;
+    long[] packed = new long[size - next];
+    for (int i = next; i < size; i++) {
+      if (counts[i] > 0) {
+        packed[count++] = ((long) starts[i] << 32) | counts[i];
+      }
+    }
+    Arrays.sort(packed, 0, count);
+
+    size = 0;
+    next = 0;
+    for (int i = 0; i < count; i++) {
+      int start = (int) (packed[i] >>> 32);
+      int end = start + (int) packed[i];
+      if (size > 0 && start <= starts[size - 1] + counts[size - 1]) {
+        counts[size - 1] = Math.max(counts[size - 1], end - starts[size - 1]);
+      } else {
+        add(start, end - start);
+      }
+    }
+  }
+
+  /**
+   * @return the start of the next pending range. Only valid if not {@link #isEmpty()}
+   */
+  int nextStart() {
+    return starts[next];
+  }
+
+  /**
+   * @return the item count of the next pending range. Only valid if not {@link #isEmpty()}
+   */
+  int nextCount() {
+    return counts[next];
+  }
+
+  /**
+   * Removes the next pending range
+   */
+  void poll() {
+    next++;
+    if (next == size) {
+      clear();
+    }
+  }
+}
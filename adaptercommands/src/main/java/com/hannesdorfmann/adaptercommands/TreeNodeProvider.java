@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import java.util.List;
+
+/**
+ * Describes the nodes of a tree that is displayed as flattened list: every root node is a row,
+ * followed by the rows of its children if (and only if) the node is expanded.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public interface TreeNodeProvider<N> {
+
+  /**
+   * @param node The node
+   * @return The id that identifies the node among its siblings
+   */
+  public long getId(N node);
+
+  /**
+   * Get the version of a node. The version must change whenever anything in the subtree of this
+   * node changes: the node itself, children added, removed or changed, and expanding or collapsing
+   * any node of the subtree. A subtree with unchanged id and version is skipped entirely.
+   *
+   * @param node The node
+   * @return The version of the node's subtree
+   */
+  public long getVersion(N node);
+
+  /**
+   * @param node The node
+   * @return true if the children of the node are displayed
+   */
+  public boolean isExpanded(N node);
+
+  /**
+   * @param node The node
+   * @return The children of the node. Must not be null, use an empty list instead.
+   */
+  public List<N> getChildren(N node);
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A {@link DiffEngine} that picks the engine that is expected to be the fastest for every diff:
+ * <ul>
+ * <li>{@link SortedMergeDiffEngine} if a {@link Comparator} is given and both lists are sorted
+ * </li>
+ * <li>{@link LcsDiffEngine} for small lists and lists with many equal items</li>
+ * <li>{@link HuntSzymanskiDiffEngine} for large lists with few matching pairs, i.e. few edits
+ * of unique items or nearly the whole list replaced</li>
+ * </ul>
+ * The decision is based on cheap signals: the size of the range that is left after the calculator
+ * has trimmed the common prefix and suffix, and the match rate of a sample of new items. The
+ * estimated cost is multiplied with the measured time per cost unit of each engine, which is kept
+ * as an exponentially weighted moving average. So the engine learns the characteristics of the
+ * lists of the screen it is used for. Hence, use one instance per {@link DiffCommandsCalculator}.
+ * The selected engine is reported by {@link DiffStatistics#getLastEngine()}.
+ *
+ * <p>
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class AutoDiffEngine<T> implements DiffEngine<T> {
+
+  /**
+   * Lists with not more than this number of compared pairs always use the {@link LcsDiffEngine}
+   */
+  static final long SMALL_TABLE_SIZE = 4096;
+
+  /**
+   * The {@link LcsDiffEngine} is never used for larger tables to limit memory (4 bytes per cell)
+   */
+  static final long MAX_TABLE_SIZE = 1 << 22;
+
+  static final int SAMPLE_SIZE = 32;
+
+  private static final double EWMA_WEIGHT = 0.2;
+
+  private final LcsDiffEngine<T> lcs = new LcsDiffEngine<>();
+  private final HuntSzymanskiDiffEngine<T> huntSzymanski = new HuntSzymanskiDiffEngine<>();
+  private final SortedMergeDiffEngine<T> sortedMerge;
+  private final Comparator<? super T> comparator;
+
+  // Nano seconds per cost unit, initialized with rough estimates
+  private double lcsNanosPerUnit = 2;
+  private double huntSzymanskiNanosPerUnit = 15;
+
+  private final long[] sampleHashes = new long[SAMPLE_SIZE];
+  private final int[] sampleCounts = new int[SAMPLE_SIZE];
+
+  private DiffEngine<T> lastEngine;
+
+  /**
+   * Creates a new instance that selects between {@link LcsDiffEngine} and {@link
+   * HuntSzymanskiDiffEngine}
+   */
+  public AutoDiffEngine() {
+    this(null);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param comparator If not null, the {@link SortedMergeDiffEngine} is used whenever both lists are
+   * sorted by this comparator
+   */
+  public AutoDiffEngine(@Nullable Comparator<? super T> comparator) {
+    this.comparator = comparator;
+    this.sortedMerge = comparator == null ? null : new SortedMergeDiffEngine<T>(comparator);
+  }
+
+  @Override public void computeMatches(@NonNull DiffInput<T> input, int oldStart, int oldEnd,
+      int newStart, int newEnd, @NonNull int[] oldToNew) {
+
+    int oldCount = oldEnd - oldStart;
+    int newCount = newEnd - newStart;
+    long tableSize = (long) (oldCount + 1) * (newCount + 1);
+
+    if (sortedMerge != null && input.hasOldItems() && isSorted(input, oldStart, oldEnd, newStart,
+        newEnd)) {
+      lastEngine = sortedMerge;
+      sortedMerge.computeMatches(input, oldStart, oldEnd, newStart, newEnd, oldToNew);
+      return;
+    }
+
+    if (tableSize <= SMALL_TABLE_SIZE) {
+      lastEngine = lcs;
+      lcs.computeMatches(input, oldStart, oldEnd, newStart, newEnd, oldToNew);
+      return;
+    }
+
+    double lcsUnits = tableSize;
+    double huntSzymanskiUnits = huntSzymanskiUnits(input, oldStart, oldEnd, newStart, newEnd);
+
+    boolean useLcs = tableSize <= MAX_TABLE_SIZE
+        && lcsUnits * lcsNanosPerUnit < huntSzymanskiUnits * huntSzymanskiNanosPerUnit;
+
+    long start = System.nanoTime();
+    if (useLcs) {
+      lastEngine = lcs;
+      lcs.computeMatches(input, oldStart, oldEnd, newStart, newEnd, oldToNew);
+      lcsNanosPerUnit = average(lcsNanosPerUnit, (System.nanoTime() - start) / lcsUnits);
+    } else {
+      lastEngine = huntSzymanski;
+      huntSzymanski.computeMatches(input, oldStart, oldEnd, newStart, newEnd, oldToNew);
+      huntSzymanskiNanosPerUnit =
+          average(huntSzymanskiNanosPerUnit, (System.nanoTime() - start) / huntSzymanskiUnits);
+    }
+  }
+
+  /**
+   * @return The engine that has been selected by the last {@link #computeMatches(DiffInput, int,
+   * int, int, int, int[])} call or null if it hasn't been called yet
+   */
+  @Nullable public DiffEngine<T> getLastSelectedEngine() {
+    return lastEngine;
+  }
+
+  private static double average(double average, double value) {
+    return average + EWMA_WEIGHT * (value - average);
+  }
+
+  /**
+   * Estimates the cost of the {@link HuntSzymanskiDiffEngine}: (r + n) log n where r is the number
+   * of matching pairs. r is extrapolated from the number of old items matching a sample of new
+   * items. This costs a single pass over the old items.
+   */
+  private double huntSzymanskiUnits(DiffInput<T> input, int oldStart, int oldEnd, int newStart,
+      int newEnd) {
+    int oldCount = oldEnd - oldStart;
+    int newCount = newEnd - newStart;
+
+    int samples = Math.min(SAMPLE_SIZE, newCount);
+    for (int s = 0; s < samples; s++) {
+      sampleHashes[s] = input.newHash(newStart + (int) ((long) s * newCount / samples));
+    }
+    Arrays.sort(sampleHashes, 0, samples);
+    Arrays.fill(sampleCounts, 0, samples, 0);
+
+    for (int i = oldStart; i < oldEnd; i++) {
+      int s = Arrays.binarySearch(sampleHashes, 0, samples, input.oldHash(i));
+      if (s >= 0) {
+        sampleCounts[s]++;
+      }
+    }
+
+    // Sampled hashes may occur multiple times, binarySearch() only found one of them
+    long matches = 0;
+    for (int s = 0; s < samples; s++) {
+      int count = sampleCounts[s];
+      for (int t = s - 1; count == 0 && t >= 0 && sampleHashes[t] == sampleHashes[s]; t--) {
+        count = sampleCounts[t];
+      }
+      for (int t = s + 1; count == 0 && t < samples && sampleHashes[t] == sampleHashes[s]; t++) {
+        count = sampleCounts[t];
+      }
+      matches += count;
+    }
+
+    double pairs = (double) matches * newCount / samples;
+    double log = 32 - Integer.numberOfLeadingZeros(oldCount);
+    return (pairs + oldCount + newCount) * log;
+  }
+
+  private boolean isSorted(DiffInput<T> input, int oldStart, int oldEnd, int newStart,
+      int newEnd) {
+    for (int i = oldStart + 1; i < oldEnd; i++) {
+      if (comparator.compare(input.getOldItem(i - 1), input.getOldItem(i)) > 0) {
+        return false;
+      }
+    }
+    for (int j = newStart + 1; j < newEnd; j++) {
+      if (comparator.compare(input.getNewItem(j - 1), input.getNewItem(j)) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many diffs (pairs of {@link DiffCommandsCalculator} and new list) on an {@link
+ * ExecutorService}, i.e. to precompute the diffs of many users on a server.
+ *
+ * <ul>
+ * <li>At most maxParallelism diffs run at the same time. The other ones wait in a queue of this
+ * class, so the threads of the executor are never blocked.</li>
+ * <li>Diffs of the same calculator never run concurrently and run in the order they have been
+ * submitted, so plain (not thread safe) calculators can be used.</li>
+ * <li>If a diff runs longer than the timeout, its future completes with a single {@link
+ * EntireDataSetChangedCommand}. Diffs can't be interrupted, so the calculation still runs to the
+ * end and the calculator's snapshot is the new list afterwards, which is consistent with a
+ * reload of the whole data set.</li>
+ * </ul>
+ *
+ * <p>
+ * Results are available as {@link Future}s in the order of submission or, as they complete, via
+ * a {@link Listener}. On JDK 21 and later {@link #newPerTaskExecutor()} runs each diff on a
+ * virtual thread.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class BulkDiffExecutor {
+
+  /**
+   * A calculator and the new list to diff
+   *
+   * @param <T> The type of the items
+   */
+  public static final class Task<T> {
+    final DiffCommandsCalculator<T> calculator;
+    final List<T> newList;
+
+    public Task(@NonNull DiffCommandsCalculator<T> calculator, @NonNull List<T> newList) {
+      if (calculator == null) {
+        throw new NullPointerException("calculator == null");
+      }
+      if (newList == null) {
+        throw new NullPointerException("newList == null");
+      }
+      this.calculator = calculator;
+      this.newList = newList;
+    }
+
+    public DiffCommandsCalculator<T> getCalculator() {
+      return calculator;
+    }
+
+    public List<T> getNewList() {
+      return newList;
+    }
+  }
+
+  /**
+   * Gets notified whenever a diff has been completed. The methods are called on the thread that
+   * has calculated the diff (or on the timeout thread).
+   *
+   * @param <T> The type of the items
+   */
+  public interface Listener<T> {
+
+    /**
+     * The diff has been completed
+     */
+    void onDiffCompleted(@NonNull Task<T> task, @NonNull List<AdapterCommand> commands);
+
+    /**
+     * The diff has thrown an exception
+     */
+    void onDiffFailed(@NonNull Task<T> task, @NonNull Throwable error);
+  }
+
+  private final ExecutorService executor;
+  private final int maxParallelism;
+  private final long timeoutNanos;
+  private final ScheduledExecutorService timeoutScheduler;
+
+  // Guarded by queue
+  private final LinkedList<DiffFuture<?>> queue = new LinkedList<>();
+  private final Set<DiffCommandsCalculator<?>> runningCalculators =
+      Collections.newSetFromMap(new IdentityHashMap<DiffCommandsCalculator<?>, Boolean>());
+  private int running;
+
+  /**
+   * Creates a new instance without timeout
+   *
+   * @param executor The executor to run the diffs on
+   * @param maxParallelism The max. number of diffs running at the same time
+   */
+  public BulkDiffExecutor(@NonNull ExecutorService executor, int maxParallelism) {
+    this(executor, maxParallelism, 0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param executor The executor to run the diffs on
+   * @param maxParallelism The max. number of diffs running at the same time
+   * @param timeout The max. time a diff may run, 0 for no timeout. Call {@link #shutdown()} to
+   * stop the thread that handles timeouts.
+   * @param unit The unit of timeout
+   */
+  public BulkDiffExecutor(@NonNull ExecutorService executor, int maxParallelism, long timeout,
+      @NonNull TimeUnit unit) {
+    if (executor == null) {
+      throw new NullPointerException("executor == null");
+    }
+    if (unit == null) {
+      throw new NullPointerException("unit == null");
+    }
+    if (maxParallelism <= 0) {
+      throw new IllegalArgumentException("maxParallelism <= 0");
+    }
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout < 0");
+    }
+
+    this.executor = executor;
+    this.maxParallelism = maxParallelism;
+    this.timeoutNanos = unit.toNanos(timeout);
+    this.timeoutScheduler = timeout == 0 ? null : newTimeoutScheduler();
+  }
+
+  /**
+   * Creates an executor that starts a new thread per task: a virtual thread on JDK 21 and later,
+   * otherwise a cached thread pool is returned.
+   */
+  @NonNull public static ExecutorService newPerTaskExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (Exception e) {
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  /**
+   * Submits a single diff
+   *
+   * @param calculator The calculator
+   * @param newList The new list
+   * @return The future of the commands
+   */
+  @NonNull public <T> Future<List<AdapterCommand>> submit(
+      @NonNull DiffCommandsCalculator<T> calculator, @NonNull List<T> newList) {
+    return submit(new Task<>(calculator, newList), null);
+  }
+
+  /**
+   * Submits all diffs
+   *
+   * @param tasks The diffs
+   * @return The futures of the commands in the order of the tasks
+   */
+  @NonNull public <T> List<Future<List<AdapterCommand>>> diffAll(@NonNull List<Task<T>> tasks) {
+    return diffAll(tasks, null);
+  }
+
+  /**
+   * Submits all diffs
+   *
+   * @param tasks The diffs
+   * @param listener Gets notified in order of completion
+   * @return The futures of the commands in the order of the tasks
+   */
+  @NonNull public <T> List<Future<List<AdapterCommand>>> diffAll(@NonNull List<Task<T>> tasks,
+      @Nullable Listener<T> listener) {
+    if (tasks == null) {
+      throw new NullPointerException("tasks == null");
+    }
+
+    List<Future<List<AdapterCommand>>> futures = new ArrayList<>(tasks.size());
+    for (int i = 0; i < tasks.size(); i++) {
+      futures.add(submit(tasks.get(i), listener));
+    }
+    return futures;
+  }
+
+  private <T> Future<List<AdapterCommand>> submit(Task<T> task, Listener<T> listener) {
+    if (task == null) {
+      throw new NullPointerException("task == null");
+    }
+    DiffFuture<T> future = new DiffFuture<>(task, listener);
+    synchronized (queue) {
+      queue.add(future);
+    }
+    dispatch();
+    return future;
+  }
+
+  /**
+   * Stops the thread handling timeouts. The executor passed to the constructor is not shut down.
+   */
+  public void shutdown() {
+    if (timeoutScheduler != null) {
+      timeoutScheduler.shutdownNow();
+    }
+  }
+
+  /**
+   * @return The number of diffs that are waiting to be executed
+   */
+  public int getQueuedCount() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Starts queued diffs as long as there are free slots
+   */
+  private void dispatch() {
+    while (true) {
+      DiffFuture<?> next = null;
+      synchronized (queue) {
+        if (running >= maxParallelism) {
+          return;
+        }
+        Iterator<DiffFuture<?>> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+          DiffFuture<?> future = iterator.next();
+          if (future.isCancelled()) {
+            iterator.remove();
+          } else if (!runningCalculators.contains(future.task.calculator)) {
+            iterator.remove();
+            runningCalculators.add(future.task.calculator);
+            running++;
+            next = future;
+            break;
+          }
+        }
+      }
+
+      if (next == null) {
+        return;
+      }
+
+      try {
+        executor.execute(next);
+      } catch (RuntimeException e) {
+        // Fail this one and try the next queued diff, no later submit() may come to start them
+        finished(next);
+        next.fail(e);
+      }
+    }
+  }
+
+  private void finished(DiffFuture<?> future) {
+    synchronized (queue) {
+      running--;
+      runningCalculators.remove(future.task.calculator);
+    }
+  }
+
+  private static ScheduledExecutorService newTimeoutScheduler() {
+    ScheduledThreadPoolExecutor scheduler =
+        new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+          @Override public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "BulkDiffExecutor-timeout");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    scheduler.setRemoveOnCancelPolicy(true);
+    return scheduler;
+  }
+
+  /**
+   * Calculates the diff of a {@link DiffFuture}
+   */
+  private static final class DiffCall<T> implements Callable<List<AdapterCommand>> {
+
+    final Task<T> task;
+    BulkDiffExecutor.DiffFuture<T> future;
+
+    DiffCall(Task<T> task) {
+      this.task = task;
+    }
+
+    @Override public List<AdapterCommand> call() throws Exception {
+      future.startTimeout();
+      return task.calculator.diff(task.newList);
+    }
+  }
+
+  private final class DiffFuture<T> extends FutureTask<List<AdapterCommand>> {
+
+    final Task<T> task;
+    final Listener<T> listener;
+    private Future<?> timeout;
+
+    DiffFuture(final Task<T> task, Listener<T> listener) {
+      this(new DiffCall<>(task), listener);
+    }
+
+    private DiffFuture(DiffCall<T> call, Listener<T> listener) {
+      super(call);
+      call.future = this;
+      this.task = call.task;
+      this.listener = listener;
+    }
+
+    /**
+     * Starts the timer once the diff is about to begin. Scheduling it before would allow the timer
+     * to complete the future before the diff starts, then FutureTask never runs the diff and the
+     * snapshot of the calculator would not be the new list.
+     */
+    void startTimeout() {
+      if (timeoutScheduler == null) {
+        return;
+      }
+      try {
+        timeout = timeoutScheduler.schedule(new Runnable() {
+          @Override public void run() {
+            List<AdapterCommand> commands = new ArrayList<>(1);
+            commands.add(new EntireDataSetChangedCommand());
+            set(commands);
+          }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+      } catch (RuntimeException e) {
+        // Scheduler has been shut down, run without timeout
+      }
+    }
+
+    @Override public void run() {
+      try {
+        super.run();
+      } finally {
+        if (timeout != null) {
+          timeout.cancel(false);
+        }
+        finished(this);
+        dispatch();
+      }
+    }
+
+    void fail(Throwable error) {
+      setException(error);
+    }
+
+    @Override protected void done() {
+      if (listener == null || isCancelled()) {
+        return;
+      }
+      List<AdapterCommand> commands;
+      try {
+        commands = get();
+      } catch (ExecutionException e) {
+        listener.onDiffFailed(task, e.getCause());
+        return;
+      } catch (InterruptedException e) {
+        // Can't happen, the future is done already
+        Thread.currentThread().interrupt();
+        return;
+      }
+      listener.onDiffCompleted(task, commands);
+    }
+  }
+}
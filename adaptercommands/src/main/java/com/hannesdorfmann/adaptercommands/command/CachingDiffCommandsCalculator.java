@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import java.util.List;
+
+/**
+ * A {@link DiffCommandsCalculator} that memorizes the calculated {@link AdapterCommand}s in a
+ * {@link DiffResultCache}. Every list passed to {@link #diff(List)} gets a fingerprint (calculated
+ * in O(n) by using the given {@link ItemFingerprinter}). If the transition from the old list's
+ * fingerprint to the new list's fingerprint has already been calculated before, the cached
+ * commands are returned instead of running the O(n*m) diff algorithm again. This is useful if the
+ * displayed list toggles between a few states (i.e. filters).
+ *
+ * <p>
+ * Since transitions are identified by 64 bit fingerprints, the {@link ItemFingerprinter} must
+ * take the identity and the content (everything {@link ItemChangedDetector} compares) into
+ * account.
+ * </p>
+ *
+ * <p>
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class CachingDiffCommandsCalculator<T> extends DiffCommandsCalculator<T> {
+
+  private final ItemFingerprinter<T> fingerprinter;
+  private final DiffResultCache cache;
+  private boolean firstDiff = true;
+  private boolean patched;
+  private long oldFingerprint;
+
+  /**
+   * Creates a new instance
+   *
+   * @param fingerprinter The fingerprinter used to calculate the fingerprint of a list
+   * @param cache The cache where the calculated commands are stored
+   */
+  public CachingDiffCommandsCalculator(@NonNull ItemFingerprinter<T> fingerprinter,
+      @NonNull DiffResultCache cache) {
+    this(false, null, fingerprinter, cache);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param itemRangeInsertedOnFirstDiff if <b>true</b> {@link ItemRangeInsertedCommand} will be
+   * used which cause a RecyclerView item animations. Use <b>false</b> if {@link
+   * EntireDataSetChangedCommand} should be used (no RecyclerView item animations).
+   * @param detector that is responsible to determine whether an item has been changed (internal
+   * data changed or not)
+   * @param fingerprinter The fingerprinter used to calculate the fingerprint of a list
+   * @param cache The cache where the calculated commands are stored
+   */
+  public CachingDiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @Nullable ItemChangedDetector<T> detector, @NonNull ItemFingerprinter<T> fingerprinter,
+      @NonNull DiffResultCache cache) {
+    super(itemRangeInsertedOnFirstDiff, detector);
+    if (fingerprinter == null) {
+      throw new NullPointerException("fingerprinter == null");
+    }
+    if (cache == null) {
+      throw new NullPointerException("cache == null");
+    }
+    this.fingerprinter = fingerprinter;
+    this.cache = cache;
+  }
+
+  @Override public List<AdapterCommand> diff(@NonNull List<T> newList) {
+    if (newList == null) {
+      throw new NullPointerException("newList == null");
+    }
+
+    long newFingerprint = fingerprint(newList);
+
+    if (firstDiff) {
+      // Result of the first diff doesn't depend on an old list, so nothing to cache
+      firstDiff = false;
+      oldFingerprint = newFingerprint;
+      return super.diff(newList);
+    }
+
+    if (patched) {
+      // The fingerprint of the patched list is unknown, so the result can't be cached
+      patched = false;
+      oldFingerprint = newFingerprint;
+      return super.diff(newList);
+    }
+
+    if (hasVisibleRange()) {
+      // Changes of items that are not visible are detected lazily, so the commands are not
+      // complete and the lazy changes have to refer to this diff
+      oldFingerprint = newFingerprint;
+      return super.diff(newList);
+    }
+
+    List<AdapterCommand> commands = cache.get(oldFingerprint, newFingerprint);
+    if (commands != null) {
+      replaceSnapshot(newList);
+    } else {
+      commands = super.diff(newList);
+      cache.put(oldFingerprint, newFingerprint, commands);
+    }
+
+    oldFingerprint = newFingerprint;
+    return commands;
+  }
+
+  @Override public DiffMapping<T> diffWithMapping(@NonNull List<T> newList) {
+    // The cached commands don't come with a mapping, so the diff is calculated. The fingerprint of
+    // the new list isn't calculated either, so the next diff() can't be cached.
+    patched = true;
+    return super.diffWithMapping(newList);
+  }
+
+  @Override public List<AdapterCommand> applyPatch(@NonNull ListPatch<T> patch) {
+    patched = true;
+    return super.applyPatch(patch);
+  }
+
+  /**
+   * @return The cache used by this calculator
+   */
+  public DiffResultCache getCache() {
+    return cache;
+  }
+
+  /**
+   * Calculates the fingerprint of the whole list
+   *
+   * @param list The list
+   * @return the fingerprint
+   */
+  private long fingerprint(List<T> list) {
+    int size = list.size();
+    long hash = mix(size);
+    for (int i = 0; i < size; i++) {
+      hash = hash * 0x9E3779B97F4A7C15L + mix(fingerprinter.fingerprint(list.get(i)));
+    }
+    return mix(hash);
+  }
+
+  /**
+   * Spreads the bits of the given value (finalizer of SplitMix64)
+   */
+  static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+    value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+    return value ^ (value >>> 31);
+  }
+}
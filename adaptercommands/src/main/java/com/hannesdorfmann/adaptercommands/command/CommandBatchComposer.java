@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Composes successive batches of {@link AdapterCommand}s into a single equivalent batch. This is
+ * useful if several diffs have been calculated before the main thread gets a chance to execute
+ * them: instead of executing every batch (and running a layout pass for each of them) the composed
+ * batch is executed once:
+ *
+ * <pre>
+ * // Background thread: remember the list the composed batch leads to
+ * List&lt;AdapterCommand&gt; commands = calculator.diff(newList);
+ * synchronized (lock) {
+ *   composer.add(commands);
+ *   latestList = newList;
+ * }
+ *
+ * // Main thread
+ * synchronized (lock) {
+ *   adapter.setItems(latestList);
+ *   commands = composer.compose();
+ * }
+ * processor.execute(commands);
+ * </pre>
+ *
+ * <p>
+ * Positions of later batches are transformed through the edits of the earlier batches by
+ * {@link CommandListOptimizer}, so neither the intermediate lists nor another diff are needed.
+ * The composed batch is minimal as far as positions allow: an item inserted by one batch and
+ * removed by a later one doesn't show up at all, a change of an item that is removed later is
+ * dropped, ranges are merged. Only positions are known, so an item that has been removed by one
+ * batch and inserted again by a later one is inserted (not moved).
+ * </p>
+ *
+ * <p>
+ * Once an {@link EntireDataSetChangedCommand} has been added, all further batches are dropped
+ * until {@link #compose()} is called, since the adapter has to rebind everything anyway. The
+ * pending commands are compacted from time to time, so that the memory doesn't grow with the
+ * number of batches but with the size of the composed batch.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class CommandBatchComposer {
+
+  /**
+   * The number of pending commands that triggers the first compaction
+   */
+  static final int MIN_COMPACTION_THRESHOLD = 64;
+
+  private List<AdapterCommand> pending = new ArrayList<>();
+  private int batchCount;
+  private boolean entireDataSetChanged;
+  private int compactionThreshold = MIN_COMPACTION_THRESHOLD;
+
+  /**
+   * Composes the given batches into a single batch
+   *
+   * @param batches The batches in the order they would have been executed
+   * @return The composed batch
+   */
+  @NonNull public static List<AdapterCommand> compose(
+      @NonNull List<? extends List<AdapterCommand>> batches) {
+    if (batches == null) {
+      throw new NullPointerException("batches == null");
+    }
+    CommandBatchComposer composer = new CommandBatchComposer();
+    for (int i = 0; i < batches.size(); i++) {
+      composer.add(batches.get(i));
+    }
+    return composer.compose();
+  }
+
+  /**
+   * Adds the next batch of commands. The commands must refer to the list that results from all
+   * batches that have been added before.
+   *
+   * @param commands The commands
+   */
+  public synchronized void add(@NonNull List<AdapterCommand> commands) {
+    if (commands == null) {
+      throw new NullPointerException("commands == null");
+    }
+
+    batchCount++;
+    if (entireDataSetChanged) {
+      return;
+    }
+
+    for (int i = 0; i < commands.size(); i++) {
+      AdapterCommand command = commands.get(i);
+      if (command instanceof EntireDataSetChangedCommand) {
+        entireDataSetChanged = true;
+        pending.clear();
+        pending.add(command);
+        return;
+      }
+      pending.add(command);
+    }
+
+    if (pending.size() >= compactionThreshold) {
+      pending = new ArrayList<>(CommandListOptimizer.optimize(pending));
+      compactionThreshold = Math.max(MIN_COMPACTION_THRESHOLD, 2 * pending.size());
+    }
+  }
+
+  /**
+   * Returns the composition of all batches added since the last call and resets this composer
+   *
+   * @return The composed batch, empty if nothing has been added or all batches cancel each other
+   * out
+   */
+  @NonNull public synchronized List<AdapterCommand> compose() {
+    List<AdapterCommand> composed = CommandListOptimizer.optimize(pending);
+    if (composed == pending) {
+      composed = new ArrayList<>(pending);
+    }
+
+    pending.clear();
+    batchCount = 0;
+    entireDataSetChanged = false;
+    compactionThreshold = MIN_COMPACTION_THRESHOLD;
+    return composed.isEmpty() ? Collections.<AdapterCommand>emptyList() : composed;
+  }
+
+  /**
+   * @return The number of batches added since the last call of {@link #compose()}
+   */
+  public synchronized int getBatchCount() {
+    return batchCount;
+  }
+
+  /**
+   * @return true if there are no commands to compose
+   */
+  public synchronized boolean isEmpty() {
+    return pending.isEmpty();
+  }
+}
@@ -0,0 +1,680 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rewrites a list of {@link AdapterCommand}s into an equivalent list with fewer commands. Every
+ * command means another notification of the adapter and another animation, so this is useful for
+ * commands that have not been calculated by a {@link DiffCommandsCalculator} in one go (i.e.
+ * hand written or concatenated batches).
+ *
+ * <p>
+ * The commands are simulated on a list of positions of the old list. Since the commands don't
+ * know the size of the list the last range of old positions is unbounded. From the resulting
+ * list new commands are generated:
+ * <ol>
+ * <li>Removes, merged to ranges, for every old item that is not in the list anymore</li>
+ * <li>Moves for every old item that is not part of the heaviest increasing run of old items</li>
+ * <li>Inserts, merged to ranges</li>
+ * <li>Changes, merged to ranges</li>
+ * </ol>
+ * This drops no-ops (i.e. an item inserted and removed again, a changed item that is removed
+ * afterwards). Additionally an item removed and another item inserted between the same two
+ * unmoved items is folded into a change. Only positions are known to this class, not the items
+ * behind, so items removed and inserted again are never detected as moves.
+ * </p>
+ *
+ * <p>
+ * The result is equivalent to the input: every position of the new list either shows the same
+ * old item or is bound again (inserted or changed). If the optimized list is not shorter than the
+ * input, the input is returned. If the input contains an {@link EntireDataSetChangedCommand} the
+ * result is a single {@link EntireDataSetChangedCommand}. Unknown implementations of
+ * {@link AdapterCommand} are never optimized.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public final class CommandListOptimizer {
+
+  private static final int UNBOUNDED = Integer.MAX_VALUE;
+
+  private static final Comparator<Run> BY_OLD_START = new Comparator<Run>() {
+    @Override public int compare(Run lhs, Run rhs) {
+      return lhs.start < rhs.start ? -1 : (lhs.start == rhs.start ? 0 : 1);
+    }
+  };
+
+  private CommandListOptimizer() {
+  }
+
+  /**
+   * Optimizes the given list of commands
+   *
+   * @param commands The commands to optimize
+   * @return The optimized list of commands or the given list if it can't be optimized
+   */
+  @NonNull public static List<AdapterCommand> optimize(@NonNull List<AdapterCommand> commands) {
+    if (commands == null) {
+      throw new NullPointerException("commands == null");
+    }
+
+    if (commands.size() < 2) {
+      return commands;
+    }
+
+    RunTree tree = new RunTree();
+    for (int i = 0; i < commands.size(); i++) {
+      AdapterCommand command = commands.get(i);
+      if (command instanceof EntireDataSetChangedCommand) {
+        List<AdapterCommand> result = new ArrayList<>(1);
+        result.add(command);
+        return result;
+      }
+      if (!apply(tree, command)) {
+        return commands;
+      }
+    }
+
+    List<Run> runs = tree.toList();
+    normalize(runs);
+    markKeptInPlace(runs);
+    List<AdapterCommand> best = generate(runs, commands.size());
+
+    List<Run> folded = fold(runs);
+    if (folded != null) {
+      markKeptInPlace(folded);
+      List<AdapterCommand> foldedCommands =
+          generate(folded, best == null ? commands.size() : best.size());
+      if (foldedCommands != null) {
+        best = foldedCommands;
+      }
+    }
+
+    return best == null ? commands : best;
+  }
+
+  /**
+   * Applies a command on the runs
+   *
+   * @return false if the command is unknown
+   */
+  private static boolean apply(RunTree tree, AdapterCommand command) {
+    if (command instanceof ItemInsertedCommand) {
+      tree.insert(((ItemInsertedCommand) command).position, 1);
+    } else if (command instanceof ItemRangeInsertedCommand) {
+      ItemRangeInsertedCommand c = (ItemRangeInsertedCommand) command;
+      tree.insert(c.startPosition, c.itemCount);
+    } else if (command instanceof ItemRemovedCommand) {
+      tree.remove(((ItemRemovedCommand) command).position, 1);
+    } else if (command instanceof ItemRangeRemovedCommand) {
+      ItemRangeRemovedCommand c = (ItemRangeRemovedCommand) command;
+      tree.remove(c.startPosition, c.itemCount);
+    } else if (command instanceof ItemMovedCommand) {
+      ItemMovedCommand c = (ItemMovedCommand) command;
+      tree.move(c.fromPosition, c.toPosition);
+    } else if (command instanceof ItemChangedCommand) {
+      tree.change(((ItemChangedCommand) command).position, 1);
+    } else if (command instanceof ItemRangeChangedCommand) {
+      ItemRangeChangedCommand c = (ItemRangeChangedCommand) command;
+      tree.change(c.startPosition, c.itemCount);
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Merges adjacent runs that can be expressed as one run
+   */
+  private static void normalize(List<Run> runs) {
+    int last = 0;
+    for (int r = 1; r < runs.size(); r++) {
+      Run previous = runs.get(last);
+      Run run = runs.get(r);
+      if (previous.inserted && run.inserted) {
+        previous.count += run.count;
+      } else if (!previous.inserted && !run.inserted && previous.changed == run.changed
+          && previous.start + previous.count == run.start) {
+        previous.count = run.count == UNBOUNDED ? UNBOUNDED : previous.count + run.count;
+      } else {
+        runs.set(++last, run);
+      }
+    }
+    runs.subList(last + 1, runs.size()).clear();
+  }
+
+  /**
+   * Marks the runs of old items that are not moved: The heaviest (by item count) sequence of runs
+   * with increasing old positions. The unbounded last run is always part of it.
+   */
+  private static void markKeptInPlace(List<Run> runs) {
+    int oldCount = 0;
+    for (int r = 0; r < runs.size(); r++) {
+      if (!runs.get(r).inserted) {
+        oldCount++;
+      }
+    }
+
+    Run[] oldRuns = new Run[oldCount];
+    int[] starts = new int[oldCount];
+    for (int r = 0, k = 0; r < runs.size(); r++) {
+      Run run = runs.get(r);
+      if (!run.inserted) {
+        run.kept = false;
+        starts[k] = run.start;
+        oldRuns[k++] = run;
+      }
+    }
+    Arrays.sort(starts);
+
+    // Fenwick tree over the rank of the start position, containing the max weight and its run
+    long[] treeWeight = new long[oldCount + 1];
+    int[] treeRun = new int[oldCount + 1];
+    long[] weight = new long[oldCount];
+    int[] previous = new int[oldCount];
+    int best = -1;
+
+    for (int k = 0; k < oldCount; k++) {
+      int rank = Arrays.binarySearch(starts, oldRuns[k].start);
+      long max = 0;
+      int maxRun = -1;
+      for (int i = rank; i > 0; i -= i & -i) {
+        if (treeWeight[i] > max) {
+          max = treeWeight[i];
+          maxRun = treeRun[i];
+        }
+      }
+      weight[k] = max + (oldRuns[k].count == UNBOUNDED ? Integer.MAX_VALUE : oldRuns[k].count);
+      previous[k] = maxRun;
+      for (int i = rank + 1; i <= oldCount; i += i & -i) {
+        if (weight[k] > treeWeight[i]) {
+          treeWeight[i] = weight[k];
+          treeRun[i] = k;
+        }
+      }
+      if (best == -1 || weight[k] > weight[best]) {
+        best = k;
+      }
+    }
+
+    for (int k = best; k != -1; k = previous[k]) {
+      oldRuns[k].kept = true;
+    }
+  }
+
+  /**
+   * Folds removed old items into inserted items between the same two kept runs, so that the pair
+   * becomes a change.
+   *
+   * @return The folded runs or null if nothing can be folded
+   */
+  private static List<Run> fold(List<Run> runs) {
+    List<Run> present = presentSortedByOldPosition(runs);
+
+    // Removed ranges of old positions and the number of kept runs before them
+    List<int[]> removed = new ArrayList<>();
+    int keptBefore = 0;
+    int next = 0;
+    for (int i = 0; i < present.size(); i++) {
+      Run run = present.get(i);
+      if (run.start > next) {
+        removed.add(new int[] { keptBefore, next, run.start - next });
+      }
+      if (run.kept) {
+        keptBefore++;
+      }
+      next = run.start + run.count;
+    }
+
+    if (removed.isEmpty()) {
+      return null;
+    }
+
+    List<Run> folded = new ArrayList<>(runs.size() + removed.size());
+    boolean changed = false;
+    int r = 0;
+    keptBefore = 0;
+    for (int i = 0; i < runs.size(); i++) {
+      Run run = runs.get(i);
+      if (!run.inserted) {
+        folded.add(run.copy());
+        if (run.kept) {
+          keptBefore++;
+        }
+        continue;
+      }
+
+      while (r < removed.size() && removed.get(r)[0] < keptBefore) {
+        r++;
+      }
+      int count = run.count;
+      while (count > 0 && r < removed.size() && removed.get(r)[0] == keptBefore) {
+        int[] range = removed.get(r);
+        int take = Math.min(count, range[2]);
+        Run changedRun = new Run(false, range[1], take);
+        changedRun.changed = true;
+        folded.add(changedRun);
+        changed = true;
+        count -= take;
+        range[1] += take;
+        range[2] -= take;
+        if (range[2] == 0) {
+          r++;
+        }
+      }
+      if (count > 0) {
+        folded.add(new Run(true, 0, count));
+      }
+    }
+
+    if (!changed) {
+      return null;
+    }
+
+    normalize(folded);
+    return folded;
+  }
+
+  private static List<Run> presentSortedByOldPosition(List<Run> runs) {
+    List<Run> present = new ArrayList<>(runs.size());
+    for (int i = 0; i < runs.size(); i++) {
+      if (!runs.get(i).inserted) {
+        present.add(runs.get(i));
+      }
+    }
+    Collections.sort(present, BY_OLD_START);
+    return present;
+  }
+
+  /**
+   * Generates the commands transforming the old positions into the given runs.
+   *
+   * @param limit The number of commands the result must be smaller than
+   * @return The commands or null if there would be limit or more commands
+   */
+  private static List<AdapterCommand> generate(List<Run> runs, int limit) {
+    List<AdapterCommand> commands = new ArrayList<>();
+    List<Run> present = presentSortedByOldPosition(runs);
+
+    // Removes
+    int removedCount = 0;
+    int next = 0;
+    int movedCount = 0;
+    for (int i = 0; i < present.size(); i++) {
+      Run run = present.get(i);
+      if (run.start > next) {
+        commands.add(DiffCommandsCalculator.removedCommand(next - removedCount, run.start - next));
+        removedCount += run.start - next;
+      }
+      next = run.start + run.count;
+      if (!run.kept) {
+        movedCount += run.count;
+      }
+    }
+
+    if (commands.size() + movedCount >= limit) {
+      return null;
+    }
+
+    // Moves: every moved item is a block of its own and is moved behind its predecessor
+    List<Run> target = new ArrayList<>(runs.size() + movedCount);
+    for (int i = 0; i < runs.size(); i++) {
+      Run run = runs.get(i);
+      if (run.inserted) {
+        continue;
+      }
+      if (run.kept) {
+        target.add(run);
+      } else {
+        for (int k = 0; k < run.count; k++) {
+          Run single = new Run(false, run.start + k, 1);
+          single.changed = run.changed;
+          target.add(single);
+        }
+      }
+    }
+
+    if (movedCount > 0) {
+      addMoves(target, commands);
+    }
+
+    // Inserts
+    int position = 0;
+    for (int i = 0; i < runs.size(); i++) {
+      Run run = runs.get(i);
+      if (run.inserted) {
+        commands.add(DiffCommandsCalculator.insertedCommand(position, run.count));
+      }
+      if (run.count != UNBOUNDED) {
+        position += run.count;
+      }
+    }
+
+    // Changes, inserted items in between changed ones are changed too, as they are bound anyway
+    position = 0;
+    int changeStart = -1;
+    int changeEnd = -1;
+    for (int i = 0; i < runs.size(); i++) {
+      Run run = runs.get(i);
+      if (!run.inserted) {
+        if (run.changed) {
+          if (changeStart == -1) {
+            changeStart = position;
+          }
+          changeEnd = position + run.count;
+        } else if (changeStart != -1) {
+          commands.add(DiffCommandsCalculator.changedCommand(changeStart, changeEnd - changeStart));
+          changeStart = -1;
+        }
+      }
+      if (run.count != UNBOUNDED) {
+        position += run.count;
+      }
+    }
+    if (changeStart != -1) {
+      commands.add(DiffCommandsCalculator.changedCommand(changeStart, changeEnd - changeStart));
+    }
+
+    return commands.size() < limit ? commands : null;
+  }
+
+  /**
+   * Adds the moves that reorder the blocks from old order into the given target order. Every
+   * block that is not kept is moved behind its predecessor in the target order.
+   *
+   * <p>
+   * The final position of every block is given by a slot key (major, minor): A kept block stays at
+   * (rank in old order + 1, 0), a moved block follows its predecessor: (major of the predecessor,
+   * minor of the predecessor + 1), (0, 1) for the first block. A Fenwick tree over the slots
+   * weighted by item count gives the positions while moving, O(log n) per move.
+   * </p>
+   */
+  private static void addMoves(List<Run> target, List<AdapterCommand> commands) {
+    int count = target.size();
+    Integer[] byOldStart = new Integer[count];
+    for (int t = 0; t < count; t++) {
+      byOldStart[t] = t;
+    }
+    final List<Run> blocks = target;
+    Arrays.sort(byOldStart, new Comparator<Integer>() {
+      @Override public int compare(Integer lhs, Integer rhs) {
+        return BY_OLD_START.compare(blocks.get(lhs), blocks.get(rhs));
+      }
+    });
+    int[] rank = new int[count];
+    for (int k = 0; k < count; k++) {
+      rank[byOldStart[k]] = k;
+    }
+
+    int[] majors = new int[count];
+    int[] minors = new int[count];
+    int[] slotBase = new int[count + 2];
+    for (int t = 0; t < count; t++) {
+      if (target.get(t).kept) {
+        majors[t] = rank[t] + 1;
+      } else {
+        majors[t] = t == 0 ? 0 : majors[t - 1];
+        minors[t] = t == 0 ? 1 : minors[t - 1] + 1;
+        slotBase[majors[t] + 1]++;
+      }
+    }
+    int slots = 0;
+    for (int m = 0; m <= count; m++) {
+      int moved = slotBase[m + 1];
+      slotBase[m] = slots;
+      slots += 1 + moved;
+    }
+
+    // The unbounded run is always kept and last, its weight doesn't matter
+    long[] tree = new long[slots + 1];
+    for (int t = 0; t < count; t++) {
+      add(tree, slotBase[rank[t] + 1], weight(target.get(t)));
+    }
+
+    for (int t = 0; t < count; t++) {
+      Run block = target.get(t);
+      if (block.kept) {
+        continue;
+      }
+      int oldSlot = slotBase[rank[t] + 1];
+      int fromPosition = (int) countBefore(tree, oldSlot);
+      add(tree, oldSlot, -weight(block));
+      int newSlot = slotBase[majors[t]] + minors[t];
+      int toPosition = (int) countBefore(tree, newSlot);
+      add(tree, newSlot, weight(block));
+      if (fromPosition != toPosition) {
+        commands.add(new ItemMovedCommand(fromPosition, toPosition));
+      }
+    }
+  }
+
+  private static long weight(Run run) {
+    return run.count == UNBOUNDED ? 0 : run.count;
+  }
+
+  private static void add(long[] tree, int slot, long value) {
+    for (int i = slot + 1; i < tree.length; i += i & -i) {
+      tree[i] += value;
+    }
+  }
+
+  /**
+   * @return The number of items in the slots before the given slot
+   */
+  private static long countBefore(long[] tree, int slot) {
+    long count = 0;
+    for (int i = slot; i > 0; i -= i & -i) {
+      count += tree[i];
+    }
+    return count;
+  }
+
+  /**
+   * A run of consecutive items: Either old items (by their position in the old list) or inserted
+   * items
+   */
+  private static final class Run {
+    final boolean inserted;
+    int start;
+    int count;
+    boolean changed;
+    boolean kept;
+
+    // Node of the RunTree
+    Run left;
+    Run right;
+    int priority;
+    long sum;
+    boolean changeChildren;
+
+    Run(boolean inserted, int start, int count) {
+      this.inserted = inserted;
+      this.start = start;
+      this.count = count;
+    }
+
+    /**
+     * Shrinks this run to the given count and returns the rest
+     */
+    Run split(int headCount) {
+      Run tail = new Run(inserted, inserted ? 0 : start + headCount,
+          count == UNBOUNDED ? UNBOUNDED : count - headCount);
+      tail.changed = changed;
+      count = headCount;
+      return tail;
+    }
+
+    Run copy() {
+      Run copy = new Run(inserted, start, count);
+      copy.changed = changed;
+      return copy;
+    }
+  }
+
+  /**
+   * The runs in list order as implicit treap: a run is found by position in O(log n) via the sums
+   * of the item counts of the subtrees. Changes are applied lazily to whole subtrees.
+   */
+  private static final class RunTree {
+    private final Random random = new Random(0);
+    private Run root = node(new Run(false, 0, UNBOUNDED));
+
+    void insert(int position, int count) {
+      Run[] parts = split(root, position);
+      root = merge(merge(parts[0], node(new Run(true, 0, count))), parts[1]);
+    }
+
+    void remove(int position, int count) {
+      Run[] head = split(root, position);
+      Run[] tail = split(head[1], count);
+      root = merge(head[0], tail[1]);
+    }
+
+    void move(int fromPosition, int toPosition) {
+      if (fromPosition == toPosition) {
+        return;
+      }
+      Run[] head = split(root, fromPosition);
+      Run[] tail = split(head[1], 1);
+      Run[] target = split(merge(head[0], tail[1]), toPosition);
+      root = merge(merge(target[0], tail[0]), target[1]);
+    }
+
+    void change(int position, int count) {
+      Run[] head = split(root, position);
+      Run[] tail = split(head[1], count);
+      markChanged(tail[0]);
+      root = merge(merge(head[0], tail[0]), tail[1]);
+    }
+
+    /**
+     * @return The runs in list order
+     */
+    List<Run> toList() {
+      List<Run> runs = new ArrayList<>();
+      List<Run> stack = new ArrayList<>();
+      Run node = root;
+      while (node != null || !stack.isEmpty()) {
+        while (node != null) {
+          push(node);
+          stack.add(node);
+          node = node.left;
+        }
+        node = stack.remove(stack.size() - 1);
+        runs.add(node);
+        node = node.right;
+      }
+      for (int r = 0; r < runs.size(); r++) {
+        Run run = runs.get(r);
+        run.left = null;
+        run.right = null;
+      }
+      return runs;
+    }
+
+    private Run node(Run run) {
+      run.priority = random.nextInt();
+      run.sum = run.count;
+      return run;
+    }
+
+    /**
+     * Splits the tree into the first position items and the rest, a run containing the split
+     * position is split into two runs
+     *
+     * @return The head and the tail, both may be null
+     */
+    private Run[] split(Run node, long position) {
+      if (node == null) {
+        return new Run[2];
+      }
+      push(node);
+      long leftSum = sum(node.left);
+      Run[] parts;
+      if (position <= leftSum) {
+        parts = split(node.left, position);
+        node.left = parts[1];
+        parts[1] = node;
+      } else if (position >= leftSum + node.count) {
+        parts = split(node.right, position - leftSum - node.count);
+        node.right = parts[0];
+        parts[0] = node;
+      } else {
+        Run tail = node(node.split((int) (position - leftSum)));
+        parts = new Run[] { node, merge(tail, node.right) };
+        node.right = null;
+      }
+      update(node);
+      return parts;
+    }
+
+    private Run merge(Run head, Run tail) {
+      if (head == null) {
+        return tail;
+      }
+      if (tail == null) {
+        return head;
+      }
+      if (head.priority > tail.priority) {
+        push(head);
+        head.right = merge(head.right, tail);
+        update(head);
+        return head;
+      }
+      push(tail);
+      tail.left = merge(head, tail.left);
+      update(tail);
+      return tail;
+    }
+
+    private static void markChanged(Run node) {
+      if (node != null) {
+        if (!node.inserted) {
+          // Inserted items are bound anyway
+          node.changed = true;
+        }
+        node.changeChildren = true;
+      }
+    }
+
+    private static void push(Run node) {
+      if (node.changeChildren) {
+        markChanged(node.left);
+        markChanged(node.right);
+        node.changeChildren = false;
+      }
+    }
+
+    private static long sum(Run node) {
+      return node == null ? 0 : node.sum;
+    }
+
+    private static void update(Run node) {
+      node.sum = sum(node.left) + node.count + sum(node.right);
+    }
+  }
+}
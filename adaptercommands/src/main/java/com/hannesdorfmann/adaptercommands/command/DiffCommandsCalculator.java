@@ -18,10 +18,16 @@ package com.hannesdorfmann.adaptercommands.command;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import com.hannesdorfmann.adaptercommands.BulkItemChangedDetector;
 import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * This class is responsible to calculate the difference between two lists and returns a list of
@@ -32,14 +38,65 @@ import java.util.List;
  * ThreadSafeDiffCommandsCalculator}
  * </p>
  *
+ * <p>
+ * By default a copy of the old list is kept to compare it with the new list on the next {@link
+ * #diff(List)} call. If the items are expensive to keep in memory (i.e. hold bitmaps), use {@link
+ * #DiffCommandsCalculator(boolean, ItemKeyProvider, ItemFingerprinter)} instead: then only a
+ * primitive key and a content fingerprint per item are stored, so that the old items can be
+ * garbage collected right after the diff.
+ * </p>
+ *
+ * <p>
+ * If the lists are {@link PersistentList}s no copy is needed at all. Furthermore parts of the
+ * lists that are shared by reference are skipped without comparing the items, so that the costs
+ * of a diff depend on the size of the modification instead of the size of the lists.
+ * </p>
+ *
  * @author Hannes Dorfmann
  * @since 1.0
  */
 public class DiffCommandsCalculator<T> {
 
+  /**
+   * Default min. number of matching pairs to detect changes in parallel
+   */
+  public static final int DEFAULT_PARALLEL_CHANGE_DETECTION_THRESHOLD = 2048;
+
+  /**
+   * Min. number of pairs a chunk of parallel change detection contains
+   */
+  static final int MIN_CHANGE_DETECTION_CHUNK_SIZE = 256;
+
+  /**
+   * Max. number of chunks of parallel change detection
+   */
+  static final int MAX_CHANGE_DETECTION_CHUNKS = 16;
+
   private final boolean itemRangeInsertedOnFirstDiff;
-  private List<T> oldList;
-  private final ItemChangedDetector<T> detector;
+  private final SnapshotDiffInput<T> input;
+  private final DiffEngine<T> engine;
+  private final DiffStatistics statistics = new DiffStatistics();
+  private DiffWorkspace workspace;
+
+  private ExecutorService changeDetectionExecutor;
+  private int parallelChangeDetectionThreshold = DEFAULT_PARALLEL_CHANGE_DETECTION_THRESHOLD;
+
+  // Visible range for lazy change detection, see setVisibleRange()
+  private int visibleFirst = -1;
+  private int visibleLast = -1;
+  private LazyChanges<T> lazyChanges;
+
+  private DiffTraceRecorder traceRecorder;
+
+  // New position of each old position while diffWithMapping() runs, otherwise null
+  private int[] mapping;
+
+  // Matching pairs whose change detection is deferred, see BulkItemChangedDetector
+  private boolean deferChangeDetection;
+  private int deferredCount;
+  private int[] deferredOld;
+  private int[] deferredNew;
+  private int[] deferredCommandIndex;
 
   /**
    * Default constructor. Uses {@link EntireDataSetChangedCommand} as resulting command on first
@@ -86,8 +143,91 @@ public class DiffCommandsCalculator<T> {
    */
   public DiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
       @Nullable ItemChangedDetector<T> detector) {
+    this(itemRangeInsertedOnFirstDiff, detector, new LcsDiffEngine<T>());
+  }
+
+  /**
+   * Creates a new instance that uses the given {@link DiffEngine} to find the matching items of
+   * old and new list.
+   *
+   * @param itemRangeInsertedOnFirstDiff if <b>true</b> {@link ItemRangeInsertedCommand} will be
+   * used which cause a RecyclerView item animations. Use <b>false</b> if {@link
+   * EntireDataSetChangedCommand} should be used (no RecyclerView item animations).
+   * @param detector that is responsible to determine whether an item has been changed (internal
+   * data changed or not)
+   * @param engine The algorithm to use (i.e. {@link SortedMergeDiffEngine} for sorted lists)
+   */
+  public DiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @Nullable ItemChangedDetector<T> detector, @NonNull DiffEngine<T> engine) {
+    this(itemRangeInsertedOnFirstDiff, new ObjectDiffInput<>(detector), engine);
+  }
+
+  /**
+   * Constructs a new instance that only stores the key and the content fingerprint of each item
+   * instead of the item itself.
+   *
+   * @param keyProvider Provides the key of an item. Two items are the same if their keys are equal
+   * @param fingerprinter Calculates the content fingerprint of an item. An item has been changed if
+   * the fingerprint has been changed. Pass null if item changes should not be detected.
+   */
+  public DiffCommandsCalculator(@NonNull ItemKeyProvider<T> keyProvider,
+      @Nullable ItemFingerprinter<T> fingerprinter) {
+    this(false, keyProvider, fingerprinter);
+  }
+
+  /**
+   * Constructs a new instance that only stores the key and the content fingerprint of each item
+   * instead of the item itself.
+   *
+   * @param itemRangeInsertedOnFirstDiff if <b>true</b> {@link ItemRangeInsertedCommand} will be
+   * used which cause a RecyclerView item animations. Use <b>false</b> if {@link
+   * EntireDataSetChangedCommand} should be used (no RecyclerView item animations).
+   * @param keyProvider Provides the key of an item. Two items are the same if their keys are equal
+   * @param fingerprinter Calculates the content fingerprint of an item. An item has been changed if
+   * the fingerprint has been changed. Pass null if item changes should not be detected.
+   */
+  public DiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @NonNull ItemKeyProvider<T> keyProvider, @Nullable ItemFingerprinter<T> fingerprinter) {
+    this(itemRangeInsertedOnFirstDiff, keyProvider, fingerprinter, new LcsDiffEngine<T>());
+  }
+
+  /**
+   * Constructs a new instance that only stores the key and the content fingerprint of each item
+   * instead of the item itself and uses the given {@link DiffEngine}.
+   *
+   * @param itemRangeInsertedOnFirstDiff if <b>true</b> {@link ItemRangeInsertedCommand} will be
+   * used which cause a RecyclerView item animations. Use <b>false</b> if {@link
+   * EntireDataSetChangedCommand} should be used (no RecyclerView item animations).
+   * @param keyProvider Provides the key of an item. Two items are the same if their keys are equal
+   * @param fingerprinter Calculates the content fingerprint of an item. An item has been changed if
+   * the fingerprint has been changed. Pass null if item changes should not be detected.
+   * @param engine The algorithm to use. Must not access old items (see {@link
+   * DiffInput#getOldItem(int)})
+   */
+  public DiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @NonNull ItemKeyProvider<T> keyProvider, @Nullable ItemFingerprinter<T> fingerprinter,
+      @NonNull DiffEngine<T> engine) {
+    this(itemRangeInsertedOnFirstDiff, newKeyDiffInput(keyProvider, fingerprinter), engine);
+  }
+
+  private DiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff, SnapshotDiffInput<T> input,
+      DiffEngine<T> engine) {
+    if (engine == null) {
+      throw new NullPointerException("engine == null");
+    }
     this.itemRangeInsertedOnFirstDiff = itemRangeInsertedOnFirstDiff;
-    this.detector = detector;
+    this.input = input;
+    this.engine = engine;
+    this.workspace = new DiffWorkspace();
+    input.workspace = workspace;
+  }
+
+  private static <T> SnapshotDiffInput<T> newKeyDiffInput(ItemKeyProvider<T> keyProvider,
+      ItemFingerprinter<T> fingerprinter) {
+    if (keyProvider == null) {
+      throw new NullPointerException("keyProvider == null");
+    }
+    return new KeyDiffInput<>(keyProvider, fingerprinter);
   }
 
   /**
@@ -104,11 +244,327 @@ public class DiffCommandsCalculator<T> {
       throw new NullPointerException("newList == null");
     }
 
+    return diffAndRecord(newList);
+  }
+
+  /**
+   * Like {@link #diff(List)}, but additionally returns the translation of positions between the
+   * old and the new list and an index of the new list (see {@link DiffMapping}). The mapping is
+   * filled with the matches the diff finds anyway, building it costs O(n) additional time and
+   * memory.
+   *
+   * @param newList The new items that we use to calculate the difference
+   * @return The commands and the mapping
+   * @since 1.0.5
+   */
+  public DiffMapping<T> diffWithMapping(@NonNull List<T> newList) {
+    if (newList == null) {
+      throw new NullPointerException("newList == null");
+    }
+
+    int[] oldToNew = new int[input.hasSnapshot() ? input.oldSize() : 0];
+    for (int i = 0; i < oldToNew.length; i++) {
+      oldToNew[i] = -1;
+    }
+
+    List<AdapterCommand> commands;
+    mapping = oldToNew;
+    try {
+      commands = diffAndRecord(newList);
+    } finally {
+      mapping = null;
+    }
+    return new DiffMapping<>(commands, oldToNew, input, newList);
+  }
+
+  /**
+   * Calculates the diff and records statistics and traces
+   */
+  private List<AdapterCommand> diffAndRecord(List<T> newList) {
+    int oldSize = input.hasSnapshot() ? input.oldSize() : 0;
+    DiffTraceRecorder recorder = traceRecorder;
+    if (recorder != null) {
+      recorder.beforeDiff(input);
+    }
+    long startTime = System.nanoTime();
+
+    workspace.begin();
+    List<AdapterCommand> commands;
+    try {
+      commands = calculateDiff(newList);
+    } finally {
+      workspace.end();
+    }
+
+    long elapsedNanos = System.nanoTime() - startTime;
+    statistics.onDiff(oldSize, newList.size(), commands.size(), elapsedNanos);
+    if (recorder != null) {
+      recorder.afterDiff(input, elapsedNanos, commands.size(), statistics.getLastEngine());
+    }
+    return commands;
+  }
+
+  /**
+   * Applies the given operations (i.e. deltas sent by a server) on the old list (the list the next
+   * {@link #diff(List)} call compares to) without calculating the difference of the whole lists.
+   * The adapter's items must be patched the same way before the returned commands are executed.
+   * Subsequent {@link #diff(List)} calls compare to the patched list.
+   *
+   * <p>
+   * The costs depend on the number of operations, not on the number of items: a positional
+   * operation shifts the stored snapshot by a single array copy, a keyed operation (see {@link
+   * ListPatch#removeItem(Object)}) looks the item up with a linear scan. The resulting commands
+   * are merged by {@link CommandListOptimizer}.
+   * </p>
+   *
+   * <p>
+   * Operations are validated while they are applied. If an operation is invalid (a position out
+   * of bounds or a keyed item that doesn't exist) the snapshot is dropped, so that the next
+   * {@link #diff(List)} returns an {@link EntireDataSetChangedCommand}, and the exception is
+   * thrown.
+   * </p>
+   *
+   * @param patch The operations
+   * @return List of commands
+   * @throws IllegalStateException if there is no old list yet or the old list can't be patched
+   * @throws IndexOutOfBoundsException if a position is out of bounds
+   * @throws IllegalArgumentException if an item of a keyed operation doesn't exist
+   * @since 1.0.5
+   */
+  public List<AdapterCommand> applyPatch(@NonNull ListPatch<T> patch) {
+    if (patch == null) {
+      throw new NullPointerException("patch == null");
+    }
+    if (!input.hasSnapshot()) {
+      throw new IllegalStateException("There is no list to patch, call diff() first");
+    }
+    PatchableDiffInput<T> snapshot = input.asPatchable();
+    if (snapshot == null) {
+      throw new IllegalStateException("The list of this calculator can't be patched");
+    }
+
+    // Positions of lazy changes of the previous diff are outdated
+    if (lazyChanges != null) {
+      lazyChanges.invalidate();
+      lazyChanges = null;
+    }
+    if (traceRecorder != null) {
+      traceRecorder.invalidate();
+    }
+
+    List<ListPatch.Operation<T>> operations = patch.getOperations();
+    List<AdapterCommand> commands = new ArrayList<>(operations.size());
+    try {
+      for (int i = 0; i < operations.size(); i++) {
+        applyOperation(snapshot, operations.get(i), commands);
+      }
+    } catch (RuntimeException e) {
+      // The snapshot has been patched partially, it is in sync with neither the old nor the new list
+      snapshot.clearSnapshot();
+      throw e;
+    }
+
+    return CommandListOptimizer.optimize(commands);
+  }
+
+  private void applyOperation(PatchableDiffInput<T> snapshot, ListPatch.Operation<T> operation,
+      List<AdapterCommand> commands) {
+    int size = input.oldSize();
+    switch (operation.type) {
+      case ListPatch.INSERT:
+        checkBounds(operation.position, size + 1);
+        snapshot.insertOld(operation.position, operation.items);
+        commands.add(insertedCommand(operation.position, operation.count));
+        break;
+
+      case ListPatch.REMOVE:
+        checkBounds(operation.position + operation.count - 1, size);
+        snapshot.removeOld(operation.position, operation.count);
+        commands.add(removedCommand(operation.position, operation.count));
+        break;
+
+      case ListPatch.MOVE:
+        checkBounds(operation.position, size);
+        checkBounds(operation.count, size);
+        moveOld(snapshot, operation.position, operation.count, commands);
+        break;
+
+      case ListPatch.UPDATE:
+        checkBounds(operation.position, size);
+        snapshot.updateOld(operation.position, operation.items.get(0));
+        commands.add(new ItemChangedCommand(operation.position));
+        break;
+
+      case ListPatch.REMOVE_ITEM: {
+        int position = indexOfOld(snapshot, operation.items.get(0));
+        snapshot.removeOld(position, 1);
+        commands.add(new ItemRemovedCommand(position));
+        break;
+      }
+
+      case ListPatch.MOVE_ITEM:
+        checkBounds(operation.count, size);
+        moveOld(snapshot, indexOfOld(snapshot, operation.items.get(0)), operation.count,
+            commands);
+        break;
+
+      case ListPatch.UPDATE_ITEM: {
+        T item = operation.items.get(0);
+        int position = indexOfOld(snapshot, item);
+        snapshot.updateOld(position, item);
+        commands.add(new ItemChangedCommand(position));
+        break;
+      }
+
+      default:
+        throw new IllegalArgumentException("Unknown operation " + operation.type);
+    }
+  }
+
+  private void moveOld(PatchableDiffInput<T> snapshot, int fromPosition, int toPosition,
+      List<AdapterCommand> commands) {
+    if (fromPosition != toPosition) {
+      snapshot.moveOld(fromPosition, toPosition);
+      commands.add(new ItemMovedCommand(fromPosition, toPosition));
+    }
+  }
+
+  private int indexOfOld(PatchableDiffInput<T> snapshot, T item) {
+    int position = snapshot.indexOfOld(item);
+    if (position == -1) {
+      throw new IllegalArgumentException("Item doesn't exist: " + item);
+    }
+    return position;
+  }
+
+  private static void checkBounds(int position, int size) {
+    if (position >= size) {
+      throw new IndexOutOfBoundsException("position " + position + " >= size " + size);
+    }
+  }
+
+  /**
+   * Sets the scratch buffers used while diffing. By default each calculator has its own
+   * workspace. A workspace can be shared between calculators that are never used at the same
+   * time.
+   *
+   * @param workspace The workspace
+   */
+  public void setWorkspace(@NonNull DiffWorkspace workspace) {
+    if (workspace == null) {
+      throw new NullPointerException("workspace == null");
+    }
+    this.workspace = workspace;
+    input.workspace = workspace;
+  }
+
+  /**
+   * @return The scratch buffers used while diffing
+   */
+  public DiffWorkspace getWorkspace() {
+    return workspace;
+  }
+
+  /**
+   * Sets the executor to detect changes in parallel if the {@link ItemChangedDetector} is a {@link
+   * BulkItemChangedDetector}. The matching pairs of old and new items are split into chunks, that
+   * are evaluated on the executor (and the calling thread). Without executor (default) a {@link
+   * BulkItemChangedDetector} receives all pairs at once on the calling thread.
+   *
+   * @param executor The executor or null to detect changes on the calling thread
+   * @param threshold The min. number of matching pairs to detect changes in parallel
+   */
+  public void setChangeDetectionExecutor(@Nullable ExecutorService executor, int threshold) {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold < 0");
+    }
+    this.changeDetectionExecutor = executor;
+    this.parallelChangeDetectionThreshold = threshold;
+  }
+
+  /**
+   * Enables lazy change detection: The {@link ItemChangedDetector} only runs for matching items
+   * within the given range of positions (in the new list) during {@link #diff(List)}. All other
+   * pairs of old and new items are collected in {@link #getLazyChanges()} to be evaluated when
+   * they become visible or in the background. Structural commands (insert, remove) are always
+   * calculated right away. Only works with an {@link ItemChangedDetector}, fingerprints (see
+   * {@link ItemFingerprinter}) are always compared right away as this is cheap.
+   *
+   * @param firstPosition The first visible position
+   * @param lastPosition The last visible position (inclusive)
+   */
+  public void setVisibleRange(int firstPosition, int lastPosition) {
+    if (firstPosition < 0) {
+      throw new IllegalArgumentException("firstPosition < 0");
+    }
+    if (lastPosition < firstPosition) {
+      throw new IllegalArgumentException("lastPosition < firstPosition");
+    }
+    visibleFirst = firstPosition;
+    visibleLast = lastPosition;
+  }
+
+  /**
+   * Disables lazy change detection, see {@link #setVisibleRange(int, int)}
+   */
+  public void clearVisibleRange() {
+    visibleFirst = -1;
+    visibleLast = -1;
+  }
+
+  /**
+   * @return true if a visible range is set, see {@link #setVisibleRange(int, int)}
+   */
+  boolean hasVisibleRange() {
+    return visibleFirst != -1;
+  }
+
+  /**
+   * Get the pairs of old and new items whose change detection has been skipped by the last diff,
+   * see {@link #setVisibleRange(int, int)}
+   *
+   * @return The lazy changes of the last diff or null if lazy change detection was disabled
+   */
+  @Nullable public LazyChanges<T> getLazyChanges() {
+    return lazyChanges;
+  }
+
+  /**
+   * Enables recording of the input of every diff, see {@link DiffTraceRecorder}
+   *
+   * @param recorder The recorder or null to stop recording
+   * @since 1.0.5
+   */
+  public void setTraceRecorder(@Nullable DiffTraceRecorder recorder) {
+    this.traceRecorder = recorder;
+  }
+
+  /**
+   * @return The trace recorder or null
+   */
+  @Nullable public DiffTraceRecorder getTraceRecorder() {
+    return traceRecorder;
+  }
+
+  /**
+   * @return The statistics of this calculator
+   */
+  public DiffStatistics getStatistics() {
+    return statistics;
+  }
+
+  private List<AdapterCommand> calculateDiff(List<T> newList) {
+
+    // Positions of lazy changes of the previous diff are outdated
+    if (lazyChanges != null) {
+      lazyChanges.invalidate();
+      lazyChanges = null;
+    }
+
     int newSize = newList.size();
     // first time called
-    if (oldList == null) {
-      oldList = new ArrayList<>();
-      oldList.addAll(newList);
+    if (!input.hasSnapshot()) {
+      replaceSnapshot(newList);
 
       List<AdapterCommand> commands = new ArrayList<>(1);
 
@@ -122,88 +578,302 @@ public class DiffCommandsCalculator<T> {
 
     // new list empty
     if (newList.isEmpty()) {
-      if (oldList.isEmpty()){
+      int oldSize = input.oldSize();
+      if (oldSize == 0){
         return Collections.emptyList();
       }
       List<AdapterCommand> commands = new ArrayList<>(1);
-      commands.add(new ItemRangeRemovedCommand(0, oldList.size()));
-      oldList.clear(); // for next call
+      commands.add(new ItemRangeRemovedCommand(0, oldSize));
+      replaceSnapshot(newList); // for next call
       return commands;
     }
 
-    List<AdapterCommand> commands = new ArrayList<>(newSize);
+    input.prepare(newList);
+    int M = input.oldSize();
+    int N = input.newSize();
 
-    int M = oldList.size();
-    int N = newList.size();
+    if (visibleFirst != -1 && input instanceof ObjectDiffInput) {
+      ItemChangedDetector<T> detector = ((ObjectDiffInput<T>) input).getDetector();
+      if (detector != null) {
+        lazyChanges = new LazyChanges<>(detector);
+      }
+    }
 
-    // opt[i][j] = length of LCS of oldList[i..M] and y[j..N]
-    int[][] opt = new int[M + 1][N + 1];
+    deferChangeDetection = input.hasBulkChangeDetection();
+    if (deferChangeDetection) {
+      int maxPairs = Math.min(M, N);
+      deferredCount = 0;
+      deferredOld = workspace.intBuffer(DiffWorkspace.SLOT_CHANGE_OLD, maxPairs);
+      deferredNew = workspace.intBuffer(DiffWorkspace.SLOT_CHANGE_NEW, maxPairs);
+      deferredCommandIndex = workspace.intBuffer(DiffWorkspace.SLOT_CHANGE_INDEX, maxPairs);
+    }
 
-    // compute length of LCS and all subproblems via dynamic programming
-    for (int i = M - 1; i >= 0; i--) {
-      for (int j = N - 1; j >= 0; j--) {
-        if (oldList.get(i).equals(newList.get(j))) {
-          opt[i][j] = opt[i + 1][j + 1] + 1;
-        } else {
-          opt[i][j] = Math.max(opt[i + 1][j], opt[i][j + 1]);
-        }
+    // Skip common prefix and suffix, typical for appending or prepending items. Keys and items
+    // shared by reference (see PersistentList) are compared in bulk.
+    int min = Math.min(M, N);
+    int prefix = input.sameItemRun(0, 0, min);
+    int suffix = input.sameItemRunBackwards(M, N, min - prefix);
+    int oldEnd = M - suffix;
+    int newEnd = N - suffix;
+
+    if (mapping != null) {
+      for (int k = 0; k < prefix; k++) {
+        mapping[k] = k;
+      }
+      for (int k = 0; k < suffix; k++) {
+        mapping[oldEnd + k] = newEnd + k;
       }
     }
 
-    // LinkedHashMap<T, ItemInsertedCommand> insertCommands = new LinkedHashMap<>();
-    // LinkedHashMap<T, ItemRemovedCommand> removeCommands = new LinkedHashMap<>();
+    List<AdapterCommand> commands = new ArrayList<>();
+    addChangedCommands(commands, 0, 0, prefix);
 
-    int insertRemoveOffset = 0;
-    // recover LCS itself and print out non-matching lines to standard output
-    int i = 0, j = 0;
-    while (i < M && j < N) {
-      T oldItem = oldList.get(i);
-      T newItem = newList.get(j);
-      if (oldItem.equals(newItem)) {
-        if (detector != null && detector.hasChanged(oldItem, newItem)) {
-          commands.add(new ItemChangedCommand(j));
-        }
-        i++;
-        j++;
-      } else if (opt[i + 1][j] >= opt[i][j + 1]) {
-        //T item = oldList.get(i);
-        //handleRemoveCommand(item, i + insertRemoveOffset, insertCommands, removeCommands, commands);
-        commands.add(new ItemRemovedCommand(i + insertRemoveOffset));
-        insertRemoveOffset--;
-        i++;
-      } else {
-        //T item = newList.get(j);
-        //handleInsertCommand(item, j, insertCommands, removeCommands, commands);
-        commands.add(new ItemInsertedCommand(j));
-        insertRemoveOffset++;
-        j++;
+    if (prefix == oldEnd) {
+      // Nothing removed, at most a block of items inserted
+      boolean inserted = newEnd > prefix;
+      if (inserted) {
+        commands.add(insertedCommand(prefix, newEnd - prefix));
+      }
+      statistics.onInsertedBlock(inserted && prefix == M, inserted && suffix == M);
+    } else if (prefix == newEnd) {
+      // Nothing inserted, a block of items removed
+      commands.add(removedCommand(prefix, oldEnd - prefix));
+      statistics.onRemovedBlock(prefix == 0, suffix == 0);
+    } else if (oldEnd != newEnd || !computeMoves(prefix, oldEnd, commands)) {
+      computeDiff(prefix, oldEnd, prefix, newEnd, commands);
+    }
+
+    addChangedCommands(commands, oldEnd, newEnd, suffix);
+
+    if (deferChangeDetection) {
+      commands = resolveDeferredChanges(commands);
+    }
+
+    input.commit();
+
+    // TODO batch commands (see batching branch).
+
+    return commands;
+  }
+
+  /**
+   * Adds the min. number of {@link ItemMovedCommand}s if the old and new list range contain the
+   * same items in a different order (see {@link PermutationDiff})
+   *
+   * @return false if the items of the range have not only been reordered
+   */
+  private boolean computeMoves(int start, int end, List<AdapterCommand> commands) {
+    int[] newToOld = PermutationDiff.match(input, start, end, workspace);
+    if (newToOld == null) {
+      return false;
+    }
+
+    int moves = PermutationDiff.addMoves(newToOld, start, end - start, workspace, commands);
+    statistics.onReorder(moves);
+
+    // Positions of ItemChangedCommands refer to the list after all moves
+    for (int j = start; j < end; j++) {
+      addChangedCommand(commands, newToOld[j - start], j);
+      if (mapping != null) {
+        mapping[newToOld[j - start]] = j;
       }
     }
+    return true;
+  }
 
-    // dump out one remainder of one string if the other is exhausted
-    while (i < M || j < N) {
-      if (i == M) {
-        // T item = newList.get(j);
-        // handleInsertCommand(item, j, insertCommands, removeCommands, commands);
+  /**
+   * Runs the {@link DiffEngine} on the given old and new list range and adds the resulting
+   * commands
+   */
+  private void computeDiff(int oldStart, int oldEnd, int newStart, int newEnd,
+      List<AdapterCommand> commands) {
+
+    int[] oldToNew = workspace.intBuffer(DiffWorkspace.SLOT_OLD_TO_NEW, oldEnd);
+    engine.computeMatches(input, oldStart, oldEnd, newStart, newEnd, oldToNew);
+    statistics.onEngine(engine instanceof AutoDiffEngine
+        ? ((AutoDiffEngine<T>) engine).getLastSelectedEngine() : engine);
+
+    int j = newStart;
+    for (int i = oldStart; i < oldEnd; i++) {
+      int match = oldToNew[i];
+      if (match < 0) {
+        // Removed items are always in front of the current position in the new list
+        commands.add(new ItemRemovedCommand(j));
+        continue;
+      }
+
+      if (match < j || match >= newEnd) {
+        throw new IllegalStateException(
+            "DiffEngine " + engine + " returned invalid match " + match + " for position " + i);
+      }
+
+      while (j < match) {
         commands.add(new ItemInsertedCommand(j));
-        insertRemoveOffset++;
         j++;
-      } else if (j == N) {
-        // T item = oldList.get(i);
-        // handleRemoveCommand(item, i + insertRemoveOffset, insertCommands, removeCommands, commands);
-        commands.add(new ItemRemovedCommand(i + insertRemoveOffset));
-        insertRemoveOffset--;
-        i++;
       }
+
+      addChangedCommand(commands, i, j);
+      if (mapping != null) {
+        mapping[i] = j;
+      }
+      j++;
     }
 
-    oldList.clear();
-    oldList.addAll(newList);
+    while (j < newEnd) {
+      commands.add(new ItemInsertedCommand(j));
+      j++;
+    }
+  }
 
-    // TODO batch commands (see batching branch).
-    // TODO move commands (see handleRemoveCommand() methods etc.)
+  /**
+   * Adds a {@link ItemChangedCommand} for each changed item of a block of matching items. Items
+   * shared by reference are skipped.
+   */
+  private void addChangedCommands(List<AdapterCommand> commands, int oldStart, int newStart,
+      int count) {
+    int k = input.sharedRun(oldStart, newStart, count);
+    while (k < count) {
+      addChangedCommand(commands, oldStart + k, newStart + k);
+      k++;
+      k += input.sharedRun(oldStart + k, newStart + k, count - k);
+    }
+  }
 
-    return commands;
+  /**
+   * Adds a {@link ItemChangedCommand} if the item has been changed, or remembers the pair and the
+   * position in the command list if change detection is deferred, or adds the pair to the lazy
+   * changes if it is not visible
+   */
+  private void addChangedCommand(List<AdapterCommand> commands, int oldPosition,
+      int newPosition) {
+    if (lazyChanges != null && (newPosition < visibleFirst || newPosition > visibleLast)) {
+      lazyChanges.add(input.getOldItem(oldPosition), input.getNewItem(newPosition), newPosition);
+    } else if (deferChangeDetection) {
+      deferredOld[deferredCount] = oldPosition;
+      deferredNew[deferredCount] = newPosition;
+      deferredCommandIndex[deferredCount] = commands.size();
+      deferredCount++;
+    } else if (input.hasChanged(oldPosition, newPosition)) {
+      commands.add(new ItemChangedCommand(newPosition));
+    }
+  }
+
+  /**
+   * Detects the changes of all deferred pairs, in parallel chunks if an executor is set and there
+   * are enough pairs, and inserts the {@link ItemChangedCommand}s where they would have been added
+   * by sequential change detection.
+   */
+  private List<AdapterCommand> resolveDeferredChanges(List<AdapterCommand> commands) {
+    final int count = deferredCount;
+    if (count == 0) {
+      return commands;
+    }
+
+    final boolean[] changed = new boolean[count];
+    final int[] oldPositions = deferredOld;
+    final int[] newPositions = deferredNew;
+
+    if (changeDetectionExecutor == null || count < parallelChangeDetectionThreshold
+        || count < 2 * MIN_CHANGE_DETECTION_CHUNK_SIZE) {
+      input.detectChanges(oldPositions, newPositions, 0, count, changed);
+    } else {
+      int chunks = Math.min(MAX_CHANGE_DETECTION_CHUNKS, count / MIN_CHANGE_DETECTION_CHUNK_SIZE);
+      int chunkSize = (count + chunks - 1) / chunks;
+      List<Future<?>> futures = new ArrayList<>(chunks - 1);
+      try {
+        // The first chunk runs on the calling thread
+        for (int from = chunkSize; from < count; from += chunkSize) {
+          final int chunkFrom = from;
+          final int chunkTo = Math.min(count, from + chunkSize);
+          futures.add(changeDetectionExecutor.submit(new Runnable() {
+            @Override public void run() {
+              input.detectChanges(oldPositions, newPositions, chunkFrom, chunkTo, changed);
+            }
+          }));
+        }
+        input.detectChanges(oldPositions, newPositions, 0, chunkSize, changed);
+        for (int f = 0; f < futures.size(); f++) {
+          futures.get(f).get();
+        }
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IllegalStateException("Change detection failed", cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while detecting changes", e);
+      } finally {
+        for (int f = 0; f < futures.size(); f++) {
+          futures.get(f).cancel(false);
+        }
+      }
+    }
+
+    int changedCount = 0;
+    for (int k = 0; k < count; k++) {
+      if (changed[k]) {
+        changedCount++;
+      }
+    }
+    if (changedCount == 0) {
+      return commands;
+    }
+
+    // Merge, keeping the order of sequential change detection
+    List<AdapterCommand> merged = new ArrayList<>(commands.size() + changedCount);
+    int k = 0;
+    for (int c = 0; c <= commands.size(); c++) {
+      while (k < count && deferredCommandIndex[k] == c) {
+        if (changed[k]) {
+          merged.add(new ItemChangedCommand(newPositions[k]));
+        }
+        k++;
+      }
+      if (c < commands.size()) {
+        merged.add(commands.get(c));
+      }
+    }
+    return merged;
+  }
+
+  static AdapterCommand insertedCommand(int position, int itemCount) {
+    return itemCount == 1 ? new ItemInsertedCommand(position)
+        : new ItemRangeInsertedCommand(position, itemCount);
+  }
+
+  static AdapterCommand removedCommand(int position, int itemCount) {
+    return itemCount == 1 ? new ItemRemovedCommand(position)
+        : new ItemRangeRemovedCommand(position, itemCount);
+  }
+
+  static AdapterCommand changedCommand(int position, int itemCount) {
+    return itemCount == 1 ? new ItemChangedCommand(position)
+        : new ItemRangeChangedCommand(position, itemCount);
+  }
+
+  /**
+   * Replaces the old list (the list the next {@link #diff(List)} call compares to) without
+   * calculating the difference. This is used if the commands have been determined otherwise (i.e.
+   * taken from a {@link DiffResultCache}).
+   *
+   * @param newList the new list
+   */
+  void replaceSnapshot(@NonNull List<T> newList) {
+    // Positions of lazy changes of the previous diff are outdated
+    if (lazyChanges != null) {
+      lazyChanges.invalidate();
+      lazyChanges = null;
+    }
+    input.prepare(newList);
+    input.commit();
+    if (traceRecorder != null) {
+      traceRecorder.invalidate();
+    }
   }
 
   /*
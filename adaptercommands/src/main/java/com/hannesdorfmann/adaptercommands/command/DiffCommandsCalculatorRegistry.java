@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.content.ComponentCallbacks2;
+import android.support.annotation.NonNull;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hands out one {@link DiffCommandsCalculator} per list, i.e. for screens with many (nested)
+ * RecyclerViews. The calculators are kept in a {@link ConcurrentHashMap}, so there is no global
+ * lock: Diffs of different lists run concurrently, diffs of the same list are serialized by
+ * {@link #diff(Object, List)}.
+ *
+ * <p>
+ * Calculators that haven't been used for a while can be evicted with {@link #evictIdle()} and
+ * {@link #onTrimMemory(int)} (forward {@link ComponentCallbacks2#onTrimMemory(int)} to it). An
+ * evicted calculator releases its snapshot of the old list, so the next diff of that list is a
+ * first diff again (see {@link DiffCommandsCalculator#diff(List)}) and results in a {@link
+ * EntireDataSetChangedCommand} (or a range insert).
+ * </p>
+ *
+ * <p>
+ * The calculator of a list is locked (synchronized on the calculator) while diffing and while
+ * releasing its {@link DiffWorkspace}. {@link ThreadSafeDiffCommandsCalculator} uses the same lock,
+ * so it is safe to use the calculators returned by {@link #get(Object)} directly if the {@link
+ * Factory} creates {@link ThreadSafeDiffCommandsCalculator}s. Otherwise use {@link #diff(Object,
+ * List)}.
+ * </p>
+ *
+ * @param <K> The type of the list id
+ * @param <T> The type of the items
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class DiffCommandsCalculatorRegistry<K, T> {
+
+  /**
+   * Default time after that an unused calculator is evicted by {@link #evictIdle()}
+   */
+  public static final long DEFAULT_IDLE_EVICTION_MILLIS = 60000;
+
+  /**
+   * Creates the calculator for a list. If two threads request the calculator of the same list
+   * concurrently, the factory may be called twice, but only one calculator is kept.
+   *
+   * @param <K> The type of the list id
+   * @param <T> The type of the items
+   */
+  public interface Factory<K, T> {
+
+    /**
+     * Creates a new calculator
+     *
+     * @param listId The id of the list the calculator is used for
+     * @return the new calculator
+     */
+    @NonNull DiffCommandsCalculator<T> create(@NonNull K listId);
+  }
+
+  private static final class Entry<T> {
+    final DiffCommandsCalculator<T> calculator;
+    volatile long lastUsedMillis;
+
+    Entry(DiffCommandsCalculator<T> calculator, long lastUsedMillis) {
+      this.calculator = calculator;
+      this.lastUsedMillis = lastUsedMillis;
+    }
+  }
+
+  private final ConcurrentMap<K, Entry<T>> entries = new ConcurrentHashMap<>();
+  private final Factory<K, T> factory;
+  private final long idleEvictionMillis;
+
+  /**
+   * Creates a new registry that evicts calculators after {@link #DEFAULT_IDLE_EVICTION_MILLIS}
+   *
+   * @param factory The factory to create the calculators
+   */
+  public DiffCommandsCalculatorRegistry(@NonNull Factory<K, T> factory) {
+    this(factory, DEFAULT_IDLE_EVICTION_MILLIS);
+  }
+
+  /**
+   * Creates a new registry
+   *
+   * @param factory The factory to create the calculators
+   * @param idleEvictionMillis The time in milliseconds after that an unused calculator is evicted
+   * by {@link #evictIdle()}
+   */
+  public DiffCommandsCalculatorRegistry(@NonNull Factory<K, T> factory, long idleEvictionMillis) {
+    if (factory == null) {
+      throw new NullPointerException("factory == null");
+    }
+    if (idleEvictionMillis < 0) {
+      throw new IllegalArgumentException("idleEvictionMillis < 0");
+    }
+    this.factory = factory;
+    this.idleEvictionMillis = idleEvictionMillis;
+  }
+
+  /**
+   * Get the calculator of the given list. Creates a new one if there is none yet.
+   *
+   * @param listId The id of the list
+   * @return The calculator
+   */
+  @NonNull public DiffCommandsCalculator<T> get(@NonNull K listId) {
+    return entry(listId).calculator;
+  }
+
+  /**
+   * Calculates the difference of the given list to the list passed to the previous call with the
+   * same list id. Diffs of different lists run concurrently.
+   *
+   * @param listId The id of the list
+   * @param newList The new items
+   * @return List of commands
+   */
+  @NonNull public List<AdapterCommand> diff(@NonNull K listId, @NonNull List<T> newList) {
+    Entry<T> entry = entry(listId);
+    List<AdapterCommand> commands;
+    synchronized (entry.calculator) {
+      commands = entry.calculator.diff(newList);
+    }
+    entry.lastUsedMillis = nowMillis();
+    return commands;
+  }
+
+  private Entry<T> entry(K listId) {
+    if (listId == null) {
+      throw new NullPointerException("listId == null");
+    }
+
+    Entry<T> entry = entries.get(listId);
+    if (entry == null) {
+      DiffCommandsCalculator<T> calculator = factory.create(listId);
+      if (calculator == null) {
+        throw new NullPointerException("Factory returned null for " + listId);
+      }
+      Entry<T> newEntry = new Entry<>(calculator, nowMillis());
+      entry = entries.putIfAbsent(listId, newEntry);
+      if (entry == null) {
+        entry = newEntry;
+      }
+    }
+    entry.lastUsedMillis = nowMillis();
+    return entry;
+  }
+
+  /**
+   * Removes the calculator of the given list
+   *
+   * @param listId The id of the list
+   * @return true if there was a calculator for this list
+   */
+  public boolean remove(@NonNull K listId) {
+    if (listId == null) {
+      throw new NullPointerException("listId == null");
+    }
+    return entries.remove(listId) != null;
+  }
+
+  /**
+   * @return The number of calculators in this registry
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Evicts all calculators that haven't been used for the idle eviction time
+   *
+   * @return The number of evicted calculators
+   */
+  public int evictIdle() {
+    return evictOlderThan(idleEvictionMillis);
+  }
+
+  /**
+   * Frees memory according to the level passed to {@link ComponentCallbacks2#onTrimMemory(int)}:
+   * <ul>
+   * <li>{@link ComponentCallbacks2#TRIM_MEMORY_MODERATE} and above: all calculators are
+   * evicted</li>
+   * <li>{@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_LOW} and above: idle calculators are
+   * evicted and the {@link DiffWorkspace}s of all others are released</li>
+   * <li>otherwise idle calculators are evicted</li>
+   * </ul>
+   *
+   * @param level The trim memory level
+   */
+  public void onTrimMemory(int level) {
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+      entries.clear();
+      return;
+    }
+
+    evictIdle();
+
+    if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+      for (Entry<T> entry : entries.values()) {
+        synchronized (entry.calculator) {
+          entry.calculator.getWorkspace().release();
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all calculators
+   */
+  public void clear() {
+    entries.clear();
+  }
+
+  private int evictOlderThan(long millis) {
+    long now = nowMillis();
+    int evicted = 0;
+    Iterator<Map.Entry<K, Entry<T>>> iterator = entries.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<K, Entry<T>> mapEntry = iterator.next();
+      Entry<T> entry = mapEntry.getValue();
+      if (now - entry.lastUsedMillis >= millis && entries.remove(mapEntry.getKey(), entry)) {
+        evicted++;
+      }
+    }
+    return evicted;
+  }
+
+  long nowMillis() {
+    return System.nanoTime() / 1000000;
+  }
+}
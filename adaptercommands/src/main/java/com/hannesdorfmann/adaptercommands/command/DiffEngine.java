@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The algorithm a {@link DiffCommandsCalculator} uses to find the items that are in both, the old
+ * and the new list. The calculator turns the matches into {@link AdapterCommand}s: every old item
+ * without a match has been removed, every new item without a match has been inserted.
+ *
+ * @author Hannes Dorfmann
+ * @see LcsDiffEngine
+ * @see SortedMergeDiffEngine
+ * @see HuntSzymanskiDiffEngine
+ * @see AutoDiffEngine
+ * @since 1.0.5
+ */
+public interface DiffEngine<T> {
+
+  /**
+   * Finds the matching items of old list range [oldStart, oldEnd) and new list range [newStart,
+   * newEnd). For each old position in that range the matching new position has to be written
+   * into oldToNew (at the same index as the old position), or -1 if the old item has no match.
+   * Matches must be the same item (see {@link DiffInput#isSameItem(int, int)}) and the matched new
+   * positions must be strictly increasing.
+   *
+   * @param input The input to compare items
+   * @param oldStart The first position of the old list range (inclusive)
+   * @param oldEnd The last position of the old list range (exclusive)
+   * @param newStart The first position of the new list range (inclusive)
+   * @param newEnd The last position of the new list range (exclusive)
+   * @param oldToNew The array the matches have to be written to
+   */
+  public void computeMatches(@NonNull DiffInput<T> input, int oldStart, int oldEnd, int newStart,
+      int newEnd, @NonNull int[] oldToNew);
+}
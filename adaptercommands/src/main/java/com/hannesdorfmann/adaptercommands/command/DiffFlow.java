@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+/**
+ * Minimal reactive streams interfaces, equivalent to {@code java.util.concurrent.Flow} which is
+ * not available on older Android versions (and not in Java 7). Adapting them to RxJava, Reactor or
+ * {@code Flow} is a matter of forwarding the four methods of a subscriber.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public final class DiffFlow {
+
+  private DiffFlow() {
+  }
+
+  /**
+   * A producer of items, the items are delivered to a {@link Subscriber} according to its demand
+   *
+   * @param <T> The type of the items
+   */
+  public interface Publisher<T> {
+
+    /**
+     * Adds the subscriber. {@link Subscriber#onSubscribe(Subscription)} is called before any other
+     * method of the subscriber.
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+  }
+
+  /**
+   * A receiver of items
+   *
+   * @param <T> The type of the items
+   */
+  public interface Subscriber<T> {
+
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable error);
+
+    void onComplete();
+  }
+
+  /**
+   * The connection of a {@link Publisher} and a {@link Subscriber}
+   */
+  public interface Subscription {
+
+    /**
+     * Adds the given number of items to the demand of the subscriber
+     */
+    void request(long n);
+
+    /**
+     * The subscriber doesn't want to receive any more items
+     */
+    void cancel();
+  }
+
+  /**
+   * A {@link Subscriber} and {@link Publisher} at the same time, transforming items
+   *
+   * @param <T> The type of the received items
+   * @param <R> The type of the published items
+   */
+  public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+  }
+}
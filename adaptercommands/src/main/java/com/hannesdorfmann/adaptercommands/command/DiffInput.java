@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+/**
+ * The input of a diff: the old and the new list. Items are addressed by their position in the old
+ * respectively the new list. A {@link DiffEngine} uses this class to compare items, it doesn't
+ * care where the lists come from (see {@link SnapshotDiffInput}).
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public abstract class DiffInput<T> {
+
+  /**
+   * Scratch buffers for engines
+   */
+  DiffWorkspace workspace;
+
+  /**
+   * @return The number of items in the old list
+   */
+  public abstract int oldSize();
+
+  /**
+   * @return The number of items in the new list
+   */
+  public abstract int newSize();
+
+  /**
+   * Checks whether the item at the given position in the old list and the item at the given
+   * position in the new list are the same item
+   */
+  public abstract boolean isSameItem(int oldPosition, int newPosition);
+
+  /**
+   * Checks whether the content of the same item (see {@link #isSameItem(int, int)}) has been
+   * changed
+   */
+  public abstract boolean hasChanged(int oldPosition, int newPosition);
+
+  /**
+   * Get the hash of the item at the given position in the old list. Items that are the same (see
+   * {@link #isSameItem(int, int)}) must have the same hash.
+   */
+  public abstract long oldHash(int oldPosition);
+
+  /**
+   * Get the hash of the item at the given position in the new list. Items that are the same (see
+   * {@link #isSameItem(int, int)}) must have the same hash.
+   */
+  public abstract long newHash(int newPosition);
+
+  /**
+   * Get the item at the given position of the old list. Not every input keeps the old items (see
+   * {@link DiffCommandsCalculator#DiffCommandsCalculator(boolean,
+   * com.hannesdorfmann.adaptercommands.ItemKeyProvider,
+   * com.hannesdorfmann.adaptercommands.ItemFingerprinter)}).
+   *
+   * @throws IllegalStateException if the old items are not available
+   */
+  public abstract T getOldItem(int oldPosition);
+
+  /**
+   * Get the item at the given position of the new list.
+   */
+  public abstract T getNewItem(int newPosition);
+
+  /**
+   * @return true if changes should be detected with {@link #detectChanges(int[], int[], int, int,
+   * boolean[])} instead of {@link #hasChanged(int, int)} pair by pair
+   */
+  boolean hasBulkChangeDetection() {
+    return false;
+  }
+
+  /**
+   * Detects changes of the pairs from (inclusive) to (exclusive) of the given positions.
+   * changed[k] receives the result for the pair k. May be called concurrently for disjoint ranges.
+   */
+  void detectChanges(int[] oldPositions, int[] newPositions, int from, int to,
+      boolean[] changed) {
+    for (int k = from; k < to; k++) {
+      changed[k] = hasChanged(oldPositions[k], newPositions[k]);
+    }
+  }
+
+  /**
+   * Get the number of consecutive positions, starting at the given positions, that hold the same
+   * item (see {@link #isSameItem(int, int)}) in the old and the new list
+   *
+   * @param max The max. number of positions to check
+   */
+  int sameItemRun(int oldPosition, int newPosition, int max) {
+    int run = sharedRun(oldPosition, newPosition, max);
+    while (run < max && isSameItem(oldPosition + run, newPosition + run)) {
+      run++;
+      run += sharedRun(oldPosition + run, newPosition + run, max - run);
+    }
+    return run;
+  }
+
+  /**
+   * Like {@link #sameItemRun(int, int, int)} but backwards, starting right before the given
+   * (exclusive) end positions
+   */
+  int sameItemRunBackwards(int oldEnd, int newEnd, int max) {
+    int run = sharedRunBackwards(oldEnd, newEnd, max);
+    while (run < max && isSameItem(oldEnd - 1 - run, newEnd - 1 - run)) {
+      run++;
+      run += sharedRunBackwards(oldEnd - run, newEnd - run, max - run);
+    }
+    return run;
+  }
+
+  /**
+   * Get the number of consecutive positions, starting at the given positions, that hold the same
+   * instance in the old and the new list. These items are the same item and haven't been changed,
+   * so they don't need to be compared at all. Returns 0 unless sharing can be detected cheaply
+   * (see {@link PersistentList}).
+   *
+   * @param max The max. number of positions to check
+   */
+  int sharedRun(int oldPosition, int newPosition, int max) {
+    return 0;
+  }
+
+  /**
+   * Like {@link #sharedRun(int, int, int)} but backwards, starting right before the given
+   * (exclusive) end positions
+   */
+  int sharedRunBackwards(int oldEnd, int newEnd, int max) {
+    return 0;
+  }
+
+  /**
+   * @return true if {@link #oldFingerprint(int)} returns content fingerprints
+   */
+  boolean hasFingerprints() {
+    return false;
+  }
+
+  /**
+   * Get the content fingerprint of the item at the given position in the old list, see {@link
+   * com.hannesdorfmann.adaptercommands.ItemFingerprinter}
+   *
+   * @return The fingerprint or 0 if there are no fingerprints
+   */
+  long oldFingerprint(int oldPosition) {
+    return 0;
+  }
+
+  /**
+   * Get the hash of the given item, the same value {@link #newHash(int)} returns for it
+   */
+  abstract long hashOf(T item);
+
+  /**
+   * @return true if items with the same hash are always the same item (i.e. the hash is a key, see
+   * {@link com.hannesdorfmann.adaptercommands.ItemKeyProvider})
+   */
+  boolean hasExactHashes() {
+    return false;
+  }
+
+  /**
+   * @return true if {@link #getOldItem(int)} is supported
+   */
+  boolean hasOldItems() {
+    return true;
+  }
+}
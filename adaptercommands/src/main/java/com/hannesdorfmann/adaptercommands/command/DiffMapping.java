@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.List;
+
+/**
+ * The result of {@link DiffCommandsCalculator#diffWithMapping(List)}: the commands plus the
+ * translation of positions between the old and the new list and an index of the new list. Use it
+ * to restore state that refers to positions or items (selection, scroll anchors, pending image
+ * requests etc.) in O(1) per item instead of searching the new list.
+ *
+ * <pre>
+ * DiffMapping&lt;Item&gt; mapping = calculator.diffWithMapping(newItems);
+ * int selected = mapping.getNewPosition(selectedPosition); // -1 if removed
+ * int anchor = mapping.indexOf(anchorItem);
+ * </pre>
+ *
+ * <p>
+ * The mapping is computed from the matches the diff has found anyway. Items that are reported as
+ * changed (see {@link ItemChangedCommand}) or moved (see {@link ItemMovedCommand}) are mapped,
+ * removed and inserted items are not. Note that an item that changed its position is reported as
+ * removed and inserted unless the lists only differ in the order of the items, so {@link
+ * #indexOf(Object)} is the way to find an item in the new list.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public final class DiffMapping<T> {
+
+  private final List<AdapterCommand> commands;
+  private final int[] oldToNew;
+  private final int[] newToOld;
+
+  private final DiffInput<T> hashes;
+  private final boolean exact;
+  private final Object[] items;
+  private final long[] tableHashes;
+  private final int[] tableHeads;
+  private final int[] chain;
+  private final int mask;
+
+  /**
+   * @param oldToNew The new position of each old item, -1 for removed ones
+   * @param input The input of the diff, after the new list has been committed
+   * @param newList The new list
+   */
+  DiffMapping(List<AdapterCommand> commands, int[] oldToNew, DiffInput<T> input,
+      List<T> newList) {
+    this.commands = commands;
+    this.oldToNew = oldToNew;
+
+    int size = newList.size();
+    newToOld = new int[size];
+    for (int j = 0; j < size; j++) {
+      newToOld[j] = -1;
+    }
+    for (int i = 0; i < oldToNew.length; i++) {
+      if (oldToNew[i] != -1) {
+        newToOld[oldToNew[i]] = i;
+      }
+    }
+
+    // Index of the hashes of the committed snapshot, which is the new list now. Chains are
+    // ascending, so that the first position of an item is found.
+    hashes = input;
+    exact = input.hasExactHashes();
+    items = exact ? null : newList.toArray();
+    int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    mask = capacity - 1;
+    tableHashes = new long[capacity];
+    tableHeads = new int[capacity];
+    chain = new int[size];
+    for (int b = 0; b < capacity; b++) {
+      tableHeads[b] = -1;
+    }
+    for (int j = size - 1; j >= 0; j--) {
+      long hash = input.oldHash(j);
+      int bucket = bucket(hash);
+      tableHashes[bucket] = hash;
+      chain[j] = tableHeads[bucket];
+      tableHeads[bucket] = j;
+    }
+  }
+
+  /**
+   * @return The commands that transform the old list into the new list
+   */
+  public List<AdapterCommand> getCommands() {
+    return commands;
+  }
+
+  /**
+   * @return The position in the new list of the item at the given position of the old list, or -1
+   * if the item has been removed
+   */
+  public int getNewPosition(int oldPosition) {
+    return oldToNew[oldPosition];
+  }
+
+  /**
+   * @return The position in the old list of the item at the given position of the new list, or
+   * -1 if the item has been inserted
+   */
+  public int getOldPosition(int newPosition) {
+    return newToOld[newPosition];
+  }
+
+  /**
+   * @return The new position of each old position, -1 for removed items. Must not be modified.
+   */
+  public int[] getOldToNew() {
+    return oldToNew;
+  }
+
+  /**
+   * @return The old position of each new position, -1 for inserted items. Must not be modified.
+   */
+  public int[] getNewToOld() {
+    return newToOld;
+  }
+
+  /**
+   * Get the position of the same item (equal respectively having the same key, see {@link
+   * com.hannesdorfmann.adaptercommands.ItemKeyProvider}) in the new list
+   *
+   * @return The first position of the item or -1 if the new list doesn't contain it
+   */
+  public int indexOf(T item) {
+    if (item == null) {
+      throw new NullPointerException("item == null");
+    }
+    long hash = hashes.hashOf(item);
+    for (int j = tableHeads[bucket(hash)]; j != -1; j = chain[j]) {
+      if (exact || item.equals(items[j])) {
+        return j;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get the position of the item with the given key in the new list. Only supported if the
+   * calculator compares items by key (see {@link
+   * com.hannesdorfmann.adaptercommands.ItemKeyProvider})
+   *
+   * @return The first position of the item or -1 if the new list doesn't contain it
+   * @throws IllegalStateException if the calculator compares items by {@link
+   * Object#equals(Object)}
+   */
+  public int indexOfKey(long key) {
+    if (!exact) {
+      throw new IllegalStateException("Items are compared by equals(), use indexOf() instead");
+    }
+    return tableHeads[bucket(key)];
+  }
+
+  /**
+   * Finds the bucket of the given hash with linear probing. Returns either the bucket containing
+   * the hash or an empty bucket
+   */
+  private int bucket(long hash) {
+    long h = hash * 0x9E3779B97F4A7C15L;
+    int bucket = (int) (h ^ (h >>> 32)) & mask;
+    while (tableHeads[bucket] != -1 && tableHashes[bucket] != hash) {
+      bucket = (bucket + 1) & mask;
+    }
+    return bucket;
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link DiffFlow.Processor} turning a stream of lists into a stream of command batches. Plug it
+ * between a reactive data layer and the adapter.
+ *
+ * <p>
+ * The upstream is requested unbounded, but lists are only diffed if the downstream has requested
+ * a batch. While there is no demand (or a diff is running) only the latest list is kept and
+ * intermediate lists are dropped. Hence every diff compares the latest list to the last list that
+ * has been emitted as a batch. Diffs run on the given {@link Executor}, never on the thread
+ * delivering the lists.
+ * </p>
+ *
+ * <p>
+ * Only a single subscriber is supported. If the calculator throws an exception, the upstream is
+ * canceled and the downstream receives {@link DiffFlow.Subscriber#onError(Throwable)}. The same
+ * happens if the executor rejects a diff.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class DiffProcessor<T>
+    implements DiffFlow.Processor<List<T>, List<AdapterCommand>> {
+
+  private final DiffCommandsCalculator<T> calculator;
+  private final Executor executor;
+
+  // Guarded by this
+  private DiffFlow.Subscription upstream;
+  private DiffFlow.Subscriber<? super List<AdapterCommand>> downstream;
+  private List<T> pending;
+  private long requested;
+  private boolean draining;
+  private boolean upstreamDone;
+  private Throwable upstreamError;
+  private boolean terminated;
+  private boolean canceled;
+
+  /**
+   * Creates a new instance
+   *
+   * @param calculator The calculator to diff the lists. It must not be used by anyone else.
+   * @param executor The executor the diffs run on
+   */
+  public DiffProcessor(@NonNull DiffCommandsCalculator<T> calculator, @NonNull Executor executor) {
+    if (calculator == null) {
+      throw new NullPointerException("calculator == null");
+    }
+    if (executor == null) {
+      throw new NullPointerException("executor == null");
+    }
+    this.calculator = calculator;
+    this.executor = executor;
+  }
+
+  @Override public void subscribe(DiffFlow.Subscriber<? super List<AdapterCommand>> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber == null");
+    }
+
+    synchronized (this) {
+      if (downstream == null) {
+        downstream = subscriber;
+        subscriber = null;
+      }
+    }
+
+    if (subscriber != null) {
+      subscriber.onSubscribe(new DiffFlow.Subscription() {
+        @Override public void request(long n) {
+        }
+
+        @Override public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("DiffProcessor supports only one subscriber"));
+      return;
+    }
+
+    downstream.onSubscribe(new DiffFlow.Subscription() {
+      @Override public void request(long n) {
+        if (n <= 0) {
+          cancelUpstream();
+          error(new IllegalArgumentException("request <= 0"));
+          return;
+        }
+        synchronized (DiffProcessor.this) {
+          requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+        }
+        drain();
+      }
+
+      @Override public void cancel() {
+        synchronized (DiffProcessor.this) {
+          canceled = true;
+          pending = null;
+        }
+        cancelUpstream();
+      }
+    });
+    drain();
+  }
+
+  @Override public void onSubscribe(DiffFlow.Subscription subscription) {
+    boolean cancel;
+    synchronized (this) {
+      cancel = upstream != null || canceled;
+      if (!cancel) {
+        upstream = subscription;
+      }
+    }
+    if (cancel) {
+      subscription.cancel();
+    } else {
+      subscription.request(Long.MAX_VALUE);
+    }
+  }
+
+  @Override public void onNext(List<T> list) {
+    if (list == null) {
+      throw new NullPointerException("list == null");
+    }
+    synchronized (this) {
+      if (canceled || upstreamDone) {
+        return;
+      }
+      // Replaces a list that hasn't been diffed yet
+      pending = list;
+    }
+    drain();
+  }
+
+  @Override public void onError(Throwable error) {
+    synchronized (this) {
+      if (upstreamDone) {
+        return;
+      }
+      upstreamDone = true;
+      upstreamError = error;
+      // Errors don't wait for the pending list
+      pending = null;
+    }
+    drain();
+  }
+
+  @Override public void onComplete() {
+    synchronized (this) {
+      upstreamDone = true;
+    }
+    drain();
+  }
+
+  private void cancelUpstream() {
+    DiffFlow.Subscription subscription;
+    synchronized (this) {
+      subscription = upstream;
+      upstream = null;
+      canceled = true;
+    }
+    if (subscription != null) {
+      subscription.cancel();
+    }
+  }
+
+  private void error(Throwable error) {
+    synchronized (this) {
+      upstreamDone = true;
+      upstreamError = error;
+      pending = null;
+    }
+    drain();
+  }
+
+  /**
+   * Schedules the drain loop on the executor if it isn't running already. If the executor rejects
+   * the drain loop the downstream receives the rejection as error.
+   */
+  private void drain() {
+    DiffFlow.Subscriber<? super List<AdapterCommand>> subscriber;
+    synchronized (this) {
+      if (draining || downstream == null || terminated) {
+        return;
+      }
+      draining = true;
+      subscriber = downstream;
+    }
+
+    try {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          boolean done = false;
+          try {
+            drainLoop();
+            done = true;
+          } finally {
+            if (!done) {
+              // Let the next signal drain again
+              synchronized (DiffProcessor.this) {
+                draining = false;
+              }
+            }
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      synchronized (this) {
+        draining = false;
+        terminated = true;
+        pending = null;
+      }
+      cancelUpstream();
+      subscriber.onError(e);
+    }
+  }
+
+  private void drainLoop() {
+    while (true) {
+      List<T> list;
+      DiffFlow.Subscriber<? super List<AdapterCommand>> subscriber;
+      boolean complete = false;
+      Throwable error = null;
+
+      synchronized (this) {
+        subscriber = downstream;
+        list = null;
+        if (canceled && upstreamError == null) {
+          terminated = true;
+        } else if (requested > 0 && pending != null) {
+          list = pending;
+          pending = null;
+          if (requested != Long.MAX_VALUE) {
+            requested--;
+          }
+        } else if (upstreamDone && pending == null) {
+          terminated = true;
+          complete = upstreamError == null;
+          error = upstreamError;
+        }
+
+        if (list == null && !complete && error == null) {
+          draining = false;
+          return;
+        }
+      }
+
+      if (complete) {
+        subscriber.onComplete();
+        return;
+      }
+      if (error != null) {
+        subscriber.onError(error);
+        return;
+      }
+
+      List<AdapterCommand> commands;
+      try {
+        commands = calculator.diff(list);
+      } catch (RuntimeException e) {
+        cancelUpstream();
+        synchronized (this) {
+          terminated = true;
+        }
+        subscriber.onError(e);
+        return;
+      }
+
+      synchronized (this) {
+        if (canceled && upstreamError == null) {
+          terminated = true;
+          return;
+        }
+      }
+      subscriber.onNext(commands);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded least recently used cache of already calculated {@link AdapterCommand} lists. An
+ * entry is identified by the fingerprint of the old list and the fingerprint of the new list (see
+ * {@link CachingDiffCommandsCalculator}). The cache is bounded by the maximum number of entries
+ * and the (estimated) number of bytes retained by the cached command lists. Whatever limit is
+ * reached first evicts the least recently used entries.
+ *
+ * <p>
+ * Since entries are only identified by fingerprints, a cache instance should only be used by
+ * calculators that have been configured the same way (same {@link
+ * com.hannesdorfmann.adaptercommands.ItemFingerprinter} and {@link
+ * com.hannesdorfmann.adaptercommands.ItemChangedDetector}).
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class DiffResultCache {
+
+  /**
+   * Estimated memory footprint of a cache entry without the cached commands
+   */
+  static final int ENTRY_OVERHEAD_BYTES = 96;
+
+  /**
+   * Estimated memory footprint of a single cached command (including the reference to it)
+   */
+  static final int COMMAND_BYTES = 28;
+
+  private final int maxEntries;
+  private final long maxRetainedBytes;
+  private final LinkedHashMap<Key, List<AdapterCommand>> entries;
+  private long retainedBytes;
+  private long hitCount;
+  private long missCount;
+
+  /**
+   * Creates a new cache
+   *
+   * @param maxEntries The maximum number of entries (transitions) this cache holds
+   * @param maxRetainedBytes The maximum number of bytes (estimated) the cached command lists are
+   * allowed to retain
+   */
+  public DiffResultCache(int maxEntries, long maxRetainedBytes) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries <= 0");
+    }
+    if (maxRetainedBytes <= 0) {
+      throw new IllegalArgumentException("maxRetainedBytes <= 0");
+    }
+    this.maxEntries = maxEntries;
+    this.maxRetainedBytes = maxRetainedBytes;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true);
+  }
+
+  /**
+   * Get the cached commands for the transition from old list to new list
+   *
+   * @param oldFingerprint the fingerprint of the old list
+   * @param newFingerprint the fingerprint of the new list
+   * @return a copy of the cached commands or null, if nothing has been cached for this transition
+   */
+  synchronized List<AdapterCommand> get(long oldFingerprint, long newFingerprint) {
+    List<AdapterCommand> commands = entries.get(new Key(oldFingerprint, newFingerprint));
+    if (commands == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return new ArrayList<>(commands);
+  }
+
+  /**
+   * Puts the commands for the transition from old list to new list into the cache
+   *
+   * @param oldFingerprint the fingerprint of the old list
+   * @param newFingerprint the fingerprint of the new list
+   * @param commands the commands to cache. A copy of this list will be stored.
+   */
+  synchronized void put(long oldFingerprint, long newFingerprint, List<AdapterCommand> commands) {
+    long bytes = estimateBytes(commands);
+    if (bytes > maxRetainedBytes) {
+      return; // Would evict everything else and still not fit
+    }
+
+    List<AdapterCommand> previous =
+        entries.put(new Key(oldFingerprint, newFingerprint), new ArrayList<>(commands));
+    if (previous != null) {
+      retainedBytes -= estimateBytes(previous);
+    }
+    retainedBytes += bytes;
+
+    Iterator<Map.Entry<Key, List<AdapterCommand>>> iterator = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || retainedBytes > maxRetainedBytes)
+        && iterator.hasNext()) {
+      Map.Entry<Key, List<AdapterCommand>> eldest = iterator.next();
+      retainedBytes -= estimateBytes(eldest.getValue());
+      iterator.remove();
+    }
+  }
+
+  /**
+   * Removes all entries from this cache. Hit and miss counters are not reset.
+   */
+  public synchronized void clear() {
+    entries.clear();
+    retainedBytes = 0;
+  }
+
+  /**
+   * @return The number of cached transitions
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * @return The estimated number of bytes retained by this cache
+   */
+  public synchronized long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  /**
+   * @return How often cached commands have been found for a transition
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return How often no cached commands have been found for a transition
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  public int getMaxEntries() {
+    return maxEntries;
+  }
+
+  public long getMaxRetainedBytes() {
+    return maxRetainedBytes;
+  }
+
+  static long estimateBytes(List<AdapterCommand> commands) {
+    return ENTRY_OVERHEAD_BYTES + (long) commands.size() * COMMAND_BYTES;
+  }
+
+  @Override public synchronized String toString() {
+    return "DiffResultCache{" +
+        "size=" + entries.size() +
+        ", retainedBytes=" + retainedBytes +
+        ", hitCount=" + hitCount +
+        ", missCount=" + missCount +
+        '}';
+  }
+
+  /**
+   * Identifies a transition from old list to new list
+   */
+  private static final class Key {
+    final long oldFingerprint;
+    final long newFingerprint;
+
+    Key(long oldFingerprint, long newFingerprint) {
+      this.oldFingerprint = oldFingerprint;
+      this.newFingerprint = newFingerprint;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key) o;
+
+      if (oldFingerprint != key.oldFingerprint) return false;
+      return newFingerprint == key.newFingerprint;
+    }
+
+    @Override public int hashCode() {
+      int result = (int) (oldFingerprint ^ (oldFingerprint >>> 32));
+      result = 31 * result + (int) (newFingerprint ^ (newFingerprint >>> 32));
+      return result;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+/**
+ * Statistics about the diffs a {@link DiffCommandsCalculator} has calculated so far. Use {@link
+ * DiffCommandsCalculator#getStatistics()} to get an instance.
+ *
+ * <p>
+ * A diff takes the fast path if the new list only differs from the old list by a single block of
+ * inserted or removed items (i.e. appending or prepending items, removing items from head or
+ * tail). Then the difference is detected in O(n) and a single range command is returned.
+ * </p>
+ *
+ * <p>
+ * <b>This class is not thread safe!</b> Statistics should be read from the thread that calculates
+ * the diffs.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class DiffStatistics {
+
+  private long diffCount;
+  private long fastPathCount;
+  private long appendCount;
+  private long prependCount;
+  private long headRemovedCount;
+  private long tailRemovedCount;
+  private long reorderCount;
+  private long moveCount;
+  private long totalElapsedNanos;
+  private long lastElapsedNanos;
+  private int lastOldSize;
+  private int lastNewSize;
+  private int lastCommandCount;
+  private DiffEngine<?> currentEngine;
+  private DiffEngine<?> lastEngine;
+
+  DiffStatistics() {
+  }
+
+  void onDiff(int oldSize, int newSize, int commandCount, long elapsedNanos) {
+    diffCount++;
+    lastOldSize = oldSize;
+    lastNewSize = newSize;
+    lastCommandCount = commandCount;
+    lastElapsedNanos = elapsedNanos;
+    totalElapsedNanos += elapsedNanos;
+    lastEngine = currentEngine;
+    currentEngine = null;
+  }
+
+  /**
+   * The given engine computes the matches of the current diff
+   */
+  void onEngine(DiffEngine<?> engine) {
+    currentEngine = engine;
+  }
+
+  /**
+   * A block of items has been inserted (or nothing has been changed at all)
+   */
+  void onInsertedBlock(boolean append, boolean prepend) {
+    fastPathCount++;
+    if (append && !prepend) {
+      appendCount++;
+    } else if (prepend && !append) {
+      prependCount++;
+    }
+  }
+
+  /**
+   * A block of items has been removed
+   */
+  void onRemovedBlock(boolean head, boolean tail) {
+    fastPathCount++;
+    if (head) {
+      headRemovedCount++;
+    } else if (tail) {
+      tailRemovedCount++;
+    }
+  }
+
+  /**
+   * The items have only been reordered and the given number of moves has been emitted
+   */
+  void onReorder(int moves) {
+    fastPathCount++;
+    reorderCount++;
+    moveCount += moves;
+  }
+
+  /**
+   * @return The number of calculated diffs
+   */
+  public long getDiffCount() {
+    return diffCount;
+  }
+
+  /**
+   * @return How many diffs took the fast path (single block of inserted or removed items, only
+   * reordered items, or no structural changes at all)
+   */
+  public long getFastPathCount() {
+    return fastPathCount;
+  }
+
+  /**
+   * @return How many diffs only appended items at the end
+   */
+  public long getAppendCount() {
+    return appendCount;
+  }
+
+  /**
+   * @return How many diffs only prepended items at the beginning
+   */
+  public long getPrependCount() {
+    return prependCount;
+  }
+
+  /**
+   * @return How many diffs only removed items from the beginning
+   */
+  public long getHeadRemovedCount() {
+    return headRemovedCount;
+  }
+
+  /**
+   * @return How many diffs only removed items from the end
+   */
+  public long getTailRemovedCount() {
+    return tailRemovedCount;
+  }
+
+  /**
+   * @return How many diffs only reordered items (see {@link ItemMovedCommand})
+   */
+  public long getReorderCount() {
+    return reorderCount;
+  }
+
+  /**
+   * @return The total number of {@link ItemMovedCommand}s emitted for reordered items
+   */
+  public long getMoveCount() {
+    return moveCount;
+  }
+
+  /**
+   * @return The time in nano seconds all diffs took
+   */
+  public long getTotalElapsedNanos() {
+    return totalElapsedNanos;
+  }
+
+  /**
+   * @return The time in nano seconds the last diff took
+   */
+  public long getLastElapsedNanos() {
+    return lastElapsedNanos;
+  }
+
+  /**
+   * @return The size of the old list of the last diff
+   */
+  public int getLastOldSize() {
+    return lastOldSize;
+  }
+
+  /**
+   * @return The size of the new list of the last diff
+   */
+  public int getLastNewSize() {
+    return lastNewSize;
+  }
+
+  /**
+   * @return The number of commands the last diff returned
+   */
+  public int getLastCommandCount() {
+    return lastCommandCount;
+  }
+
+  /**
+   * @return The engine that computed the matches of the last diff or null if no engine was needed
+   * (i.e. first diff or fast path). If the calculator uses an {@link AutoDiffEngine} this is the
+   * engine it has selected.
+   */
+  public DiffEngine<?> getLastEngine() {
+    return lastEngine;
+  }
+
+  @Override public String toString() {
+    return "DiffStatistics{" +
+        "diffCount=" + diffCount +
+        ", fastPathCount=" + fastPathCount +
+        ", appendCount=" + appendCount +
+        ", prependCount=" + prependCount +
+        ", headRemovedCount=" + headRemovedCount +
+        ", tailRemovedCount=" + tailRemovedCount +
+        ", reorderCount=" + reorderCount +
+        ", moveCount=" + moveCount +
+        ", totalElapsedNanos=" + totalElapsedNanos +
+        ", lastElapsedNanos=" + lastElapsedNanos +
+        ", lastEngine=" + (lastEngine == null ? null : lastEngine.getClass().getSimpleName()) +
+        '}';
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the records of a trace file written by {@link DiffTraceRecorder}
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+final class DiffTraceReader implements Closeable {
+
+  /**
+   * A recorded diff
+   */
+  static final class Record {
+    long elapsedNanos;
+    int commandCount;
+    String engine;
+    boolean fingerprints;
+
+    /**
+     * false if the calculator had no old list (first diff)
+     */
+    boolean hasSnapshot;
+
+    /**
+     * true if the old list has been written to this record, false if it is the new list of the
+     * previous record
+     */
+    boolean hasOldItems;
+    long[] oldKeys;
+    long[] oldFingerprints;
+    long[] newKeys;
+    long[] newFingerprints;
+  }
+
+  private final DataInputStream in;
+  private Record previous;
+
+  DiffTraceReader(File file) throws IOException {
+    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    try {
+      if (in.readInt() != DiffTraceRecorder.MAGIC) {
+        throw new IOException(file + " is not a trace file");
+      }
+      int version = in.readByte();
+      if (version != DiffTraceRecorder.VERSION) {
+        throw new IOException("Unsupported version " + version + " of " + file);
+      }
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the next record
+   *
+   * @return The record or null if there are no more (complete) records
+   */
+  Record next() throws IOException {
+    int flags = in.read();
+    if (flags == -1) {
+      return null;
+    }
+
+    Record record = new Record();
+    try {
+      record.fingerprints = (flags & DiffTraceRecorder.FLAG_FINGERPRINTS) != 0;
+      record.hasSnapshot = (flags & DiffTraceRecorder.FLAG_NO_SNAPSHOT) == 0;
+      record.hasOldItems = (flags & DiffTraceRecorder.FLAG_OLD_ITEMS) != 0;
+      record.elapsedNanos = in.readLong();
+      record.commandCount = in.readInt();
+      record.engine = in.readUTF();
+
+      if (record.hasOldItems) {
+        int oldSize = in.readInt();
+        record.oldKeys = new long[oldSize];
+        record.oldFingerprints = new long[oldSize];
+        readItems(record.oldKeys, record.oldFingerprints, record.fingerprints);
+      } else if (record.hasSnapshot) {
+        if (previous == null) {
+          throw new IOException("Record without old list at the beginning of the file");
+        }
+        record.oldKeys = previous.newKeys;
+        record.oldFingerprints = previous.newFingerprints;
+      } else {
+        record.oldKeys = new long[0];
+        record.oldFingerprints = record.oldKeys;
+      }
+
+      int newSize = in.readInt();
+      record.newKeys = new long[newSize];
+      record.newFingerprints = new long[newSize];
+      readItems(record.newKeys, record.newFingerprints, record.fingerprints);
+    } catch (EOFException e) {
+      // Incomplete record, i.e. the app has been killed while writing
+      return null;
+    }
+
+    previous = record;
+    return record;
+  }
+
+  private void readItems(long[] keys, long[] fingerprints, boolean hasFingerprints)
+      throws IOException {
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = in.readLong();
+      if (hasFingerprints) {
+        fingerprints[i] = in.readLong();
+      }
+    }
+  }
+
+  @Override public void close() throws IOException {
+    in.close();
+  }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Records the input of every diff of a {@link DiffCommandsCalculator} into a binary trace file,
+ * so that slow diffs can be reproduced offline with {@link DiffTraceReplay}. Enable it with {@link
+ * DiffCommandsCalculator#setTraceRecorder(DiffTraceRecorder)}.
+ *
+ * <p>
+ * Instead of the items only their shape is recorded: one hash per item (the key of an {@link
+ * com.hannesdorfmann.adaptercommands.ItemKeyProvider} or {@link Object#hashCode()}), the content
+ * fingerprints if the calculator uses an {@link com.hannesdorfmann.adaptercommands.ItemFingerprinter},
+ * the elapsed time, the number of commands and the engine that has been used. Changes detected by
+ * an {@link com.hannesdorfmann.adaptercommands.ItemChangedDetector} are not recorded. The old list
+ * of a diff is the new list of the previous record, so it is only written to the first record of a
+ * file and after the old list has been replaced otherwise (i.e. {@link
+ * DiffCommandsCalculator#applyPatch(ListPatch)}).
+ * </p>
+ *
+ * <p>
+ * Records are appended and flushed right away. Once a file exceeds the max. size it is rotated:
+ * trace.bin becomes trace.bin.1, trace.bin.1 becomes trace.bin.2 and so on, the oldest file is
+ * deleted. A file can exceed the max. size by one record. If writing fails, recording stops and
+ * the exception is available by {@link #getError()}, diffs are never affected.
+ * </p>
+ *
+ * <p>
+ * The recorder must only be used by a single calculator. It writes on the thread that calls
+ * {@link DiffCommandsCalculator#diff(java.util.List)}.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class DiffTraceRecorder implements Closeable {
+
+  static final int MAGIC = 0x41435452; // "ACTR"
+  static final int VERSION = 1;
+
+  static final int FLAG_OLD_ITEMS = 1;
+  static final int FLAG_FINGERPRINTS = 2;
+  static final int FLAG_NO_SNAPSHOT = 4;
+
+  private static final long[] EMPTY = new long[0];
+
+  private final File file;
+  private final long maxFileBytes;
+  private final int maxFiles;
+
+  private DataOutputStream out;
+  private long initialBytes;
+  private long fileBytes;
+  private IOException error;
+  private boolean closed;
+  private long recordCount;
+
+  /**
+   * true if the old list of the next diff is the new list of the last record of the current file
+   */
+  private boolean chained;
+  private boolean oldItemsCaptured;
+  private long[] oldKeys = EMPTY;
+  private long[] oldFingerprints = EMPTY;
+  private int oldSize;
+
+  /**
+   * Creates a new recorder. An existing file is continued.
+   *
+   * @param file The trace file
+   * @param maxFileBytes The size of a file that triggers the rotation
+   * @param maxFiles The max. number of files including the current one
+   */
+  public DiffTraceRecorder(@NonNull File file, long maxFileBytes, int maxFiles) {
+    if (file == null) {
+      throw new NullPointerException("file == null");
+    }
+    if (maxFileBytes <= 0) {
+      throw new IllegalArgumentException("maxFileBytes <= 0");
+    }
+    if (maxFiles < 1) {
+      throw new IllegalArgumentException("maxFiles < 1");
+    }
+    this.file = file;
+    this.maxFileBytes = maxFileBytes;
+    this.maxFiles = maxFiles;
+  }
+
+  /**
+   * Called before the diff, captures the old list if it won't be available from the previous
+   * record
+   */
+  synchronized void beforeDiff(SnapshotDiffInput<?> input) {
+    if (closed) {
+      return;
+    }
+    try {
+      if (out == null || fileBytes >= maxFileBytes) {
+        open(out != null);
+      }
+    } catch (IOException e) {
+      fail(e);
+      return;
+    }
+
+    oldItemsCaptured = !chained;
+    if (!oldItemsCaptured) {
+      return;
+    }
+
+    oldSize = input.hasSnapshot() ? input.oldSize() : -1;
+    int size = Math.max(oldSize, 0);
+    if (oldKeys.length < size) {
+      oldKeys = new long[size];
+      oldFingerprints = new long[size];
+    }
+    for (int i = 0; i < size; i++) {
+      oldKeys[i] = input.oldHash(i);
+      oldFingerprints[i] = input.oldFingerprint(i);
+    }
+  }
+
+  /**
+   * Called after the diff has been committed: the new list is the old list of the input now
+   */
+  synchronized void afterDiff(DiffInput<?> input, long elapsedNanos, int commandCount,
+      @Nullable DiffEngine<?> engine) {
+    if (closed || out == null) {
+      return;
+    }
+
+    boolean fingerprints = input.hasFingerprints();
+    int flags = fingerprints ? FLAG_FINGERPRINTS : 0;
+    if (oldItemsCaptured) {
+      flags |= oldSize == -1 ? FLAG_NO_SNAPSHOT : FLAG_OLD_ITEMS;
+    }
+
+    try {
+      out.writeByte(flags);
+      out.writeLong(elapsedNanos);
+      out.writeInt(commandCount);
+      out.writeUTF(engine == null ? "" : engine.getClass().getSimpleName());
+      if ((flags & FLAG_OLD_ITEMS) != 0) {
+        out.writeInt(oldSize);
+        for (int i = 0; i < oldSize; i++) {
+          out.writeLong(oldKeys[i]);
+          if (fingerprints) {
+            out.writeLong(oldFingerprints[i]);
+          }
+        }
+      }
+      int newSize = input.oldSize();
+      out.writeInt(newSize);
+      for (int i = 0; i < newSize; i++) {
+        out.writeLong(input.oldHash(i));
+        if (fingerprints) {
+          out.writeLong(input.oldFingerprint(i));
+        }
+      }
+      out.flush();
+      fileBytes = initialBytes + out.size();
+      chained = true;
+      recordCount++;
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * The old list has been replaced without a recorded diff, so the next record must contain it
+   */
+  synchronized void invalidate() {
+    chained = false;
+  }
+
+  /**
+   * @return The number of records written by this recorder
+   */
+  public synchronized long getRecordCount() {
+    return recordCount;
+  }
+
+  /**
+   * @return The exception that has stopped the recording or null
+   */
+  @Nullable public synchronized IOException getError() {
+    return error;
+  }
+
+  /**
+   * Stops recording and closes the file
+   */
+  @Override public synchronized void close() throws IOException {
+    closed = true;
+    if (out != null) {
+      DataOutputStream stream = out;
+      out = null;
+      stream.close();
+    }
+  }
+
+  private void open(boolean rotate) throws IOException {
+    if (out != null) {
+      out.close();
+      out = null;
+    }
+    if (rotate || file.length() >= maxFileBytes) {
+      rotate();
+    }
+
+    initialBytes = file.length();
+    out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file, initialBytes > 0)));
+    if (initialBytes == 0) {
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.flush();
+    }
+    fileBytes = initialBytes + out.size();
+
+    // Every file starts with a record that contains the old list
+    chained = false;
+  }
+
+  private void rotate() throws IOException {
+    File oldest = maxFiles == 1 ? file : rotatedFile(maxFiles - 1);
+    if (oldest.exists() && !oldest.delete()) {
+      throw new IOException("Can't delete " + oldest);
+    }
+    for (int i = maxFiles - 2; i >= 0; i--) {
+      File from = i == 0 ? file : rotatedFile(i);
+      if (from.exists() && !from.renameTo(rotatedFile(i + 1))) {
+        throw new IOException("Can't rename " + from);
+      }
+    }
+  }
+
+  private File rotatedFile(int index) {
+    return new File(file.getPath() + "." + index);
+  }
+
+  private void fail(IOException e) {
+    error = e;
+    closed = true;
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException ignored) {
+      }
+      out = null;
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import com.hannesdorfmann.adaptercommands.Log2Histogram;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Replays trace files written by {@link DiffTraceRecorder} on the JVM to compare the recorded
+ * diffs with the diffs of another {@link DiffEngine}:
+ *
+ * <pre>
+ * java -cp adaptercommands.jar:android.jar com.hannesdorfmann.adaptercommands.command.DiffTraceReplay \
+ *     --engine lcs --engine hs --repeat 5 trace.bin.1 trace.bin
+ * </pre>
+ *
+ * <p>
+ * Every recorded diff is calculated again by a {@link DiffCommandsCalculator} with the given
+ * engine. The items are replaced by their recorded hashes and fingerprints. The fastest of the
+ * repetitions is reported, next to the recorded time and the number of diffs whose number of
+ * commands differs from the recorded one. Changes detected by an {@link
+ * com.hannesdorfmann.adaptercommands.ItemChangedDetector} are not recorded, hence not replayed.
+ * Trace files must be passed in chronological order (oldest rotated file first).
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public final class DiffTraceReplay {
+
+  /**
+   * The names of the engines that can be replayed
+   */
+  public static final List<String> ENGINES = Arrays.asList("lcs", "hs", "auto");
+
+  /**
+   * The result of a replay
+   */
+  public static final class Result {
+
+    private final String engine;
+    private final Log2Histogram recordedNanos = new Log2Histogram();
+    private final Log2Histogram replayedNanos = new Log2Histogram();
+    private long recordedCommands;
+    private long replayedCommands;
+    private int commandCountMismatches;
+
+    Result(String engine) {
+      this.engine = engine;
+    }
+
+    /**
+     * @return The name of the replayed engine
+     */
+    @NonNull public String getEngine() {
+      return engine;
+    }
+
+    /**
+     * @return The number of replayed diffs
+     */
+    public long getDiffCount() {
+      return replayedNanos.getCount();
+    }
+
+    /**
+     * @return The recorded times
+     */
+    @NonNull public Log2Histogram getRecordedNanos() {
+      return recordedNanos;
+    }
+
+    /**
+     * @return The times of the replay
+     */
+    @NonNull public Log2Histogram getReplayedNanos() {
+      return replayedNanos;
+    }
+
+    /**
+     * @return The number of recorded commands of all diffs
+     */
+    public long getRecordedCommands() {
+      return recordedCommands;
+    }
+
+    /**
+     * @return The number of commands of all replayed diffs
+     */
+    public long getReplayedCommands() {
+      return replayedCommands;
+    }
+
+    /**
+     * @return The number of diffs whose number of commands differs from the recorded one
+     */
+    public int getCommandCountMismatches() {
+      return commandCountMismatches;
+    }
+
+    /**
+     * Writes a human readable summary
+     */
+    public void dump(@NonNull Appendable out) throws IOException {
+      out.append("engine=").append(engine)
+          .append(" diffs=").append(String.valueOf(getDiffCount()))
+          .append(" commands=").append(String.valueOf(replayedCommands))
+          .append(" (recorded ").append(String.valueOf(recordedCommands))
+          .append(", ").append(String.valueOf(commandCountMismatches))
+          .append(" diffs differ)\n  recorded [ns]: ");
+      recordedNanos.dump(out);
+      out.append("\n  replayed [ns]: ");
+      replayedNanos.dump(out);
+      out.append('\n');
+    }
+  }
+
+  /**
+   * An item of a trace
+   */
+  static final class TraceItem {
+    final long key;
+    final long fingerprint;
+
+    TraceItem(long key, long fingerprint) {
+      this.key = key;
+      this.fingerprint = fingerprint;
+    }
+  }
+
+  private static final ItemKeyProvider<TraceItem> KEY_PROVIDER =
+      new ItemKeyProvider<TraceItem>() {
+        @Override public long getKey(TraceItem item) {
+          return item.key;
+        }
+      };
+
+  private static final ItemFingerprinter<TraceItem> FINGERPRINTER =
+      new ItemFingerprinter<TraceItem>() {
+        @Override public long fingerprint(TraceItem item) {
+          return item.fingerprint;
+        }
+      };
+
+  private DiffTraceReplay() {
+  }
+
+  /**
+   * Replays the given trace files
+   *
+   * @param files The trace files in chronological order
+   * @param engine The name of the engine, see {@link #ENGINES}
+   * @param repeat How often each diff is calculated, the fastest run is reported
+   * @return The result
+   */
+  @NonNull public static Result replay(@NonNull List<File> files, @NonNull String engine,
+      int repeat) throws IOException {
+    if (files == null) {
+      throw new NullPointerException("files == null");
+    }
+    if (!ENGINES.contains(engine)) {
+      throw new IllegalArgumentException("Unknown engine " + engine + ", use one of " + ENGINES);
+    }
+    if (repeat < 1) {
+      throw new IllegalArgumentException("repeat < 1");
+    }
+
+    Result result = new Result(engine);
+    for (int i = 0; i < files.size(); i++) {
+      DiffTraceReader reader = new DiffTraceReader(files.get(i));
+      try {
+        replay(reader, engine, repeat, result);
+      } finally {
+        reader.close();
+      }
+    }
+    return result;
+  }
+
+  private static void replay(DiffTraceReader reader, String engine, int repeat, Result result)
+      throws IOException {
+    DiffCommandsCalculator<TraceItem> calculator = null;
+    List<TraceItem> oldItems = null;
+
+    DiffTraceReader.Record record;
+    while ((record = reader.next()) != null) {
+      List<TraceItem> newItems = items(record.newKeys, record.newFingerprints);
+      if (record.hasOldItems || !record.hasSnapshot || calculator == null) {
+        oldItems = items(record.oldKeys, record.oldFingerprints);
+        calculator = null;
+      }
+
+      long fastest = Long.MAX_VALUE;
+      int commandCount = 0;
+      for (int r = 0; r < repeat; r++) {
+        if (calculator == null || r > 0) {
+          calculator = newCalculator(engine, record.fingerprints);
+          if (record.hasSnapshot) {
+            calculator.replaceSnapshot(oldItems);
+          }
+        }
+        long start = System.nanoTime();
+        commandCount = calculator.diff(newItems).size();
+        fastest = Math.min(fastest, System.nanoTime() - start);
+      }
+
+      result.recordedNanos.record(record.elapsedNanos);
+      result.replayedNanos.record(fastest);
+      result.recordedCommands += record.commandCount;
+      result.replayedCommands += commandCount;
+      if (commandCount != record.commandCount) {
+        result.commandCountMismatches++;
+      }
+      oldItems = newItems;
+    }
+  }
+
+  private static DiffCommandsCalculator<TraceItem> newCalculator(String engine,
+      boolean fingerprints) {
+    DiffEngine<TraceItem> diffEngine;
+    if ("hs".equals(engine)) {
+      diffEngine = new HuntSzymanskiDiffEngine<>();
+    } else if ("auto".equals(engine)) {
+      diffEngine = new AutoDiffEngine<>();
+    } else {
+      diffEngine = new LcsDiffEngine<>();
+    }
+    return new DiffCommandsCalculator<>(false, KEY_PROVIDER, fingerprints ? FINGERPRINTER : null,
+        diffEngine);
+  }
+
+  private static List<TraceItem> items(long[] keys, long[] fingerprints) {
+    List<TraceItem> items = new ArrayList<>(keys.length);
+    for (int i = 0; i < keys.length; i++) {
+      items.add(new TraceItem(keys[i], fingerprints[i]));
+    }
+    return items;
+  }
+
+  /**
+   * Usage: DiffTraceReplay [--engine lcs|hs|auto]... [--repeat n] file...
+   */
+  public static void main(String[] args) throws IOException {
+    List<String> engines = new ArrayList<>();
+    List<File> files = new ArrayList<>();
+    int repeat = 3;
+    for (int i = 0; i < args.length; i++) {
+      if ("--engine".equals(args[i]) && i + 1 < args.length) {
+        engines.add(args[++i]);
+      } else if ("--repeat".equals(args[i]) && i + 1 < args.length) {
+        repeat = Integer.parseInt(args[++i]);
+      } else {
+        files.add(new File(args[i]));
+      }
+    }
+    if (files.isEmpty()) {
+      System.err.println("Usage: DiffTraceReplay [--engine lcs|hs|auto]... [--repeat n] file...");
+      System.exit(1);
+    }
+    if (engines.isEmpty()) {
+      engines.addAll(ENGINES);
+    }
+
+    for (String engine : engines) {
+      replay(files, engine, repeat).dump(System.out);
+    }
+  }
+}
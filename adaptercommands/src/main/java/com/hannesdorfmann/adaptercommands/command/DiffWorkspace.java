@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Scratch buffers that are reused across diff calls, so that diffing lists of similar size over
+ * and over again doesn't allocate new arrays every time. Each {@link DiffCommandsCalculator} owns
+ * a workspace, but a workspace can also be passed in explicitly (see {@link
+ * DiffCommandsCalculator#setWorkspace(DiffWorkspace)}) to share it between calculators that are
+ * never used at the same time.
+ *
+ * <p>
+ * Buffers only grow while diffing. To not keep huge buffers forever, they are released when the
+ * workspace hasn't been used for a configurable idle period, or shrunk after a size spike: if a
+ * buffer has been much larger than needed for a number of consecutive diffs.
+ * </p>
+ *
+ * <p>
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class DiffWorkspace {
+
+  /**
+   * Default idle period after which all buffers are released
+   */
+  public static final long DEFAULT_IDLE_RELEASE_MILLIS = 30000;
+
+  /**
+   * A buffer counts as oversized if it's more than this factor larger than needed
+   */
+  public static final int DEFAULT_SPIKE_FACTOR = 4;
+
+  /**
+   * Number of consecutive diffs a buffer must be oversized to get shrunk
+   */
+  public static final int DEFAULT_SHRINK_AFTER_DIFFS = 8;
+
+  static final int SLOT_OLD_TO_NEW = 0;
+  static final int SLOT_LCS_TABLE = 1;
+  static final int SLOT_ENGINE_1 = 2;
+  static final int SLOT_ENGINE_2 = 3;
+  static final int SLOT_ENGINE_3 = 4;
+  static final int SLOT_ENGINE_4 = 5;
+  static final int SLOT_ENGINE_5 = 6;
+  static final int SLOT_ENGINE_6 = 7;
+  static final int SLOT_CHANGE_OLD = 8;
+  static final int SLOT_CHANGE_NEW = 9;
+  static final int SLOT_CHANGE_INDEX = 10;
+  static final int SLOT_COUNT = 11;
+
+  private static final int[] EMPTY_INTS = new int[0];
+  private static final long[] EMPTY_LONGS = new long[0];
+
+  private final long idleReleaseMillis;
+  private final int spikeFactor;
+  private final int shrinkAfterDiffs;
+
+  private final int[][] intBuffers = new int[SLOT_COUNT][];
+  private final long[][] longBuffers = new long[SLOT_COUNT][];
+
+  /**
+   * The largest size requested per slot during the current diff
+   */
+  private final int[] intRequested = new int[SLOT_COUNT];
+  private final int[] longRequested = new int[SLOT_COUNT];
+
+  /**
+   * Number of consecutive diffs a buffer has been oversized
+   */
+  private final int[] intOversized = new int[SLOT_COUNT];
+  private final int[] longOversized = new int[SLOT_COUNT];
+
+  private long lastUsedMillis;
+
+  /**
+   * Creates a new workspace with default idle period and spike detection
+   */
+  public DiffWorkspace() {
+    this(DEFAULT_IDLE_RELEASE_MILLIS, DEFAULT_SPIKE_FACTOR, DEFAULT_SHRINK_AFTER_DIFFS);
+  }
+
+  /**
+   * Creates a new workspace
+   *
+   * @param idleReleaseMillis All buffers are released if this workspace hasn't been used for
+   * the given time in milliseconds
+   * @param spikeFactor A buffer counts as oversized if it is more than spikeFactor times larger
+   * than needed
+   * @param shrinkAfterDiffs A buffer is shrunk if it has been oversized for the given number of
+   * consecutive diffs
+   */
+  public DiffWorkspace(long idleReleaseMillis, int spikeFactor, int shrinkAfterDiffs) {
+    if (idleReleaseMillis <= 0) {
+      throw new IllegalArgumentException("idleReleaseMillis <= 0");
+    }
+    if (spikeFactor < 2) {
+      throw new IllegalArgumentException("spikeFactor < 2");
+    }
+    if (shrinkAfterDiffs <= 0) {
+      throw new IllegalArgumentException("shrinkAfterDiffs <= 0");
+    }
+    this.idleReleaseMillis = idleReleaseMillis;
+    this.spikeFactor = spikeFactor;
+    this.shrinkAfterDiffs = shrinkAfterDiffs;
+  }
+
+  /**
+   * Get an int buffer of at least the given size. The content is undefined.
+   */
+  @NonNull int[] intBuffer(int slot, int minSize) {
+    if (minSize > intRequested[slot]) {
+      intRequested[slot] = minSize;
+    }
+    int[] buffer = intBuffers[slot];
+    if (buffer == null || buffer.length < minSize) {
+      buffer = minSize == 0 ? EMPTY_INTS : new int[grow(minSize)];
+      intBuffers[slot] = buffer;
+    }
+    return buffer;
+  }
+
+  /**
+   * Grows the int buffer of the given slot to at least the given size and keeps the content of
+   * the first keep entries.
+   */
+  @NonNull int[] growIntBuffer(int slot, int minSize, int keep) {
+    int[] old = intBuffers[slot];
+    int[] buffer = intBuffer(slot, minSize);
+    if (old != null && old != buffer) {
+      System.arraycopy(old, 0, buffer, 0, keep);
+    }
+    return buffer;
+  }
+
+  /**
+   * Get a long buffer of at least the given size. The content is undefined.
+   */
+  @NonNull long[] longBuffer(int slot, int minSize) {
+    if (minSize > longRequested[slot]) {
+      longRequested[slot] = minSize;
+    }
+    long[] buffer = longBuffers[slot];
+    if (buffer == null || buffer.length < minSize) {
+      buffer = minSize == 0 ? EMPTY_LONGS : new long[grow(minSize)];
+      longBuffers[slot] = buffer;
+    }
+    return buffer;
+  }
+
+  private static int grow(int minSize) {
+    // 1/8 headroom, so that slowly growing lists don't allocate on every diff
+    int size = minSize + (minSize >> 3);
+    return size < 0 ? minSize : size;
+  }
+
+  /**
+   * Must be called before a diff uses this workspace. Releases all buffers if this workspace has
+   * been idle for too long.
+   */
+  void begin() {
+    releaseIfIdle();
+  }
+
+  /**
+   * Must be called after a diff has used this workspace. Shrinks oversized buffers.
+   */
+  void end() {
+    for (int slot = 0; slot < SLOT_COUNT; slot++) {
+      int[] ints = intBuffers[slot];
+      if (ints != null) {
+        int requested = intRequested[slot];
+        if (ints.length > (long) requested * spikeFactor) {
+          if (++intOversized[slot] >= shrinkAfterDiffs) {
+            intBuffers[slot] = null;
+            intOversized[slot] = 0;
+          }
+        } else {
+          intOversized[slot] = 0;
+        }
+      }
+
+      long[] longs = longBuffers[slot];
+      if (longs != null) {
+        int requested = longRequested[slot];
+        if (longs.length > (long) requested * spikeFactor) {
+          if (++longOversized[slot] >= shrinkAfterDiffs) {
+            longBuffers[slot] = null;
+            longOversized[slot] = 0;
+          }
+        } else {
+          longOversized[slot] = 0;
+        }
+      }
+
+      intRequested[slot] = 0;
+      longRequested[slot] = 0;
+    }
+    lastUsedMillis = nowMillis();
+  }
+
+  /**
+   * Releases all buffers if this workspace hasn't been used for the configured idle period.
+   * Can be called any time this workspace is not in use, i.e. when the system is running low on
+   * memory.
+   *
+   * @return true if buffers have been released
+   */
+  public boolean releaseIfIdle() {
+    if (lastUsedMillis != 0 && nowMillis() - lastUsedMillis >= idleReleaseMillis) {
+      release();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Releases all buffers. Must not be called while this workspace is in use.
+   */
+  public void release() {
+    for (int slot = 0; slot < SLOT_COUNT; slot++) {
+      intBuffers[slot] = null;
+      longBuffers[slot] = null;
+      intOversized[slot] = 0;
+      longOversized[slot] = 0;
+    }
+  }
+
+  /**
+   * @return The number of bytes currently retained by the buffers of this workspace
+   */
+  public long getRetainedBytes() {
+    long bytes = 0;
+    for (int slot = 0; slot < SLOT_COUNT; slot++) {
+      if (intBuffers[slot] != null) {
+        bytes += 4L * intBuffers[slot].length;
+      }
+      if (longBuffers[slot] != null) {
+        bytes += 8L * longBuffers[slot].length;
+      }
+    }
+    return bytes;
+  }
+
+  long nowMillis() {
+    return System.nanoTime() / 1000000;
+  }
+}
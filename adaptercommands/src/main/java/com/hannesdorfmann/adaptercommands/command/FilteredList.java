@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import com.hannesdorfmann.adaptercommands.ItemFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A filtered view of a source list. Instead of diffing the whole filtered list whenever the filter
+ * or the source list changes, only the affected rows are evaluated and the {@link AdapterCommand}s
+ * are returned directly, in positions of the filtered list:
+ * <ul>
+ * <li>{@link #narrowFilter(ItemFilter)} (i.e. a character has been appended to the search query)
+ * only evaluates the visible rows</li>
+ * <li>{@link #widenFilter(ItemFilter)} (i.e. a character has been removed from the search query)
+ * only evaluates the hidden rows</li>
+ * <li>{@link #onSourceInserted(int, int)}, {@link #onSourceRemoved(int, int)} and {@link
+ * #onSourceChanged(int, int)} only evaluate the given rows</li>
+ * </ul>
+ * The source positions of the visible rows are kept in a sorted int array, so mapping positions
+ * is a binary search. Inserting and removing source rows shifts the following entries of this
+ * array.
+ *
+ * <p>
+ * The source list is not copied. Modify it and call the corresponding onSource method afterwards.
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class FilteredList<T> {
+
+  private static final int NONE = 0;
+  private static final int INSERTED = 1;
+  private static final int REMOVED = 2;
+  private static final int CHANGED = 3;
+
+  private final List<T> source;
+  private ItemFilter<? super T> filter;
+
+  // Sorted source positions of the visible items
+  private int[] visible;
+  private int visibleCount;
+
+  // Pending command that the next command may be merged into
+  private int pendingType;
+  private int pendingStart;
+  private int pendingCount;
+
+  /**
+   * Creates a new instance and applies the filter to all items of the source list
+   *
+   * @param source The source list
+   * @param filter The filter
+   */
+  public FilteredList(@NonNull List<T> source, @NonNull ItemFilter<? super T> filter) {
+    if (source == null) {
+      throw new NullPointerException("source == null");
+    }
+    if (filter == null) {
+      throw new NullPointerException("filter == null");
+    }
+    this.source = source;
+    this.filter = filter;
+    this.visible = new int[Math.max(16, source.size())];
+    for (int i = 0; i < source.size(); i++) {
+      if (filter.accept(source.get(i))) {
+        visible[visibleCount++] = i;
+      }
+    }
+  }
+
+  /**
+   * Replaces the filter and evaluates all items
+   *
+   * @param filter The new filter
+   * @return The commands to execute
+   */
+  @NonNull public List<AdapterCommand> setFilter(@NonNull ItemFilter<? super T> filter) {
+    return applyFilter(filter, true, true);
+  }
+
+  /**
+   * Replaces the filter by one that accepts a subset of the items the current filter accepts.
+   * Only visible items are evaluated.
+   *
+   * @param filter The new filter
+   * @return The commands to execute
+   */
+  @NonNull public List<AdapterCommand> narrowFilter(@NonNull ItemFilter<? super T> filter) {
+    return applyFilter(filter, true, false);
+  }
+
+  /**
+   * Replaces the filter by one that accepts a superset of the items the current filter accepts.
+   * Only hidden items are evaluated.
+   *
+   * @param filter The new filter
+   * @return The commands to execute
+   */
+  @NonNull public List<AdapterCommand> widenFilter(@NonNull ItemFilter<? super T> filter) {
+    return applyFilter(filter, false, true);
+  }
+
+  private List<AdapterCommand> applyFilter(ItemFilter<? super T> filter, boolean evaluateVisible,
+      boolean evaluateHidden) {
+    if (filter == null) {
+      throw new NullPointerException("filter == null");
+    }
+    this.filter = filter;
+
+    List<AdapterCommand> commands = new ArrayList<>();
+    int[] newVisible = new int[Math.max(16, evaluateHidden ? source.size() : visibleCount)];
+    int newCount = 0;
+    int position = 0;
+    int v = 0;
+
+    if (evaluateHidden) {
+      for (int i = 0; i < source.size(); i++) {
+        boolean wasVisible = v < visibleCount && visible[v] == i;
+        if (wasVisible) {
+          v++;
+        }
+        boolean isVisible = wasVisible && !evaluateVisible || filter.accept(source.get(i));
+        if (isVisible) {
+          newVisible[newCount++] = i;
+        }
+        position = emit(commands, position, wasVisible, isVisible, false);
+      }
+    } else {
+      // Only visible items can be removed
+      for (; v < visibleCount; v++) {
+        boolean isVisible = filter.accept(source.get(visible[v]));
+        if (isVisible) {
+          newVisible[newCount++] = visible[v];
+        }
+        position = emit(commands, position, true, isVisible, false);
+      }
+    }
+    flush(commands);
+
+    visible = newVisible;
+    visibleCount = newCount;
+    return commands;
+  }
+
+  /**
+   * Items have been inserted into the source list
+   *
+   * @param sourcePosition The position of the first inserted item in the source list
+   * @param count The number of inserted items
+   * @return The commands to execute
+   */
+  @NonNull public List<AdapterCommand> onSourceInserted(int sourcePosition, int count) {
+    checkRange(sourcePosition, count, source.size());
+    List<AdapterCommand> commands = new ArrayList<>();
+    int v = lowerBound(sourcePosition);
+
+    // Shift the following items
+    for (int k = v; k < visibleCount; k++) {
+      visible[k] += count;
+    }
+
+    int[] inserted = new int[count];
+    int insertedCount = 0;
+    for (int i = sourcePosition; i < sourcePosition + count; i++) {
+      if (filter.accept(source.get(i))) {
+        inserted[insertedCount++] = i;
+      }
+    }
+
+    if (insertedCount > 0) {
+      ensureCapacity(visibleCount + insertedCount);
+      System.arraycopy(visible, v, visible, v + insertedCount, visibleCount - v);
+      System.arraycopy(inserted, 0, visible, v, insertedCount);
+      visibleCount += insertedCount;
+      commands.add(DiffCommandsCalculator.insertedCommand(v, insertedCount));
+    }
+    return commands;
+  }
+
+  /**
+   * Items have been removed from the source list
+   *
+   * @param sourcePosition The position of the first removed item in the source list
+   * @param count The number of removed items
+   * @return The commands to execute
+   */
+  @NonNull public List<AdapterCommand> onSourceRemoved(int sourcePosition, int count) {
+    checkRange(sourcePosition, count, source.size() + count);
+    List<AdapterCommand> commands = new ArrayList<>();
+    int from = lowerBound(sourcePosition);
+    int to = lowerBound(sourcePosition + count);
+
+    for (int k = to; k < visibleCount; k++) {
+      visible[k] -= count;
+    }
+
+    int removed = to - from;
+    if (removed > 0) {
+      System.arraycopy(visible, to, visible, from, visibleCount - to);
+      visibleCount -= removed;
+      commands.add(DiffCommandsCalculator.removedCommand(from, removed));
+    }
+    return commands;
+  }
+
+  /**
+   * Items of the source list have been changed. They are evaluated again, so they may appear in
+   * or disappear from the filtered list.
+   *
+   * @param sourcePosition The position of the first changed item in the source list
+   * @param count The number of changed items
+   * @return The commands to execute
+   */
+  @NonNull public List<AdapterCommand> onSourceChanged(int sourcePosition, int count) {
+    checkRange(sourcePosition, count, source.size());
+    List<AdapterCommand> commands = new ArrayList<>();
+    int from = lowerBound(sourcePosition);
+    int to = lowerBound(sourcePosition + count);
+
+    int[] changed = new int[count];
+    int changedCount = 0;
+    int position = from;
+    int v = from;
+    for (int i = sourcePosition; i < sourcePosition + count; i++) {
+      boolean wasVisible = v < to && visible[v] == i;
+      if (wasVisible) {
+        v++;
+      }
+      boolean isVisible = filter.accept(source.get(i));
+      if (isVisible) {
+        changed[changedCount++] = i;
+      }
+      position = emit(commands, position, wasVisible, isVisible, true);
+    }
+    flush(commands);
+
+    int delta = changedCount - (to - from);
+    ensureCapacity(visibleCount + delta);
+    System.arraycopy(visible, to, visible, to + delta, visibleCount - to);
+    System.arraycopy(changed, 0, visible, from, changedCount);
+    visibleCount += delta;
+    return commands;
+  }
+
+  /**
+   * @return The number of visible items
+   */
+  public int size() {
+    return visibleCount;
+  }
+
+  /**
+   * @return The visible item at the given position of the filtered list
+   */
+  public T get(int position) {
+    return source.get(getSourcePosition(position));
+  }
+
+  /**
+   * @return The position in the source list of the item at the given position of the filtered list
+   */
+  public int getSourcePosition(int position) {
+    if (position < 0 || position >= visibleCount) {
+      throw new IndexOutOfBoundsException("position " + position + ", size " + visibleCount);
+    }
+    return visible[position];
+  }
+
+  /**
+   * @return The position in the filtered list of the item at the given position of the source list
+   * or -1 if it is hidden
+   */
+  public int getFilteredPosition(int sourcePosition) {
+    int position = Arrays.binarySearch(visible, 0, visibleCount, sourcePosition);
+    return position < 0 ? -1 : position;
+  }
+
+  /**
+   * Adds the command for a single row, merging it into the pending command if possible
+   *
+   * @return the position of the next row
+   */
+  private int emit(List<AdapterCommand> commands, int position, boolean wasVisible,
+      boolean isVisible, boolean changed) {
+    int type;
+    if (wasVisible && !isVisible) {
+      type = REMOVED;
+    } else if (!wasVisible && isVisible) {
+      type = INSERTED;
+    } else if (wasVisible && changed) {
+      type = CHANGED;
+    } else {
+      type = NONE;
+    }
+
+    if (type != pendingType || type == NONE
+        || (type != REMOVED && pendingStart + pendingCount != position)
+        || (type == REMOVED && pendingStart != position)) {
+      flush(commands);
+      pendingType = type;
+      pendingStart = position;
+      pendingCount = 0;
+    }
+    pendingCount++;
+    return isVisible ? position + 1 : position;
+  }
+
+  private void flush(List<AdapterCommand> commands) {
+    if (pendingCount > 0) {
+      if (pendingType == INSERTED) {
+        commands.add(DiffCommandsCalculator.insertedCommand(pendingStart, pendingCount));
+      } else if (pendingType == REMOVED) {
+        commands.add(DiffCommandsCalculator.removedCommand(pendingStart, pendingCount));
+      } else if (pendingType == CHANGED) {
+        commands.add(DiffCommandsCalculator.changedCommand(pendingStart, pendingCount));
+      }
+    }
+    pendingType = NONE;
+    pendingCount = 0;
+  }
+
+  /**
+   * @return index of the first visible entry with a source position >= the given one
+   */
+  private int lowerBound(int sourcePosition) {
+    int low = 0;
+    int high = visibleCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (visible[mid] < sourcePosition) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (visible.length < capacity) {
+      visible = Arrays.copyOf(visible, Math.max(capacity, visible.length + (visible.length >> 1)));
+    }
+  }
+
+  private static void checkRange(int position, int count, int size) {
+    if (position < 0 || count < 0 || position + count > size) {
+      throw new IndexOutOfBoundsException(
+          "position " + position + ", count " + count + ", size " + size);
+    }
+  }
+}
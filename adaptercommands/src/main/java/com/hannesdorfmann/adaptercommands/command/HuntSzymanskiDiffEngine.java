@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+
+/**
+ * A {@link DiffEngine} implementing the Hunt-Szymanski longest common subsequence algorithm.
+ * The positions of the old items are indexed by hash (see {@link DiffInput#oldHash(int)}), so
+ * only pairs of matching items are visited. The runtime is O((r + n) log n) where r is the number
+ * of matching pairs. This makes it a good fit if most of the list is replaced (i.e. search results,
+ * category switches) or items are unique, but it degrades if many items are equal to each other.
+ * All buffers are taken from the {@link DiffWorkspace}.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class HuntSzymanskiDiffEngine<T> implements DiffEngine<T> {
+
+  @Override public void computeMatches(@NonNull DiffInput<T> input, int oldStart, int oldEnd,
+      int newStart, int newEnd, @NonNull int[] oldToNew) {
+
+    DiffWorkspace workspace = input.workspace;
+    int oldCount = oldEnd - oldStart;
+
+    for (int i = oldStart; i < oldEnd; i++) {
+      oldToNew[i] = -1;
+    }
+    if (oldCount == 0 || newEnd == newStart) {
+      return;
+    }
+
+    // Hash table: hash -> chain of old positions, descending because inserted ascending at head
+    int capacity = Integer.highestOneBit(Math.max(2, oldCount) * 2 - 1) << 1;
+    int mask = capacity - 1;
+    long[] tableHashes = workspace.longBuffer(DiffWorkspace.SLOT_ENGINE_1, capacity);
+    int[] tableHeads = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_2, capacity);
+    int[] chain = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_3, oldCount);
+    for (int b = 0; b < capacity; b++) {
+      tableHeads[b] = -1;
+    }
+
+    for (int i = oldStart; i < oldEnd; i++) {
+      long hash = input.oldHash(i);
+      int bucket = bucket(hash, mask, tableHashes, tableHeads);
+      if (tableHeads[bucket] == -1) {
+        tableHashes[bucket] = hash;
+      }
+      chain[i - oldStart] = tableHeads[bucket];
+      tableHeads[bucket] = i;
+    }
+
+    // thresh[k] = smallest old position that ends a common subsequence of length k + 1
+    int maxLength = Math.min(oldCount, newEnd - newStart);
+    int[] thresh = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_4, maxLength);
+    int[] links = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_5, maxLength);
+    int length = 0;
+
+    // nodes (old position, new position, previous node) of the candidate subsequences
+    int[] nodes = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_6, 3 * 64);
+    int nodeCount = 0;
+
+    for (int j = newStart; j < newEnd; j++) {
+      long hash = input.newHash(j);
+      int bucket = bucket(hash, mask, tableHashes, tableHeads);
+      for (int i = tableHeads[bucket]; i != -1; i = chain[i - oldStart]) {
+        if (!input.isSameItem(i, j)) {
+          continue;
+        }
+
+        // Binary search for smallest k with thresh[k] >= i
+        int low = 0;
+        int high = length;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (thresh[mid] < i) {
+            low = mid + 1;
+          } else {
+            high = mid;
+          }
+        }
+
+        if (low == length || i < thresh[low]) {
+          thresh[low] = i;
+          if (3 * nodeCount + 3 > nodes.length) {
+            nodes = workspace.growIntBuffer(DiffWorkspace.SLOT_ENGINE_6, nodes.length * 2,
+                3 * nodeCount);
+          }
+          int node = 3 * nodeCount++;
+          nodes[node] = i;
+          nodes[node + 1] = j;
+          nodes[node + 2] = low == 0 ? -1 : links[low - 1];
+          links[low] = node;
+          if (low == length) {
+            length++;
+          }
+        }
+      }
+    }
+
+    if (length > 0) {
+      for (int node = links[length - 1]; node != -1; node = nodes[node + 2]) {
+        oldToNew[nodes[node]] = nodes[node + 1];
+      }
+    }
+  }
+
+  /**
+   * Finds the bucket of the given hash with linear probing. Returns either the bucket containing
+   * the hash or an empty bucket
+   */
+  private static int bucket(long hash, int mask, long[] tableHashes, int[] tableHeads) {
+    long h = hash * 0x9E3779B97F4A7C15L;
+    int bucket = (int) (h ^ (h >>> 32)) & mask;
+    while (tableHeads[bucket] != -1 && tableHashes[bucket] != hash) {
+      bucket = (bucket + 1) & mask;
+    }
+    return bucket;
+  }
+}
@@ -43,6 +43,14 @@ public class ItemMovedCommand implements AdapterCommand {
     this.toPosition = toPosition;
   }
 
+  public int getFromPosition() {
+    return fromPosition;
+  }
+
+  public int getToPosition() {
+    return toPosition;
+  }
+
   @MainThread @Override public void execute(@NonNull RecyclerView.Adapter<?> adapter) {
     adapter.notifyItemMoved(fromPosition, toPosition);
   }
@@ -44,6 +44,14 @@ public class ItemRangeInsertedCommand implements AdapterCommand {
     this.itemCount = itemCount;
   }
 
+  public int getStartPosition() {
+    return startPosition;
+  }
+
+  public int getItemCount() {
+    return itemCount;
+  }
+
   @MainThread @Override public void execute(@NonNull RecyclerView.Adapter<?> adapter) {
     adapter.notifyItemRangeInserted(startPosition, itemCount);
   }
@@ -38,6 +38,10 @@ public class ItemRemovedCommand implements AdapterCommand {
     this.position = position;
   }
 
+  public int getPosition() {
+    return position;
+  }
+
   @MainThread @Override public void execute(@NonNull RecyclerView.Adapter<?> adapter) {
     adapter.notifyItemRemoved(position);
   }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.util.List;
+
+/**
+ * A {@link DiffInput} that doesn't keep references to the items of the old list. Instead, only the
+ * key (see {@link ItemKeyProvider}) and the content fingerprint (see {@link ItemFingerprinter}) of
+ * each item are stored in parallel arrays. Two items are the same item if their keys are equal. An
+ * item has been changed if the fingerprints are different.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+class KeyDiffInput<T> extends SnapshotDiffInput<T> implements PatchableDiffInput<T> {
+
+  private static final long[] EMPTY = new long[0];
+
+  private final ItemKeyProvider<T> keyProvider;
+  private final ItemFingerprinter<T> fingerprinter;
+
+  private boolean hasSnapshot;
+  private long[] oldKeys = EMPTY;
+  private long[] oldFingerprints = EMPTY;
+  private int oldSize;
+  private long[] newKeys = EMPTY;
+  private long[] newFingerprints = EMPTY;
+  private int newSize;
+  private List<T> newList;
+
+  KeyDiffInput(ItemKeyProvider<T> keyProvider, ItemFingerprinter<T> fingerprinter) {
+    this.keyProvider = keyProvider;
+    this.fingerprinter = fingerprinter;
+  }
+
+  @Override public int oldSize() {
+    return oldSize;
+  }
+
+  @Override public int newSize() {
+    return newSize;
+  }
+
+  @Override public boolean isSameItem(int oldPosition, int newPosition) {
+    return oldKeys[oldPosition] == newKeys[newPosition];
+  }
+
+  @Override int sameItemRun(int oldPosition, int newPosition, int max) {
+    return LongArrayScan.matchingRun(oldKeys, oldPosition, newKeys, newPosition, max);
+  }
+
+  @Override int sameItemRunBackwards(int oldEnd, int newEnd, int max) {
+    return LongArrayScan.matchingRunBackwards(oldKeys, oldEnd, newKeys, newEnd, max);
+  }
+
+  @Override public boolean hasChanged(int oldPosition, int newPosition) {
+    return fingerprinter != null && oldFingerprints[oldPosition] != newFingerprints[newPosition];
+  }
+
+  @Override public long oldHash(int oldPosition) {
+    return oldKeys[oldPosition];
+  }
+
+  @Override public long newHash(int newPosition) {
+    return newKeys[newPosition];
+  }
+
+  @Override long hashOf(T item) {
+    return keyProvider.getKey(item);
+  }
+
+  @Override boolean hasExactHashes() {
+    return true;
+  }
+
+  @Override public T getOldItem(int oldPosition) {
+    throw new IllegalStateException("Old items are not kept, only their keys and fingerprints");
+  }
+
+  @Override public T getNewItem(int newPosition) {
+    return newList.get(newPosition);
+  }
+
+  @Override boolean hasOldItems() {
+    return false;
+  }
+
+  @Override boolean hasSnapshot() {
+    return hasSnapshot;
+  }
+
+  @Override boolean hasFingerprints() {
+    return fingerprinter != null;
+  }
+
+  @Override long oldFingerprint(int oldPosition) {
+    return fingerprinter != null ? oldFingerprints[oldPosition] : 0;
+  }
+
+  @Override PatchableDiffInput<T> asPatchable() {
+    return this;
+  }
+
+  @Override public int indexOfOld(T item) {
+    long key = keyProvider.getKey(item);
+    for (int i = 0; i < oldSize; i++) {
+      if (oldKeys[i] == key) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override public void insertOld(int position, List<T> items) {
+    int count = items.size();
+    int size = oldSize + count;
+    if (oldKeys.length < size) {
+      int capacity = Math.max(size, oldSize + (oldSize >> 1));
+      oldKeys = copyOf(oldKeys, oldSize, capacity);
+      if (fingerprinter != null) {
+        oldFingerprints = copyOf(oldFingerprints, oldSize, capacity);
+      }
+    }
+
+    System.arraycopy(oldKeys, position, oldKeys, position + count, oldSize - position);
+    if (fingerprinter != null) {
+      System.arraycopy(oldFingerprints, position, oldFingerprints, position + count,
+          oldSize - position);
+    }
+    oldSize = size;
+    for (int i = 0; i < count; i++) {
+      updateOld(position + i, items.get(i));
+    }
+  }
+
+  @Override public void removeOld(int position, int count) {
+    int tail = oldSize - position - count;
+    System.arraycopy(oldKeys, position + count, oldKeys, position, tail);
+    if (fingerprinter != null) {
+      System.arraycopy(oldFingerprints, position + count, oldFingerprints, position, tail);
+    }
+    oldSize -= count;
+  }
+
+  @Override public void moveOld(int fromPosition, int toPosition) {
+    oldKeys[toPosition] = move(oldKeys, fromPosition, toPosition);
+    if (fingerprinter != null) {
+      oldFingerprints[toPosition] = move(oldFingerprints, fromPosition, toPosition);
+    }
+  }
+
+  @Override public void updateOld(int position, T item) {
+    oldKeys[position] = keyProvider.getKey(item);
+    if (fingerprinter != null) {
+      oldFingerprints[position] = fingerprinter.fingerprint(item);
+    }
+  }
+
+  @Override public void clearSnapshot() {
+    oldSize = 0;
+    newSize = 0;
+    newList = null;
+    hasSnapshot = false;
+  }
+
+  /**
+   * Shifts the values between from and to by one towards from, so that to can take the value that
+   * has been at from
+   *
+   * @return The value that has been at from
+   */
+  private static long move(long[] values, int from, int to) {
+    long value = values[from];
+    if (from < to) {
+      System.arraycopy(values, from + 1, values, from, to - from);
+    } else {
+      System.arraycopy(values, to, values, to + 1, from - to);
+    }
+    return value;
+  }
+
+  private static long[] copyOf(long[] values, int size, int capacity) {
+    long[] copy = new long[capacity];
+    System.arraycopy(values, 0, copy, 0, size);
+    return copy;
+  }
+
+  @Override void prepare(List<T> newList) {
+    int size = newList.size();
+    if (newKeys.length < size) {
+      newKeys = new long[size];
+      if (fingerprinter != null) {
+        newFingerprints = new long[size];
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      T item = newList.get(i);
+      newKeys[i] = keyProvider.getKey(item);
+      if (fingerprinter != null) {
+        newFingerprints[i] = fingerprinter.fingerprint(item);
+      }
+    }
+    newSize = size;
+    this.newList = newList;
+  }
+
+  @Override void commit() {
+    // Swap buffers, the old arrays will be reused by the next prepare()
+    long[] tmp = oldKeys;
+    oldKeys = newKeys;
+    newKeys = tmp;
+
+    tmp = oldFingerprints;
+    oldFingerprints = newFingerprints;
+    newFingerprints = tmp;
+
+    oldSize = newSize;
+    newSize = 0;
+    newList = null;
+    hasSnapshot = true;
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The matching pairs of old and new items of a diff whose change detection has been skipped,
+ * because they were not in the visible range (see {@link DiffCommandsCalculator#setVisibleRange(int,
+ * int)}). Positions are positions of the new list of that diff.
+ *
+ * <p>
+ * Evaluate the pairs when they scroll into the visible range with {@link #evaluate(int, int)} or
+ * all of them in the background with {@link #evaluateAll()} and execute the returned commands on
+ * the main thread. The next diff of the calculator invalidates this instance: the remaining pairs
+ * are dropped and all methods return no commands anymore. That is fine for rows that are not
+ * attached to the RecyclerView, as they are bound with the new items anyway when they scroll in.
+ * </p>
+ *
+ * <p>
+ * This class is thread safe.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class LazyChanges<T> {
+
+  private final ItemChangedDetector<T> detector;
+
+  // Guarded by this, items are null if already claimed for evaluation
+  private Object[] oldItems = new Object[16];
+  private Object[] newItems = new Object[16];
+  private int[] positions = new int[16];
+  private int count;
+  private int remaining;
+  private boolean invalidated;
+
+  LazyChanges(ItemChangedDetector<T> detector) {
+    this.detector = detector;
+  }
+
+  synchronized void add(T oldItem, T newItem, int position) {
+    if (count == positions.length) {
+      int capacity = count * 2;
+      oldItems = Arrays.copyOf(oldItems, capacity);
+      newItems = Arrays.copyOf(newItems, capacity);
+      positions = Arrays.copyOf(positions, capacity);
+    }
+    oldItems[count] = oldItem;
+    newItems[count] = newItem;
+    positions[count] = position;
+    count++;
+    remaining++;
+  }
+
+  synchronized void invalidate() {
+    invalidated = true;
+    Arrays.fill(oldItems, 0, count, null);
+    Arrays.fill(newItems, 0, count, null);
+    remaining = 0;
+  }
+
+  /**
+   * Evaluates the pairs in the given range of positions (inclusive)
+   *
+   * @param firstPosition The first position
+   * @param lastPosition The last position
+   * @return The change commands of the changed items in this range
+   */
+  @NonNull public List<AdapterCommand> evaluate(int firstPosition, int lastPosition) {
+    List<AdapterCommand> commands = new ArrayList<>();
+    List<T> claimedOld = new ArrayList<>();
+    List<T> claimedNew = new ArrayList<>();
+    int[] claimedPositions;
+
+    // Claim the pairs, so that the detector runs without holding the lock
+    synchronized (this) {
+      if (invalidated || remaining == 0) {
+        return commands;
+      }
+
+      // Positions are ascending
+      int from = Arrays.binarySearch(positions, 0, count, firstPosition);
+      if (from < 0) {
+        from = -from - 1;
+      }
+      claimedPositions = new int[Math.min(remaining, count - from)];
+      for (int k = from; k < count && positions[k] <= lastPosition; k++) {
+        if (oldItems[k] != null) {
+          claimedPositions[claimedOld.size()] = positions[k];
+          claimedOld.add(LazyChanges.<T>cast(oldItems[k]));
+          claimedNew.add(LazyChanges.<T>cast(newItems[k]));
+          oldItems[k] = null;
+          newItems[k] = null;
+          remaining--;
+        }
+      }
+    }
+
+    int changeStart = -1;
+    int changeEnd = -1;
+    for (int k = 0; k < claimedOld.size(); k++) {
+      if (!detector.hasChanged(claimedOld.get(k), claimedNew.get(k))) {
+        continue;
+      }
+
+      int position = claimedPositions[k];
+      if (changeStart != -1 && position != changeEnd) {
+        commands.add(DiffCommandsCalculator.changedCommand(changeStart, changeEnd - changeStart));
+        changeStart = -1;
+      }
+      if (changeStart == -1) {
+        changeStart = position;
+      }
+      changeEnd = position + 1;
+    }
+    if (changeStart != -1) {
+      commands.add(DiffCommandsCalculator.changedCommand(changeStart, changeEnd - changeStart));
+    }
+
+    synchronized (this) {
+      if (invalidated) {
+        // Positions are outdated
+        commands.clear();
+      }
+    }
+    return commands;
+  }
+
+  @SuppressWarnings("unchecked") private static <T> T cast(Object item) {
+    return (T) item;
+  }
+
+  /**
+   * Evaluates all remaining pairs, i.e. on a background thread
+   *
+   * @return The change commands of all changed items
+   */
+  @NonNull public List<AdapterCommand> evaluateAll() {
+    return evaluate(Integer.MIN_VALUE, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return The number of pairs that haven't been evaluated yet
+   */
+  public synchronized int getRemainingCount() {
+    return remaining;
+  }
+
+  /**
+   * @return true if the calculator has calculated another diff since
+   */
+  public synchronized boolean isInvalidated() {
+    return invalidated;
+  }
+}
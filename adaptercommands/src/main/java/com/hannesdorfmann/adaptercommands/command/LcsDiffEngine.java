@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+
+/**
+ * The default {@link DiffEngine}. Calculates the longest common subsequence of the old and new
+ * list with dynamic programming. Runtime and memory are O(n*m). The table is reused across diffs
+ * (see {@link DiffWorkspace}).
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class LcsDiffEngine<T> implements DiffEngine<T> {
+
+  @Override public void computeMatches(@NonNull DiffInput<T> input, int oldStart, int oldEnd,
+      int newStart, int newEnd, @NonNull int[] oldToNew) {
+
+    int M = oldEnd - oldStart;
+    int N = newEnd - newStart;
+
+    // opt[i * W + j] = length of LCS of oldList[i..M] and y[j..N]
+    int W = N + 1;
+    long tableSize = (long) (M + 1) * W;
+    if (tableSize > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException(
+          "Lists are too large for " + getClass().getSimpleName() + ": " + M + " x " + N);
+    }
+    int[] opt = input.workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, (int) tableSize);
+
+    // The table is reused, so clear last row and last column
+    for (int j = 0; j <= N; j++) {
+      opt[M * W + j] = 0;
+    }
+    for (int i = 0; i < M; i++) {
+      opt[i * W + N] = 0;
+    }
+
+    // compute length of LCS and all subproblems via dynamic programming
+    for (int i = M - 1; i >= 0; i--) {
+      int row = i * W;
+      for (int j = N - 1; j >= 0; j--) {
+        if (input.isSameItem(oldStart + i, newStart + j)) {
+          opt[row + j] = opt[row + W + j + 1] + 1;
+        } else {
+          opt[row + j] = Math.max(opt[row + W + j], opt[row + j + 1]);
+        }
+      }
+    }
+
+    // recover LCS itself
+    int i = 0, j = 0;
+    while (i < M && j < N) {
+      if (input.isSameItem(oldStart + i, newStart + j)) {
+        oldToNew[oldStart + i] = newStart + j;
+        i++;
+        j++;
+      } else if (opt[(i + 1) * W + j] >= opt[i * W + j + 1]) {
+        oldToNew[oldStart + i] = -1;
+        i++;
+      } else {
+        j++;
+      }
+    }
+
+    for (; i < M; i++) {
+      oldToNew[oldStart + i] = -1;
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of operations (i.e. deltas sent by a server) that can be applied on the snapshot of a
+ * {@link DiffCommandsCalculator} without diffing the whole list, see {@link
+ * DiffCommandsCalculator#applyPatch(ListPatch)}.
+ *
+ * <pre>
+ * ListPatch&lt;Item&gt; patch = new ListPatch&lt;Item&gt;()
+ *     .insert(0, newItem)
+ *     .removeItem(deletedItem)
+ *     .update(5, updatedItem);
+ * List&lt;AdapterCommand&gt; commands = calculator.applyPatch(patch);
+ * </pre>
+ *
+ * <p>
+ * Operations are applied in the order they have been added, so positions refer to the list that
+ * results from all previous operations. Positional operations address items by their position,
+ * keyed operations by the item itself: the item in the snapshot that is the same item (equal
+ * respectively having the same key, see {@link
+ * com.hannesdorfmann.adaptercommands.ItemKeyProvider}) is looked up.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class ListPatch<T> {
+
+  static final int INSERT = 0;
+  static final int REMOVE = 1;
+  static final int MOVE = 2;
+  static final int UPDATE = 3;
+  static final int REMOVE_ITEM = 4;
+  static final int MOVE_ITEM = 5;
+  static final int UPDATE_ITEM = 6;
+
+  /**
+   * A single operation
+   */
+  static final class Operation<T> {
+    final int type;
+    final int position;
+    final int count; // or the target position of a move
+    final List<T> items;
+
+    Operation(int type, int position, int count, List<T> items) {
+      this.type = type;
+      this.position = position;
+      this.count = count;
+      this.items = items;
+    }
+  }
+
+  private final List<Operation<T>> operations = new ArrayList<>();
+
+  /**
+   * Inserts an item
+   *
+   * @param position The position of the inserted item
+   * @param item The item
+   * @return this
+   */
+  public ListPatch<T> insert(int position, @NonNull T item) {
+    return insert(position, Collections.singletonList(checkItem(item)));
+  }
+
+  /**
+   * Inserts items
+   *
+   * @param position The position of the first inserted item
+   * @param items The items
+   * @return this
+   */
+  public ListPatch<T> insert(int position, @NonNull List<T> items) {
+    checkPosition(position);
+    if (items == null) {
+      throw new NullPointerException("items == null");
+    }
+    for (int i = 0; i < items.size(); i++) {
+      checkItem(items.get(i));
+    }
+    if (!items.isEmpty()) {
+      operations.add(new Operation<>(INSERT, position, items.size(), new ArrayList<>(items)));
+    }
+    return this;
+  }
+
+  /**
+   * Removes items
+   *
+   * @param position The position of the first removed item
+   * @param count The number of removed items
+   * @return this
+   */
+  public ListPatch<T> remove(int position, int count) {
+    checkPosition(position);
+    if (count < 0) {
+      throw new IllegalArgumentException("count < 0");
+    }
+    if (count > 0) {
+      operations.add(new Operation<T>(REMOVE, position, count, null));
+    }
+    return this;
+  }
+
+  /**
+   * Moves an item
+   *
+   * @param fromPosition The current position of the item
+   * @param toPosition The position of the item after the move
+   * @return this
+   */
+  public ListPatch<T> move(int fromPosition, int toPosition) {
+    checkPosition(fromPosition);
+    checkPosition(toPosition);
+    operations.add(new Operation<T>(MOVE, fromPosition, toPosition, null));
+    return this;
+  }
+
+  /**
+   * Replaces an item by a new version of it
+   *
+   * @param position The position of the item
+   * @param item The new item
+   * @return this
+   */
+  public ListPatch<T> update(int position, @NonNull T item) {
+    checkPosition(position);
+    operations.add(new Operation<>(UPDATE, position, 1, Collections.singletonList(checkItem(item))));
+    return this;
+  }
+
+  /**
+   * Removes the same item as the given one
+   *
+   * @param item The item to remove
+   * @return this
+   */
+  public ListPatch<T> removeItem(@NonNull T item) {
+    operations.add(
+        new Operation<>(REMOVE_ITEM, -1, 1, Collections.singletonList(checkItem(item))));
+    return this;
+  }
+
+  /**
+   * Moves the same item as the given one
+   *
+   * @param item The item to move
+   * @param toPosition The position of the item after the move
+   * @return this
+   */
+  public ListPatch<T> moveItem(@NonNull T item, int toPosition) {
+    checkPosition(toPosition);
+    operations.add(
+        new Operation<>(MOVE_ITEM, -1, toPosition, Collections.singletonList(checkItem(item))));
+    return this;
+  }
+
+  /**
+   * Replaces the same item as the given one by the given one
+   *
+   * @param item The new version of the item
+   * @return this
+   */
+  public ListPatch<T> updateItem(@NonNull T item) {
+    operations.add(
+        new Operation<>(UPDATE_ITEM, -1, 1, Collections.singletonList(checkItem(item))));
+    return this;
+  }
+
+  /**
+   * @return The number of operations
+   */
+  public int size() {
+    return operations.size();
+  }
+
+  /**
+   * @return true if there are no operations
+   */
+  public boolean isEmpty() {
+    return operations.isEmpty();
+  }
+
+  List<Operation<T>> getOperations() {
+    return operations;
+  }
+
+  private static void checkPosition(int position) {
+    if (position < 0) {
+      throw new IndexOutOfBoundsException("position < 0: " + position);
+    }
+  }
+
+  private static <T> T checkItem(T item) {
+    if (item == null) {
+      throw new NullPointerException("item == null");
+    }
+    return item;
+  }
+}
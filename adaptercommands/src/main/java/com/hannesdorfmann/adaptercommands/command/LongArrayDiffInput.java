@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+/**
+ * A {@link DiffInput} that compares two arrays of primitive keys. Used internally for diffs that
+ * are not driven by a {@link DiffCommandsCalculator}.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+class LongArrayDiffInput extends DiffInput<Void> {
+
+  private final long[] oldKeys;
+  private final int oldSize;
+  private final long[] newKeys;
+  private final int newSize;
+
+  LongArrayDiffInput(long[] oldKeys, int oldSize, long[] newKeys, int newSize,
+      DiffWorkspace workspace) {
+    this.workspace = workspace;
+    this.oldKeys = oldKeys;
+    this.oldSize = oldSize;
+    this.newKeys = newKeys;
+    this.newSize = newSize;
+  }
+
+  @Override public int oldSize() {
+    return oldSize;
+  }
+
+  @Override public int newSize() {
+    return newSize;
+  }
+
+  @Override public boolean isSameItem(int oldPosition, int newPosition) {
+    return oldKeys[oldPosition] == newKeys[newPosition];
+  }
+
+  @Override int sameItemRun(int oldPosition, int newPosition, int max) {
+    return LongArrayScan.matchingRun(oldKeys, oldPosition, newKeys, newPosition, max);
+  }
+
+  @Override int sameItemRunBackwards(int oldEnd, int newEnd, int max) {
+    return LongArrayScan.matchingRunBackwards(oldKeys, oldEnd, newKeys, newEnd, max);
+  }
+
+  @Override boolean hasExactHashes() {
+    return true;
+  }
+
+  @Override public boolean hasChanged(int oldPosition, int newPosition) {
+    return false;
+  }
+
+  @Override public long oldHash(int oldPosition) {
+    return oldKeys[oldPosition];
+  }
+
+  @Override public long newHash(int newPosition) {
+    return newKeys[newPosition];
+  }
+
+  @Override long hashOf(Void item) {
+    throw new IllegalStateException("Only keys are available");
+  }
+
+  @Override public Void getOldItem(int oldPosition) {
+    throw new IllegalStateException("Only keys are available");
+  }
+
+  @Override public Void getNewItem(int newPosition) {
+    throw new IllegalStateException("Only keys are available");
+  }
+
+  @Override boolean hasOldItems() {
+    return false;
+  }
+}
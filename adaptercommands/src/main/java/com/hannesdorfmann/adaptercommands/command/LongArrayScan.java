@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Bulk comparison of primitive keys, used to skip the common prefix and suffix of key based diffs.
+ *
+ * <p>
+ * The implementation is chosen once at class initialization: If the runtime provides {@code
+ * Arrays.mismatch(long[], int, int, long[], int, int)} (Java 9+, vectorized by HotSpot) it is used
+ * for forward scans of at least {@link #MIN_MISMATCH_LENGTH} keys. Otherwise (i.e. on older
+ * Android versions) and for backward scans a plain loop compares one key per iteration, which
+ * the JIT optimizes better than a manually unrolled loop.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+final class LongArrayScan {
+
+  /**
+   * Min. number of keys to call Arrays.mismatch(), below the reflective call costs more than it
+   * saves
+   */
+  static final int MIN_MISMATCH_LENGTH = 64;
+
+  private static final Method MISMATCH = findMismatch();
+
+  private LongArrayScan() {
+  }
+
+  private static Method findMismatch() {
+    try {
+      return Arrays.class.getMethod("mismatch", long[].class, int.class, int.class, long[].class,
+          int.class, int.class);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return true if the JDK's Arrays.mismatch() is used
+   */
+  static boolean hasIntrinsic() {
+    return MISMATCH != null;
+  }
+
+  /**
+   * Get the number of consecutive equal keys, starting at aFrom respectively bFrom
+   *
+   * @param max The max. number of keys to compare
+   */
+  static int matchingRun(long[] a, int aFrom, long[] b, int bFrom, int max) {
+    if (MISMATCH != null && max >= MIN_MISMATCH_LENGTH) {
+      try {
+        int mismatch = (Integer) MISMATCH.invoke(null, a, aFrom, aFrom + max, b, bFrom,
+            bFrom + max);
+        return mismatch == -1 ? max : mismatch;
+      } catch (Exception e) {
+        // Fall back to the scalar loop
+      }
+    }
+    return scalarMatchingRun(a, aFrom, b, bFrom, max);
+  }
+
+  /**
+   * Scalar implementation of {@link #matchingRun(long[], int, long[], int, int)}
+   */
+  static int scalarMatchingRun(long[] a, int aFrom, long[] b, int bFrom, int max) {
+    int i = 0;
+    while (i < max && a[aFrom + i] == b[bFrom + i]) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * Get the number of consecutive equal keys, starting right before the (exclusive) positions
+   * aEnd respectively bEnd and going backwards
+   *
+   * @param max The max. number of keys to compare
+   */
+  static int matchingRunBackwards(long[] a, int aEnd, long[] b, int bEnd, int max) {
+    int i = 0;
+    while (i < max && a[aEnd - 1 - i] == b[bEnd - 1 - i]) {
+      i++;
+    }
+    return i;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.BulkItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link DiffInput} that keeps a copy of the old list. Items are compared with {@link
+ * Object#equals(Object)} and {@link ItemChangedDetector}. A {@link PersistentList} is immutable,
+ * so it is kept as is instead of copying it.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+class ObjectDiffInput<T> extends SnapshotDiffInput<T> implements PatchableDiffInput<T> {
+
+  private final ItemChangedDetector<T> detector;
+  private List<T> oldList;
+  private List<T> newList;
+
+  /**
+   * true if both lists are {@link PersistentList}s
+   */
+  private boolean shared;
+
+  ObjectDiffInput(ItemChangedDetector<T> detector) {
+    this.detector = detector;
+  }
+
+  @Override public int oldSize() {
+    return oldList.size();
+  }
+
+  @Override public int newSize() {
+    return newList.size();
+  }
+
+  @Override public boolean isSameItem(int oldPosition, int newPosition) {
+    return oldList.get(oldPosition).equals(newList.get(newPosition));
+  }
+
+  @Override public boolean hasChanged(int oldPosition, int newPosition) {
+    return detector != null && detector.hasChanged(oldList.get(oldPosition),
+        newList.get(newPosition));
+  }
+
+  ItemChangedDetector<T> getDetector() {
+    return detector;
+  }
+
+  @Override boolean hasBulkChangeDetection() {
+    return detector instanceof BulkItemChangedDetector;
+  }
+
+  @Override void detectChanges(int[] oldPositions, int[] newPositions, int from, int to,
+      boolean[] changed) {
+    if (!(detector instanceof BulkItemChangedDetector)) {
+      super.detectChanges(oldPositions, newPositions, from, to, changed);
+      return;
+    }
+
+    int count = to - from;
+    List<T> oldItems = new ArrayList<>(count);
+    List<T> newItems = new ArrayList<>(count);
+    for (int k = from; k < to; k++) {
+      oldItems.add(oldList.get(oldPositions[k]));
+      newItems.add(newList.get(newPositions[k]));
+    }
+    // Every chunk gets an array of its own size, the detector may use the whole array while other
+    // chunks are detected concurrently
+    boolean[] chunkChanged = from == 0 && count == changed.length ? changed : new boolean[count];
+    ((BulkItemChangedDetector<T>) detector).detectChanges(oldItems, newItems, chunkChanged);
+    if (chunkChanged != changed) {
+      System.arraycopy(chunkChanged, 0, changed, from, count);
+    }
+  }
+
+  @Override public long oldHash(int oldPosition) {
+    return oldList.get(oldPosition).hashCode();
+  }
+
+  @Override public long newHash(int newPosition) {
+    return newList.get(newPosition).hashCode();
+  }
+
+  @Override long hashOf(T item) {
+    return item.hashCode();
+  }
+
+  @Override public T getOldItem(int oldPosition) {
+    return oldList.get(oldPosition);
+  }
+
+  @Override public T getNewItem(int newPosition) {
+    return newList.get(newPosition);
+  }
+
+  @Override int sharedRun(int oldPosition, int newPosition, int max) {
+    return shared ? PersistentList.sharedRun((PersistentList<?>) oldList, oldPosition,
+        (PersistentList<?>) newList, newPosition, max) : 0;
+  }
+
+  @Override int sharedRunBackwards(int oldEnd, int newEnd, int max) {
+    return shared ? PersistentList.sharedRunBackwards((PersistentList<?>) oldList, oldEnd,
+        (PersistentList<?>) newList, newEnd, max) : 0;
+  }
+
+  @Override PatchableDiffInput<T> asPatchable() {
+    return this;
+  }
+
+  @Override public int indexOfOld(T item) {
+    return oldList.indexOf(item);
+  }
+
+  @Override public void insertOld(int position, List<T> items) {
+    ensureMutableSnapshot();
+    oldList.addAll(position, items);
+  }
+
+  @Override public void removeOld(int position, int count) {
+    ensureMutableSnapshot();
+    oldList.subList(position, position + count).clear();
+  }
+
+  @Override public void moveOld(int fromPosition, int toPosition) {
+    ensureMutableSnapshot();
+    oldList.add(toPosition, oldList.remove(fromPosition));
+  }
+
+  @Override public void updateOld(int position, T item) {
+    ensureMutableSnapshot();
+    oldList.set(position, item);
+  }
+
+  private void ensureMutableSnapshot() {
+    shared = false;
+    if (oldList instanceof PersistentList) {
+      oldList = new ArrayList<>(oldList);
+    }
+  }
+
+  @Override public void clearSnapshot() {
+    oldList = null;
+    newList = null;
+    shared = false;
+  }
+
+  @Override boolean hasSnapshot() {
+    return oldList != null;
+  }
+
+  @Override void prepare(List<T> newList) {
+    this.newList = newList;
+    shared = oldList instanceof PersistentList && newList instanceof PersistentList;
+  }
+
+  @Override void commit() {
+    if (newList instanceof PersistentList) {
+      oldList = newList;
+    } else {
+      if (oldList == null || oldList instanceof PersistentList) {
+        oldList = new ArrayList<>(newList.size());
+      } else {
+        oldList.clear();
+      }
+      oldList.addAll(newList);
+    }
+    newList = null;
+    shared = false;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.List;
+
+/**
+ * A {@link DiffInput} whose snapshot (the old list) can be modified without a diff, see {@link
+ * DiffCommandsCalculator#applyPatch(ListPatch)}. Positions are not checked, the caller validates
+ * them.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+interface PatchableDiffInput<T> {
+
+  /**
+   * Get the position of the same item (see {@link DiffInput#isSameItem(int, int)}) in the old list
+   *
+   * @return The position or -1 if there is no such item
+   */
+  int indexOfOld(T item);
+
+  /**
+   * Inserts items into the snapshot
+   */
+  void insertOld(int position, List<T> items);
+
+  /**
+   * Removes items from the snapshot
+   */
+  void removeOld(int position, int count);
+
+  /**
+   * Moves an item of the snapshot
+   */
+  void moveOld(int fromPosition, int toPosition);
+
+  /**
+   * Replaces an item of the snapshot
+   */
+  void updateOld(int position, T item);
+
+  /**
+   * Drops the snapshot, the next diff will be the first one again
+   */
+  void clearSnapshot();
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.List;
+
+/**
+ * Fast path of {@link DiffCommandsCalculator} for lists that contain the same items in a different
+ * order (i.e. sorted or re-ranked lists): Instead of removing and inserting every item that is not
+ * part of the longest common subsequence, the items that are not part of the longest increasing
+ * subsequence of old positions are moved. That is the min. number of {@link ItemMovedCommand}s.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+final class PermutationDiff {
+
+  /**
+   * Head of a bucket whose old positions have all been matched
+   */
+  private static final int EXHAUSTED = -2;
+
+  private PermutationDiff() {
+  }
+
+  /**
+   * Matches every item of the new window with the same item of the old window
+   *
+   * @param start The first position of both windows
+   * @param end The (exclusive) end of both windows
+   * @return newToOld: the old position of the item at new position start + j, or null if the
+   * windows don't contain the same items
+   */
+  static int[] match(DiffInput<?> input, int start, int end, DiffWorkspace workspace) {
+    int count = end - start;
+
+    // Hash table: hash -> chain of old positions, ascending because inserted descending at head
+    int capacity = Integer.highestOneBit(Math.max(2, count) * 2 - 1) << 1;
+    int mask = capacity - 1;
+    long[] tableHashes = workspace.longBuffer(DiffWorkspace.SLOT_ENGINE_1, capacity);
+    int[] tableHeads = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_2, capacity);
+    int[] chain = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_3, count);
+    for (int b = 0; b < capacity; b++) {
+      tableHeads[b] = -1;
+    }
+    for (int i = end - 1; i >= start; i--) {
+      long hash = input.oldHash(i);
+      int bucket = bucket(hash, mask, tableHashes, tableHeads);
+      if (tableHeads[bucket] == -1) {
+        tableHashes[bucket] = hash;
+      }
+      chain[i - start] = tableHeads[bucket];
+      tableHeads[bucket] = i;
+    }
+
+    int[] newToOld = workspace.intBuffer(DiffWorkspace.SLOT_OLD_TO_NEW, count);
+    for (int j = start; j < end; j++) {
+      int bucket = bucket(input.newHash(j), mask, tableHashes, tableHeads);
+      int previous = -1;
+      int i = tableHeads[bucket];
+      while (i >= 0 && !input.isSameItem(i, j)) {
+        previous = i;
+        i = chain[i - start];
+      }
+      if (i < 0) {
+        return null;
+      }
+
+      // Unlink, every old item is matched once. An exhausted bucket stays occupied (EXHAUSTED),
+      // otherwise linear probing would stop at it
+      if (previous == -1) {
+        tableHeads[bucket] = chain[i - start] == -1 ? EXHAUSTED : chain[i - start];
+      } else {
+        chain[previous - start] = chain[i - start];
+      }
+      newToOld[j - start] = i;
+    }
+    return newToOld;
+  }
+
+  /**
+   * Adds the {@link ItemMovedCommand}s that reorder the old window to the new window
+   *
+   * @param newToOld The result of {@link #match(DiffInput, int, int, DiffWorkspace)}
+   * @param start The first position of both windows
+   * @param count The size of both windows
+   * @return The number of moves
+   */
+  static int addMoves(int[] newToOld, int start, int count, DiffWorkspace workspace,
+      List<AdapterCommand> commands) {
+
+    // Longest increasing subsequence of old positions in new order
+    int[] tails = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_2, count);
+    int[] predecessors = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_3, count);
+    int length = 0;
+    for (int j = 0; j < count; j++) {
+      int old = newToOld[j];
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (newToOld[tails[mid]] < old) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      predecessors[j] = low == 0 ? -1 : tails[low - 1];
+      tails[low] = j;
+      if (low == length) {
+        length++;
+      }
+    }
+    if (length == count) {
+      return 0;
+    }
+
+    // The final position of every item is given by a key (major, minor): Items of the increasing
+    // subsequence stay at (old position + 1, 0). A moved item follows its predecessor in the new
+    // order: (major of the predecessor, minor of the predecessor + 1), (0, 1) for the first item.
+    int[] majors = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_4, count);
+    int[] minors = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_5, count);
+    for (int j = 0; j < count; j++) {
+      minors[j] = -1;
+    }
+    for (int j = tails[length - 1]; j != -1; j = predecessors[j]) {
+      majors[j] = newToOld[j] - start + 1;
+      minors[j] = 0;
+    }
+
+    // Slots in key order: each major has the slot of the unmoved item plus one per moved item
+    int[] slotBase = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_2, count + 2);
+    for (int m = 0; m <= count + 1; m++) {
+      slotBase[m] = 0;
+    }
+    for (int j = 0; j < count; j++) {
+      if (minors[j] != 0) {
+        majors[j] = j == 0 ? 0 : majors[j - 1];
+        minors[j] = j == 0 ? 1 : minors[j - 1] + 1;
+        slotBase[majors[j] + 1]++;
+      }
+    }
+    int slots = 0;
+    for (int m = 0; m <= count; m++) {
+      int moved = slotBase[m + 1];
+      slotBase[m] = slots;
+      slots += 1 + moved;
+    }
+
+    // Fenwick tree counting the items in front of a slot, initially the items in old order
+    int[] tree = workspace.intBuffer(DiffWorkspace.SLOT_ENGINE_6, slots + 1);
+    for (int s = 0; s <= slots; s++) {
+      tree[s] = 0;
+    }
+    for (int p = 0; p < count; p++) {
+      add(tree, slots, slotBase[p + 1], 1);
+    }
+
+    int moves = 0;
+    for (int j = 0; j < count; j++) {
+      if (minors[j] == 0) {
+        continue;
+      }
+      int oldSlot = slotBase[newToOld[j] - start + 1];
+      int from = countBefore(tree, oldSlot);
+      add(tree, slots, oldSlot, -1);
+      int newSlot = slotBase[majors[j]] + minors[j];
+      int to = countBefore(tree, newSlot);
+      add(tree, slots, newSlot, 1);
+      if (from != to) {
+        commands.add(new ItemMovedCommand(start + from, start + to));
+        moves++;
+      }
+    }
+    return moves;
+  }
+
+  private static void add(int[] tree, int slots, int slot, int value) {
+    for (int i = slot + 1; i <= slots; i += i & -i) {
+      tree[i] += value;
+    }
+  }
+
+  /**
+   * @return The number of items in the slots before the given slot
+   */
+  private static int countBefore(int[] tree, int slot) {
+    int count = 0;
+    for (int i = slot; i > 0; i -= i & -i) {
+      count += tree[i];
+    }
+    return count;
+  }
+
+  /**
+   * Finds the bucket of the given hash with linear probing. Returns either the bucket containing
+   * the hash or an empty bucket
+   */
+  private static int bucket(long hash, int mask, long[] tableHashes, int[] tableHeads) {
+    long h = hash * 0x9E3779B97F4A7C15L;
+    int bucket = (int) (h ^ (h >>> 32)) & mask;
+    while (tableHeads[bucket] != -1 && tableHashes[bucket] != hash) {
+      bucket = (bucket + 1) & mask;
+    }
+    return bucket;
+  }
+}
@@ -0,0 +1,460 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable list that shares its structure with the lists it has been derived from. Items are
+ * stored in a tree of arrays with 32 children per node (a radix tree), so {@link #get(int)},
+ * {@link #plus(Object)} and {@link #with(int, Object)} are O(log32 n) and copy only the path to
+ * the modified leaf. All other leaves are shared by reference.
+ *
+ * <p>
+ * {@link DiffCommandsCalculator} takes advantage of that: if both the old and the new list are
+ * {@link PersistentList}s, leaves that are shared by reference are skipped as a whole without
+ * comparing or change detecting (see {@link com.hannesdorfmann.adaptercommands.ItemChangedDetector})
+ * the single items, and the new list is kept as snapshot without copying it. Hence the costs of a
+ * diff depend on the number of modified leaves rather than on the size of the list. Items must not
+ * be mutated in place, an item that is the same instance in the old and the new list is never
+ * reported as changed.
+ * </p>
+ *
+ * <p>
+ * {@link #plus(int, Object)} and {@link #minus(int)} share the leaves before the given index
+ * only, the following items are shifted into new leaves.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public final class PersistentList<T> extends AbstractList<T> implements RandomAccess {
+
+  static final int BITS = 5;
+  static final int WIDTH = 1 << BITS;
+  static final int MASK = WIDTH - 1;
+
+  private static final Object[] EMPTY_NODE = new Object[0];
+  private static final PersistentList<Object> EMPTY = new PersistentList<>(0, 0, EMPTY_NODE);
+
+  private final int size;
+
+  /**
+   * The number of bits of an index consumed by the nodes above the leaves, 0 if the root is a
+   * leaf
+   */
+  private final int shift;
+  private final Object[] root;
+
+  private PersistentList(int size, int shift, Object[] root) {
+    this.size = size;
+    this.shift = shift;
+    this.root = root;
+  }
+
+  /**
+   * @return An empty list
+   */
+  @SuppressWarnings("unchecked") @NonNull public static <T> PersistentList<T> empty() {
+    return (PersistentList<T>) EMPTY;
+  }
+
+  /**
+   * Creates a list with the given items
+   *
+   * @param items The items
+   * @return The list or the given list itself if it already is a {@link PersistentList}
+   */
+  @SuppressWarnings("unchecked") @NonNull
+  public static <T> PersistentList<T> of(@NonNull Collection<? extends T> items) {
+    if (items == null) {
+      throw new NullPointerException("items == null");
+    }
+    if (items instanceof PersistentList) {
+      return (PersistentList<T>) items;
+    }
+    return PersistentList.<T>empty().plusAll(items);
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  @SuppressWarnings("unchecked") @Override public T get(int index) {
+    checkIndex(index, size);
+    return (T) leafFor(index)[index & MASK];
+  }
+
+  /**
+   * Appends an item
+   *
+   * @param item The item
+   * @return The new list
+   */
+  @NonNull public PersistentList<T> plus(T item) {
+    if (size == 1 << (shift + BITS)) {
+      // Root is full, add a level
+      Object[] newRoot = new Object[] { root, newPath(shift, item) };
+      return new PersistentList<>(size + 1, shift + BITS, newRoot);
+    }
+    return new PersistentList<>(size + 1, shift, append(root, shift, size, item));
+  }
+
+  /**
+   * Appends items
+   *
+   * @param items The items
+   * @return The new list
+   */
+  @NonNull public PersistentList<T> plusAll(@NonNull Collection<? extends T> items) {
+    if (items == null) {
+      throw new NullPointerException("items == null");
+    }
+    if (items.isEmpty()) {
+      return this;
+    }
+
+    // Reuse all full leaves, then build the remaining leaves at once
+    int sharedLeaves = size >>> BITS;
+    List<Object[]> leaves = new ArrayList<>(sharedLeaves + items.size() / WIDTH + 1);
+    collectLeaves(root, shift, sharedLeaves, leaves);
+    List<Object> tail = new ArrayList<>(WIDTH);
+    for (int i = sharedLeaves << BITS; i < size; i++) {
+      tail.add(get(i));
+    }
+    for (T item : items) {
+      tail.add(item);
+      if (tail.size() == WIDTH) {
+        leaves.add(tail.toArray());
+        tail.clear();
+      }
+    }
+    if (!tail.isEmpty()) {
+      leaves.add(tail.toArray());
+    }
+    return fromLeaves(leaves, size + items.size());
+  }
+
+  /**
+   * Inserts an item
+   *
+   * @param index The index of the inserted item
+   * @param item The item
+   * @return The new list
+   */
+  @NonNull public PersistentList<T> plus(int index, T item) {
+    checkIndex(index, size + 1);
+    if (index == size) {
+      return plus(item);
+    }
+    return rebuildFrom(index, 0, item, true);
+  }
+
+  /**
+   * Replaces an item
+   *
+   * @param index The index of the item
+   * @param item The new item
+   * @return The new list or this list if the item at the given index is the given item
+   */
+  @NonNull public PersistentList<T> with(int index, T item) {
+    checkIndex(index, size);
+    if (leafFor(index)[index & MASK] == item) {
+      return this;
+    }
+    return new PersistentList<>(size, shift, replace(root, shift, index, item));
+  }
+
+  /**
+   * Removes an item
+   *
+   * @param index The index of the item
+   * @return The new list
+   */
+  @NonNull public PersistentList<T> minus(int index) {
+    checkIndex(index, size);
+    if (index == size - 1) {
+      return minusLast();
+    }
+    return rebuildFrom(index, 1, null, false);
+  }
+
+  /**
+   * Removes the last item
+   *
+   * @return The new list
+   * @throws IndexOutOfBoundsException if this list is empty
+   */
+  @NonNull public PersistentList<T> minusLast() {
+    checkIndex(0, size);
+    if (size == 1) {
+      return empty();
+    }
+
+    Object[] newRoot = removeLast(root, shift, size - 1);
+    int newShift = shift;
+    while (newShift > 0 && newRoot.length == 1) {
+      newRoot = (Object[]) newRoot[0];
+      newShift -= BITS;
+    }
+    return new PersistentList<>(size - 1, newShift, newRoot);
+  }
+
+  /**
+   * Get the leaf array containing the item with the given index
+   */
+  Object[] leafFor(int index) {
+    Object[] node = root;
+    for (int level = shift; level > 0; level -= BITS) {
+      node = (Object[]) node[(index >>> level) & MASK];
+    }
+    return node;
+  }
+
+  /**
+   * Get the number of consecutive positions, starting at fromA respectively fromB, that hold the
+   * same instance in both lists. Shared leaves are skipped at once if the positions are aligned
+   * within their leaves.
+   *
+   * @param max The max. number of positions to compare
+   */
+  static int sharedRun(PersistentList<?> a, int fromA, PersistentList<?> b, int fromB, int max) {
+    if (a.root == b.root && fromA == fromB) {
+      return max;
+    }
+
+    int count = 0;
+    int indexA = fromA;
+    int indexB = fromB;
+    while (count < max) {
+      Object[] leafA = a.leafFor(indexA);
+      Object[] leafB = b.leafFor(indexB);
+      int offsetA = indexA & MASK;
+      int offsetB = indexB & MASK;
+      if (leafA == leafB && offsetA == offsetB) {
+        int skip = Math.min(leafA.length - offsetA, max - count);
+        count += skip;
+        indexA += skip;
+        indexB += skip;
+        continue;
+      }
+
+      // Compare up to the end of either leaf
+      int steps = Math.min(Math.min(leafA.length - offsetA, leafB.length - offsetB), max - count);
+      for (int s = 0; s < steps; s++) {
+        if (leafA[offsetA + s] != leafB[offsetB + s]) {
+          return count + s;
+        }
+      }
+      count += steps;
+      indexA += steps;
+      indexB += steps;
+    }
+    return count;
+  }
+
+  /**
+   * Like {@link #sharedRun(PersistentList, int, PersistentList, int, int)} but backwards, starting
+   * right before the (exclusive) positions endA respectively endB
+   */
+  static int sharedRunBackwards(PersistentList<?> a, int endA, PersistentList<?> b, int endB,
+      int max) {
+    if (a.root == b.root && endA == endB) {
+      return max;
+    }
+
+    int count = 0;
+    int indexA = endA - 1;
+    int indexB = endB - 1;
+    while (count < max) {
+      Object[] leafA = a.leafFor(indexA);
+      Object[] leafB = b.leafFor(indexB);
+      int offsetA = indexA & MASK;
+      int offsetB = indexB & MASK;
+      if (leafA == leafB && offsetA == offsetB) {
+        int skip = Math.min(offsetA + 1, max - count);
+        count += skip;
+        indexA -= skip;
+        indexB -= skip;
+        continue;
+      }
+
+      // Compare down to the start of either leaf
+      int steps = Math.min(Math.min(offsetA, offsetB) + 1, max - count);
+      for (int s = 0; s < steps; s++) {
+        if (leafA[offsetA - s] != leafB[offsetB - s]) {
+          return count + s;
+        }
+      }
+      count += steps;
+      indexA -= steps;
+      indexB -= steps;
+    }
+    return count;
+  }
+
+  /**
+   * Shares all leaves before the leaf containing index and rebuilds the rest with the given
+   * modification
+   *
+   * @param index The index of the modification
+   * @param skip The number of items to remove at index
+   * @param item The item to insert at index
+   * @param insert true if item should be inserted
+   */
+  private PersistentList<T> rebuildFrom(int index, int skip, T item, boolean insert) {
+    int sharedLeaves = index >>> BITS;
+    int newSize = size - skip + (insert ? 1 : 0);
+    List<Object[]> leaves = new ArrayList<>((newSize >>> BITS) + 1);
+    collectLeaves(root, shift, sharedLeaves, leaves);
+
+    Object[] leaf = null;
+    int fill = 0;
+    for (int i = sharedLeaves << BITS; i <= size; i++) {
+      if (i == index && insert) {
+        if (leaf == null) {
+          leaf = new Object[Math.min(WIDTH, newSize - (leaves.size() << BITS))];
+        }
+        leaf[fill++] = item;
+        if (fill == leaf.length) {
+          leaves.add(leaf);
+          leaf = null;
+          fill = 0;
+        }
+      }
+      if (i == size) {
+        break;
+      }
+      if (i >= index && i < index + skip) {
+        continue;
+      }
+      if (leaf == null) {
+        leaf = new Object[Math.min(WIDTH, newSize - (leaves.size() << BITS))];
+      }
+      leaf[fill++] = leafFor(i)[i & MASK];
+      if (fill == leaf.length) {
+        leaves.add(leaf);
+        leaf = null;
+        fill = 0;
+      }
+    }
+    return fromLeaves(leaves, newSize);
+  }
+
+  /**
+   * Collects the first count leaves of the given node in order
+   */
+  private static void collectLeaves(Object[] node, int level, int count, List<Object[]> leaves) {
+    if (count == 0) {
+      return;
+    }
+    if (level == 0) {
+      leaves.add(node);
+      return;
+    }
+    int leavesPerChild = 1 << (level - BITS);
+    for (int child = 0; child < node.length && count > 0; child++) {
+      int n = Math.min(count, leavesPerChild);
+      collectLeaves((Object[]) node[child], level - BITS, n, leaves);
+      count -= n;
+    }
+  }
+
+  /**
+   * Builds a tree from the given leaves, all leaves except the last one must be full
+   */
+  private static <T> PersistentList<T> fromLeaves(List<Object[]> leaves, int size) {
+    if (leaves.isEmpty()) {
+      return empty();
+    }
+
+    List<Object[]> level = leaves;
+    int shift = 0;
+    while (level.size() > 1) {
+      List<Object[]> parents = new ArrayList<>((level.size() + MASK) >>> BITS);
+      for (int i = 0; i < level.size(); i += WIDTH) {
+        List<Object[]> children = level.subList(i, Math.min(level.size(), i + WIDTH));
+        parents.add(children.toArray(new Object[children.size()]));
+      }
+      level = parents;
+      shift += BITS;
+    }
+    return new PersistentList<>(size, shift, level.get(0));
+  }
+
+  private static Object[] append(Object[] node, int level, int index, Object item) {
+    if (level == 0) {
+      Object[] leaf = Arrays.copyOf(node, node.length + 1);
+      leaf[node.length] = item;
+      return leaf;
+    }
+
+    int child = (index >>> level) & MASK;
+    Object[] copy;
+    if (child < node.length) {
+      copy = node.clone();
+      copy[child] = append((Object[]) node[child], level - BITS, index, item);
+    } else {
+      copy = Arrays.copyOf(node, node.length + 1);
+      copy[child] = newPath(level - BITS, item);
+    }
+    return copy;
+  }
+
+  private static Object[] newPath(int level, Object item) {
+    return level == 0 ? new Object[] { item } : new Object[] { newPath(level - BITS, item) };
+  }
+
+  private static Object[] replace(Object[] node, int level, int index, Object item) {
+    Object[] copy = node.clone();
+    if (level == 0) {
+      copy[index & MASK] = item;
+    } else {
+      int child = (index >>> level) & MASK;
+      copy[child] = replace((Object[]) node[child], level - BITS, index, item);
+    }
+    return copy;
+  }
+
+  private static Object[] removeLast(Object[] node, int level, int index) {
+    if (level == 0) {
+      return Arrays.copyOf(node, node.length - 1);
+    }
+
+    int child = (index >>> level) & MASK;
+    Object[] newChild = removeLast((Object[]) node[child], level - BITS, index);
+    if (newChild.length == 0) {
+      return Arrays.copyOf(node, node.length - 1);
+    }
+    Object[] copy = node.clone();
+    copy[child] = newChild;
+    return copy;
+  }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+}
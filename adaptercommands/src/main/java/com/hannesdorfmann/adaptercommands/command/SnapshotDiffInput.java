@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.List;
+
+/**
+ * A {@link DiffInput} of a {@link DiffCommandsCalculator}: the old list is the snapshot of the list
+ * passed to the previous diff call. A diff runs in three steps: {@link #prepare(List)} takes the
+ * new list, then the old and new items are compared and finally {@link #commit()} turns the new
+ * list into the snapshot the next diff compares to.
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+abstract class SnapshotDiffInput<T> extends DiffInput<T> {
+
+  /**
+   * @return true if there is a snapshot of an old list (at least one diff has been committed)
+   */
+  abstract boolean hasSnapshot();
+
+  /**
+   * Sets the new list for the next comparison
+   */
+  abstract void prepare(List<T> newList);
+
+  /**
+   * The new list becomes the old list for the next diff
+   */
+  abstract void commit();
+
+  /**
+   * @return This input as {@link PatchableDiffInput} or null if the snapshot can't be patched
+   */
+  PatchableDiffInput<T> asPatchable() {
+    return null;
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list that is always sorted by a {@link Comparator} and identifies items by key (see {@link
+ * ItemKeyProvider}). Items are inserted, updated and removed one by one, i.e. as they arrive from a
+ * socket, and every modification directly returns the {@link AdapterCommand}s to execute, so no
+ * diff of the whole list is needed. Positions are found by binary search in O(log n); inserting
+ * into and removing from the backing array shifts the following items (a single array copy).
+ *
+ * <p>
+ * Modifications between {@link #beginBatch()} and {@link #endBatch()} return no commands, instead
+ * {@link #endBatch()} returns the commands of all modifications, coalesced to range commands by
+ * {@link CommandListOptimizer}.
+ * </p>
+ *
+ * <p>
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class SortedLiveList<T> {
+
+  private final Comparator<? super T> comparator;
+  private final ItemKeyProvider<T> keyProvider;
+  private final ItemChangedDetector<T> detector;
+
+  private final List<T> items = new ArrayList<>();
+  private final Map<Long, T> itemsByKey = new HashMap<>();
+  private final List<T> readOnlyItems = Collections.unmodifiableList(items);
+
+  private List<AdapterCommand> batch;
+
+  /**
+   * Creates a new instance. Updated items are always reported as changed.
+   *
+   * @param comparator The comparator defining the order of the items
+   * @param keyProvider Provides the key identifying items
+   */
+  public SortedLiveList(@NonNull Comparator<? super T> comparator,
+      @NonNull ItemKeyProvider<T> keyProvider) {
+    this(comparator, keyProvider, null);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param comparator The comparator defining the order of the items
+   * @param keyProvider Provides the key identifying items
+   * @param detector Determines whether an updated item has been changed. If null, updated items
+   * are always reported as changed.
+   */
+  public SortedLiveList(@NonNull Comparator<? super T> comparator,
+      @NonNull ItemKeyProvider<T> keyProvider, @Nullable ItemChangedDetector<T> detector) {
+    if (comparator == null) {
+      throw new NullPointerException("comparator == null");
+    }
+    if (keyProvider == null) {
+      throw new NullPointerException("keyProvider == null");
+    }
+    this.comparator = comparator;
+    this.keyProvider = keyProvider;
+    this.detector = detector;
+  }
+
+  /**
+   * Adds the item or, if there is already an item with the same key, replaces it.
+   *
+   * @param item The item to add or update
+   * @return The commands to execute (empty while a batch is running)
+   */
+  @NonNull public List<AdapterCommand> put(@NonNull T item) {
+    if (item == null) {
+      throw new NullPointerException("item == null");
+    }
+
+    List<AdapterCommand> commands = commands();
+    T oldItem = itemsByKey.put(keyProvider.getKey(item), item);
+    if (oldItem == null) {
+      int position = insertPosition(item);
+      items.add(position, item);
+      commands.add(new ItemInsertedCommand(position));
+      return result(commands);
+    }
+
+    int oldPosition = positionOf(oldItem);
+    items.remove(oldPosition);
+    int newPosition = insertPosition(item);
+    items.add(newPosition, item);
+
+    if (oldPosition != newPosition) {
+      commands.add(new ItemMovedCommand(oldPosition, newPosition));
+    }
+    if (detector == null || detector.hasChanged(oldItem, item)) {
+      commands.add(new ItemChangedCommand(newPosition));
+    }
+    return result(commands);
+  }
+
+  /**
+   * Adds or updates all given items, see {@link #put(Object)}
+   *
+   * @param items The items to add or update
+   * @return The coalesced commands to execute (empty while a batch is running)
+   */
+  @NonNull public List<AdapterCommand> putAll(@NonNull Collection<? extends T> items) {
+    if (items == null) {
+      throw new NullPointerException("items == null");
+    }
+    boolean nested = batch != null;
+    if (!nested) {
+      beginBatch();
+    }
+    for (T item : items) {
+      put(item);
+    }
+    return nested ? new ArrayList<AdapterCommand>() : endBatch();
+  }
+
+  /**
+   * Removes the item with the given key
+   *
+   * @param key The key of the item to remove
+   * @return The commands to execute, empty if there is no item with this key (or a batch is
+   * running)
+   */
+  @NonNull public List<AdapterCommand> remove(long key) {
+    List<AdapterCommand> commands = commands();
+    T oldItem = itemsByKey.remove(key);
+    if (oldItem != null) {
+      int position = positionOf(oldItem);
+      items.remove(position);
+      commands.add(new ItemRemovedCommand(position));
+    }
+    return result(commands);
+  }
+
+  /**
+   * Starts a batch. All modifications until {@link #endBatch()} return no commands.
+   */
+  public void beginBatch() {
+    if (batch != null) {
+      throw new IllegalStateException("A batch is already running");
+    }
+    batch = new ArrayList<>();
+  }
+
+  /**
+   * Ends the batch started with {@link #beginBatch()}
+   *
+   * @return The commands of all modifications since {@link #beginBatch()}, coalesced to range
+   * commands
+   */
+  @NonNull public List<AdapterCommand> endBatch() {
+    if (batch == null) {
+      throw new IllegalStateException("No batch is running");
+    }
+    List<AdapterCommand> commands = CommandListOptimizer.optimize(batch);
+    batch = null;
+    return commands;
+  }
+
+  /**
+   * @return The item at the given position
+   */
+  public T get(int position) {
+    return items.get(position);
+  }
+
+  /**
+   * @return The item with the given key or null
+   */
+  @Nullable public T getByKey(long key) {
+    return itemsByKey.get(key);
+  }
+
+  /**
+   * @return The position of the item with the given key or -1
+   */
+  public int indexOfKey(long key) {
+    T item = itemsByKey.get(key);
+    return item == null ? -1 : positionOf(item);
+  }
+
+  /**
+   * @return The number of items
+   */
+  public int size() {
+    return items.size();
+  }
+
+  /**
+   * @return A read only view of the items, i.e. for the adapter
+   */
+  @NonNull public List<T> asList() {
+    return readOnlyItems;
+  }
+
+  private List<AdapterCommand> commands() {
+    return batch != null ? batch : new ArrayList<AdapterCommand>(2);
+  }
+
+  private List<AdapterCommand> result(List<AdapterCommand> commands) {
+    return commands == batch ? new ArrayList<AdapterCommand>() : commands;
+  }
+
+  /**
+   * Binary search for the position after the last item that is equal (according to the
+   * comparator) to the given item
+   */
+  private int insertPosition(T item) {
+    int low = 0;
+    int high = items.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (comparator.compare(items.get(mid), item) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Binary search for the position of an item that is in the list
+   */
+  private int positionOf(T item) {
+    int low = 0;
+    int high = items.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (comparator.compare(items.get(mid), item) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    // Items that are equal according to the comparator
+    for (int i = low; i < items.size(); i++) {
+      if (items.get(i) == item) {
+        return i;
+      }
+    }
+    throw new IllegalStateException("Item " + item + " not found. Has the comparator changed?");
+  }
+}
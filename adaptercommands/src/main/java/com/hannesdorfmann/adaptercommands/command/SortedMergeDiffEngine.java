@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.Comparator;
+
+/**
+ * A {@link DiffEngine} for lists that are always sorted by the given {@link Comparator}. Old and
+ * new list are walked like in the merge step of merge sort, so the runtime is O(n+m) and no
+ * additional memory is needed. Items that are equal according to the comparator but are not the
+ * same item (see {@link DiffInput#isSameItem(int, int)}) are matched greedily.
+ *
+ * <p>
+ * If the lists are not sorted, the resulting commands are still correct, but not minimal.
+ * This engine needs access to the old items, so it can't be used in combination with an {@link
+ * com.hannesdorfmann.adaptercommands.ItemKeyProvider}.
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class SortedMergeDiffEngine<T> implements DiffEngine<T> {
+
+  private final Comparator<? super T> comparator;
+
+  /**
+   * Creates a new instance
+   *
+   * @param comparator The comparator both, the old and the new list are sorted by
+   */
+  public SortedMergeDiffEngine(@NonNull Comparator<? super T> comparator) {
+    if (comparator == null) {
+      throw new NullPointerException("comparator == null");
+    }
+    this.comparator = comparator;
+  }
+
+  @Override public void computeMatches(@NonNull DiffInput<T> input, int oldStart, int oldEnd,
+      int newStart, int newEnd, @NonNull int[] oldToNew) {
+
+    int i = oldStart;
+    int j = newStart;
+    while (i < oldEnd && j < newEnd) {
+      T oldItem = input.getOldItem(i);
+      int c = comparator.compare(oldItem, input.getNewItem(j));
+      if (c < 0) {
+        oldToNew[i++] = -1;
+      } else if (c > 0) {
+        j++;
+      } else if (input.isSameItem(i, j)) {
+        oldToNew[i++] = j++;
+      } else {
+        // Run of items that are equal according to comparator
+        int oldRunEnd = i + 1;
+        while (oldRunEnd < oldEnd
+            && comparator.compare(oldItem, input.getOldItem(oldRunEnd)) == 0) {
+          oldRunEnd++;
+        }
+        int newRunEnd = j + 1;
+        while (newRunEnd < newEnd && comparator.compare(oldItem, input.getNewItem(newRunEnd)) == 0) {
+          newRunEnd++;
+        }
+        matchRun(input, i, oldRunEnd, j, newRunEnd, oldToNew);
+        i = oldRunEnd;
+        j = newRunEnd;
+      }
+    }
+
+    for (; i < oldEnd; i++) {
+      oldToNew[i] = -1;
+    }
+  }
+
+  /**
+   * Greedily matches the items of a run of equal (according to the comparator) items
+   */
+  private void matchRun(DiffInput<T> input, int oldStart, int oldEnd, int newStart, int newEnd,
+      int[] oldToNew) {
+    int nextNew = newStart;
+    for (int i = oldStart; i < oldEnd; i++) {
+      oldToNew[i] = -1;
+      for (int j = nextNew; j < newEnd; j++) {
+        if (input.isSameItem(i, j)) {
+          oldToNew[i] = j;
+          nextNew = j + 1;
+          break;
+        }
+      }
+    }
+  }
+}
@@ -19,7 +19,10 @@ package com.hannesdorfmann.adaptercommands.command;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * This class is responsible to calculate the difference between two lists and returns a list of
@@ -47,6 +50,27 @@ public class ThreadSafeDiffCommandsCalculator<T> extends DiffCommandsCalculator<
     super(itemRangeInsertedOnFirstDiff, detector);
   }
 
+  public ThreadSafeDiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @Nullable ItemChangedDetector<T> detector, @NonNull DiffEngine<T> engine) {
+    super(itemRangeInsertedOnFirstDiff, detector, engine);
+  }
+
+  public ThreadSafeDiffCommandsCalculator(@NonNull ItemKeyProvider<T> keyProvider,
+      @Nullable ItemFingerprinter<T> fingerprinter) {
+    super(keyProvider, fingerprinter);
+  }
+
+  public ThreadSafeDiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @NonNull ItemKeyProvider<T> keyProvider, @Nullable ItemFingerprinter<T> fingerprinter) {
+    super(itemRangeInsertedOnFirstDiff, keyProvider, fingerprinter);
+  }
+
+  public ThreadSafeDiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @NonNull ItemKeyProvider<T> keyProvider, @Nullable ItemFingerprinter<T> fingerprinter,
+      @NonNull DiffEngine<T> engine) {
+    super(itemRangeInsertedOnFirstDiff, keyProvider, fingerprinter, engine);
+  }
+
   /**
    * This method calculates the difference of previous list of items and the new list.
    * This call is thread safe
@@ -57,4 +81,37 @@ public class ThreadSafeDiffCommandsCalculator<T> extends DiffCommandsCalculator<
   @Override public synchronized List<AdapterCommand> diff(@NonNull List<T> newList) {
     return super.diff(newList);
   }
+
+  @Override public synchronized DiffMapping<T> diffWithMapping(@NonNull List<T> newList) {
+    return super.diffWithMapping(newList);
+  }
+
+  @Override public synchronized List<AdapterCommand> applyPatch(@NonNull ListPatch<T> patch) {
+    return super.applyPatch(patch);
+  }
+
+  @Override public synchronized void setTraceRecorder(@Nullable DiffTraceRecorder recorder) {
+    super.setTraceRecorder(recorder);
+  }
+
+  @Override public synchronized void setWorkspace(@NonNull DiffWorkspace workspace) {
+    super.setWorkspace(workspace);
+  }
+
+  @Override public synchronized void setVisibleRange(int firstPosition, int lastPosition) {
+    super.setVisibleRange(firstPosition, lastPosition);
+  }
+
+  @Override public synchronized void clearVisibleRange() {
+    super.clearVisibleRange();
+  }
+
+  @Nullable @Override public synchronized LazyChanges<T> getLazyChanges() {
+    return super.getLazyChanges();
+  }
+
+  @Override public synchronized void setChangeDetectionExecutor(@Nullable ExecutorService executor,
+      int threshold) {
+    super.setChangeDetectionExecutor(executor, threshold);
+  }
 }
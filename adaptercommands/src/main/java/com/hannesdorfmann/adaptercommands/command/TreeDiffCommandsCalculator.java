@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.TreeNodeProvider;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calculates the difference between two versions of a tree that is displayed as flattened list
+ * (see {@link TreeNodeProvider}) and returns a list of {@link AdapterCommand}s in flattened
+ * positions.
+ *
+ * <p>
+ * Instead of diffing the whole flattened list, the tree is compared node by node: siblings are
+ * matched by id, subtrees with unchanged id and version are skipped and expanding or collapsing a
+ * node results in a single range insert or remove. Hence the runtime depends on the changed
+ * subtrees, not on the total number of nodes. Only ids, versions and sizes of the visible nodes
+ * are kept in memory, not the nodes itself.
+ * </p>
+ *
+ * <p>
+ * <b>This class is not thread safe!</b>
+ * </p>
+ *
+ * @author Hannes Dorfmann
+ * @since 1.0.5
+ */
+public class TreeDiffCommandsCalculator<N> {
+
+  private static final NodeSnapshot[] NO_CHILDREN = new NodeSnapshot[0];
+
+  private final boolean itemRangeInsertedOnFirstDiff;
+  private final TreeNodeProvider<N> provider;
+  private final ItemFingerprinter<N> fingerprinter;
+  private final DiffEngine<Void> engine = new LcsDiffEngine<>();
+  private final DiffWorkspace workspace = new DiffWorkspace();
+  private NodeSnapshot[] roots;
+
+  /**
+   * The current position in the flattened list while diffing
+   */
+  private int position;
+
+  /**
+   * Creates a new instance
+   *
+   * @param provider The provider that describes the tree
+   */
+  public TreeDiffCommandsCalculator(@NonNull TreeNodeProvider<N> provider) {
+    this(false, provider, null);
+  }
+
+  /**
+   * Creates a new instance
+   *
+   * @param itemRangeInsertedOnFirstDiff if <b>true</b> {@link ItemRangeInsertedCommand} will be
+   * used which cause a RecyclerView item animations. Use <b>false</b> if {@link
+   * EntireDataSetChangedCommand} should be used (no RecyclerView item animations).
+   * @param provider The provider that describes the tree
+   * @param fingerprinter Calculates the fingerprint of a node's row (without children). If the
+   * fingerprint changes, a {@link ItemChangedCommand} is added for the node's row. Pass null if
+   * changes should not be detected.
+   */
+  public TreeDiffCommandsCalculator(boolean itemRangeInsertedOnFirstDiff,
+      @NonNull TreeNodeProvider<N> provider, @Nullable ItemFingerprinter<N> fingerprinter) {
+    if (provider == null) {
+      throw new NullPointerException("provider == null");
+    }
+    this.itemRangeInsertedOnFirstDiff = itemRangeInsertedOnFirstDiff;
+    this.provider = provider;
+    this.fingerprinter = fingerprinter;
+  }
+
+  /**
+   * Calculates the difference between the previous tree and the new one
+   *
+   * @param newRoots The root nodes of the new tree
+   * @return List of commands in flattened positions
+   */
+  public List<AdapterCommand> diff(@NonNull List<N> newRoots) {
+    if (newRoots == null) {
+      throw new NullPointerException("newRoots == null");
+    }
+
+    List<AdapterCommand> commands = new ArrayList<>();
+
+    if (roots == null) {
+      // first time called
+      roots = snapshotChildren(newRoots);
+      int size = visibleSize(roots);
+      if (size == 0 || !itemRangeInsertedOnFirstDiff) {
+        commands.add(new EntireDataSetChangedCommand());
+      } else {
+        commands.add(new ItemRangeInsertedCommand(0, size));
+      }
+      return commands;
+    }
+
+    position = 0;
+    workspace.begin();
+    try {
+      roots = diffChildren(roots, newRoots, commands);
+    } finally {
+      workspace.end();
+    }
+    return commands;
+  }
+
+  /**
+   * @return The number of rows of the flattened tree of the last {@link #diff(List)} call
+   */
+  public int getFlattenedSize() {
+    return roots == null ? 0 : visibleSize(roots);
+  }
+
+  /**
+   * Diffs the children of a node. The first child's row is at {@link #position}. After this
+   * method returns, {@link #position} points to the row after the last (visible) child.
+   */
+  private NodeSnapshot[] diffChildren(NodeSnapshot[] oldChildren, List<N> newChildren,
+      List<AdapterCommand> commands) {
+
+    int oldSize = oldChildren.length;
+    int newSize = newChildren.size();
+
+    long[] oldIds = new long[oldSize];
+    for (int i = 0; i < oldSize; i++) {
+      oldIds[i] = oldChildren[i].id;
+    }
+    long[] newIds = new long[newSize];
+    for (int j = 0; j < newSize; j++) {
+      newIds[j] = provider.getId(newChildren.get(j));
+    }
+
+    int[] oldToNew = new int[oldSize];
+    computeMatches(oldIds, newIds, oldToNew);
+
+    NodeSnapshot[] result = newSize == 0 ? NO_CHILDREN : new NodeSnapshot[newSize];
+    int j = 0;
+    for (int i = 0; i < oldSize; i++) {
+      int match = oldToNew[i];
+      if (match < 0) {
+        commands.add(DiffCommandsCalculator.removedCommand(position, oldChildren[i].size));
+        continue;
+      }
+
+      while (j < match) {
+        result[j] = insertNode(newChildren.get(j), commands);
+        j++;
+      }
+
+      result[j] = diffNode(oldChildren[i], newChildren.get(j), commands);
+      j++;
+    }
+
+    while (j < newSize) {
+      result[j] = insertNode(newChildren.get(j), commands);
+      j++;
+    }
+
+    return result;
+  }
+
+  /**
+   * Diffs two nodes with the same id. The node's row is at {@link #position}.
+   */
+  private NodeSnapshot diffNode(NodeSnapshot old, N node, List<AdapterCommand> commands) {
+    long version = provider.getVersion(node);
+    boolean expanded = provider.isExpanded(node);
+
+    if (version == old.version && expanded == old.expanded) {
+      // Unchanged subtree
+      position += old.size;
+      return old;
+    }
+
+    long fingerprint = fingerprinter == null ? 0 : fingerprinter.fingerprint(node);
+    if (fingerprint != old.fingerprint) {
+      commands.add(new ItemChangedCommand(position));
+    }
+    position++;
+
+    NodeSnapshot[] children;
+    if (expanded && old.expanded) {
+      children = diffChildren(old.children, provider.getChildren(node), commands);
+    } else if (expanded) {
+      // expanded, the whole subtree is inserted at once
+      children = snapshotChildren(provider.getChildren(node));
+      int size = visibleSize(children);
+      if (size > 0) {
+        commands.add(DiffCommandsCalculator.insertedCommand(position, size));
+        position += size;
+      }
+    } else {
+      if (old.expanded && old.size > 1) {
+        // collapsed, the whole subtree is removed at once
+        commands.add(DiffCommandsCalculator.removedCommand(position, old.size - 1));
+      }
+      children = NO_CHILDREN;
+    }
+
+    return new NodeSnapshot(old.id, version, fingerprint, expanded, children);
+  }
+
+  /**
+   * Inserts a new node (and its visible subtree) at {@link #position}
+   */
+  private NodeSnapshot insertNode(N node, List<AdapterCommand> commands) {
+    NodeSnapshot snapshot = snapshot(node);
+    commands.add(DiffCommandsCalculator.insertedCommand(position, snapshot.size));
+    position += snapshot.size;
+    return snapshot;
+  }
+
+  private void computeMatches(long[] oldIds, long[] newIds, int[] oldToNew) {
+    int oldSize = oldIds.length;
+    int newSize = newIds.length;
+
+    int min = Math.min(oldSize, newSize);
+    int prefix = LongArrayScan.matchingRun(oldIds, 0, newIds, 0, min);
+    for (int i = 0; i < prefix; i++) {
+      oldToNew[i] = i;
+    }
+    int suffix = LongArrayScan.matchingRunBackwards(oldIds, oldSize, newIds, newSize, min - prefix);
+    for (int i = 1; i <= suffix; i++) {
+      oldToNew[oldSize - i] = newSize - i;
+    }
+
+    int oldEnd = oldSize - suffix;
+    int newEnd = newSize - suffix;
+    if (prefix == newEnd) {
+      for (int i = prefix; i < oldEnd; i++) {
+        oldToNew[i] = -1;
+      }
+    } else if (prefix < oldEnd) {
+      engine.computeMatches(new LongArrayDiffInput(oldIds, oldSize, newIds, newSize, workspace),
+          prefix, oldEnd, prefix, newEnd, oldToNew);
+    }
+  }
+
+  private NodeSnapshot snapshot(N node) {
+    boolean expanded = provider.isExpanded(node);
+    return new NodeSnapshot(provider.getId(node), provider.getVersion(node),
+        fingerprinter == null ? 0 : fingerprinter.fingerprint(node), expanded,
+        expanded ? snapshotChildren(provider.getChildren(node)) : NO_CHILDREN);
+  }
+
+  private NodeSnapshot[] snapshotChildren(List<N> nodes) {
+    int size = nodes.size();
+    if (size == 0) {
+      return NO_CHILDREN;
+    }
+    NodeSnapshot[] snapshots = new NodeSnapshot[size];
+    for (int i = 0; i < size; i++) {
+      snapshots[i] = snapshot(nodes.get(i));
+    }
+    return snapshots;
+  }
+
+  private static int visibleSize(NodeSnapshot[] nodes) {
+    int size = 0;
+    for (NodeSnapshot node : nodes) {
+      size += node.size;
+    }
+    return size;
+  }
+
+  /**
+   * What we know about a node from the previous diff
+   */
+  private static final class NodeSnapshot {
+    final long id;
+    final long version;
+    final long fingerprint;
+    final boolean expanded;
+    final NodeSnapshot[] children;
+    /**
+     * Number of visible rows: the node itself plus its visible children
+     */
+    final int size;
+
+    NodeSnapshot(long id, long version, long fingerprint, boolean expanded,
+        NodeSnapshot[] children) {
+      this.id = id;
+      this.version = version;
+      this.fingerprint = fingerprint;
+      this.expanded = expanded;
+      this.children = children;
+      this.size = 1 + visibleSize(children);
+    }
+  }
+}
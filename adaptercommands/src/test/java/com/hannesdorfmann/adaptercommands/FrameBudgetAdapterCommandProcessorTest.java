@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.support.v7.widget.RecyclerView;
+import com.hannesdorfmann.adaptercommands.command.AdapterCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemInsertedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemMovedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRemovedCommand;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * @author Hannes Dorfmann
+ */
+@RunWith(PowerMockRunner.class) @PrepareForTest(RecyclerView.Adapter.class)
+public class FrameBudgetAdapterCommandProcessorTest {
+
+  private static final long BUDGET = 10;
+
+  private RecyclerView.Adapter adapter;
+  private TickingClock clock;
+  private FrameBudgetAdapterCommandProcessor processor;
+
+  @Before public void init() {
+    adapter = PowerMockito.mock(RecyclerView.Adapter.class);
+    clock = new TickingClock();
+    processor = new FrameBudgetAdapterCommandProcessor(adapter, clock, BUDGET);
+  }
+
+  @Test public void changesAreDeferredToNextFrames() {
+    List<AdapterCommand> commands = new ArrayList<>();
+    for (int i = 0; i < 20; i += 2) {
+      commands.add(new ItemChangedCommand(i));
+    }
+
+    clock.tick = 4;
+    processor.execute(commands);
+
+    Assert.assertTrue(processor.hasPendingCommands());
+    Mockito.verify(adapter, Mockito.atMost(3)).notifyItemChanged(Mockito.anyInt());
+
+    int frames = 0;
+    while (clock.doFrame()) {
+      frames++;
+    }
+
+    Assert.assertTrue(frames > 1);
+    Assert.assertFalse(processor.hasPendingCommands());
+    for (int i = 0; i < 20; i += 2) {
+      Mockito.verify(adapter, Mockito.times(1)).notifyItemChanged(i);
+    }
+  }
+
+  @Test public void adjacentChangesCoalesced() {
+    List<AdapterCommand> commands = new ArrayList<>();
+    commands.add(new ItemChangedCommand(3));
+    commands.add(new ItemChangedCommand(1));
+    commands.add(new ItemChangedCommand(2));
+    commands.add(new ItemRangeChangedCommand(2, 5));
+
+    processor.execute(commands);
+
+    Mockito.verify(adapter, Mockito.only()).notifyItemRangeChanged(1, 6);
+  }
+
+  @Test public void changesTransformedByStructuralCommands() {
+    List<AdapterCommand> commands = new ArrayList<>();
+    commands.add(new ItemChangedCommand(2));
+    commands.add(new ItemChangedCommand(5));
+    commands.add(new ItemInsertedCommand(0));
+    commands.add(new ItemRemovedCommand(6));
+    commands.add(new ItemChangedCommand(8));
+    commands.add(new ItemMovedCommand(3, 0));
+
+    processor.execute(commands);
+    processor.flush();
+
+    // 2 -> 3 (insert) -> 0 (move), 5 -> 6 -> removed, 8 -> 8
+    Mockito.verify(adapter, Mockito.times(1)).notifyItemChanged(0);
+    Mockito.verify(adapter, Mockito.times(1)).notifyItemChanged(8);
+    Mockito.verify(adapter, Mockito.times(2)).notifyItemChanged(Mockito.anyInt());
+  }
+
+  @Test public void collapseWhenBudgetExceeded() {
+    List<AdapterCommand> commands = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      commands.add(new ItemInsertedCommand(i));
+    }
+    commands.add(new ItemChangedCommand(3));
+
+    clock.tick = 3;
+    processor.execute(commands);
+
+    Mockito.verify(adapter, Mockito.times(1)).notifyDataSetChanged();
+    Mockito.verify(adapter, Mockito.atMost(4)).notifyItemInserted(Mockito.anyInt());
+    Mockito.verify(adapter, Mockito.never()).notifyItemChanged(Mockito.anyInt());
+    Assert.assertFalse(processor.hasPendingCommands());
+  }
+
+  @Test public void pendingChangesFlushedOnNextExecute() {
+    List<AdapterCommand> commands = new ArrayList<>();
+    commands.add(new ItemChangedCommand(1));
+    commands.add(new ItemChangedCommand(4));
+
+    clock.tick = BUDGET;
+    processor.execute(commands);
+    Mockito.verifyZeroInteractions(adapter);
+
+    // Every frame dispatches at least one change
+    Assert.assertTrue(clock.doFrame());
+    Mockito.verify(adapter, Mockito.times(1)).notifyItemChanged(1);
+    Assert.assertTrue(processor.hasPendingCommands());
+
+    clock.tick = 0;
+    processor.execute(new ArrayList<AdapterCommand>());
+    Mockito.verify(adapter, Mockito.times(1)).notifyItemChanged(4);
+    Assert.assertFalse(processor.hasPendingCommands());
+  }
+
+  /**
+   * Advances time on every read
+   */
+  @Test public void profiledChangesAreReportedPerFrame() {
+    HistogramDispatchProfiler profiler = new HistogramDispatchProfiler(BUDGET);
+    processor.setProfiler(profiler);
+
+    List<AdapterCommand> commands = new ArrayList<>();
+    commands.add(new ItemInsertedCommand(0));
+    for (int i = 0; i < 20; i += 2) {
+      commands.add(new ItemChangedCommand(i));
+    }
+
+    clock.tick = 4;
+    processor.execute(commands);
+    int frames = 0;
+    while (clock.doFrame()) {
+      frames++;
+    }
+
+    Assert.assertEquals(1 + frames, profiler.getBatchNanos().getCount());
+    Assert.assertEquals(11, profiler.getBatchSizes().getSum());
+    Assert.assertEquals(1,
+        profiler.getCommandTypeStatistics(ItemInsertedCommand.class).getCount());
+    Assert.assertEquals(10,
+        profiler.getCommandTypeStatistics(ItemChangedCommand.class).getCount());
+    Mockito.verify(adapter, Mockito.times(10)).notifyItemChanged(Mockito.anyInt());
+  }
+
+  static class TickingClock extends ManualFrameClock {
+    long tick;
+
+    @Override public long nanoTime() {
+      advance(tick);
+      return super.nanoTime();
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import android.support.v7.widget.RecyclerView;
+import com.hannesdorfmann.adaptercommands.command.AdapterCommand;
+import com.hannesdorfmann.adaptercommands.command.EntireDataSetChangedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemInsertedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeInsertedCommand;
+import com.hannesdorfmann.adaptercommands.command.ItemRangeRemovedCommand;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * @author Hannes Dorfmann
+ */
+@RunWith(PowerMockRunner.class) @PrepareForTest(RecyclerView.Adapter.class)
+public class HistogramDispatchProfilerTest {
+
+  @Test public void histogramBuckets() {
+    Log2Histogram histogram = new Log2Histogram();
+    Assert.assertEquals(0, histogram.getPercentile(50));
+
+    histogram.record(0);
+    histogram.record(1);
+    histogram.record(5);
+    histogram.record(5);
+    histogram.record(1000);
+
+    Assert.assertEquals(5, histogram.getCount());
+    Assert.assertEquals(1011, histogram.getSum());
+    Assert.assertEquals(1000, histogram.getMax());
+    Assert.assertEquals(1, histogram.getBucketCount(0));
+    Assert.assertEquals(1, histogram.getBucketCount(1));
+    Assert.assertEquals(2, histogram.getBucketCount(3));
+    Assert.assertEquals(1, histogram.getBucketCount(10));
+    Assert.assertEquals(0, histogram.getPercentile(20));
+    Assert.assertEquals(8, histogram.getPercentile(50));
+    Assert.assertEquals(1000, histogram.getPercentile(100));
+
+    histogram.clear();
+    Assert.assertEquals(0, histogram.getCount());
+    Assert.assertEquals(0, histogram.getMax());
+  }
+
+  @Test public void recordsCommandsAndBatches() {
+    RecyclerView.Adapter adapter = PowerMockito.mock(RecyclerView.Adapter.class);
+    AdapterCommandProcessor processor = new AdapterCommandProcessor(adapter);
+    HistogramDispatchProfiler profiler = new HistogramDispatchProfiler();
+    processor.setProfiler(profiler);
+
+    List<AdapterCommand> commands = new ArrayList<>();
+    commands.add(new ItemRangeInsertedCommand(0, 10));
+    commands.add(new ItemRangeInsertedCommand(20, 3));
+    commands.add(new ItemInsertedCommand(5));
+    commands.add(new ItemRangeRemovedCommand(0, 100));
+    processor.execute(commands);
+
+    List<AdapterCommand> entire = new ArrayList<>();
+    entire.add(new EntireDataSetChangedCommand());
+    processor.execute(entire);
+
+    Assert.assertEquals(2, profiler.getBatchNanos().getCount());
+    Assert.assertEquals(5, profiler.getBatchSizes().getSum());
+    Assert.assertEquals(2, profiler.getBatchesWithoutObservers());
+    Assert.assertEquals(4, profiler.getCommandTypeStatistics().size());
+
+    HistogramDispatchProfiler.CommandTypeStatistics inserted =
+        profiler.getCommandTypeStatistics(ItemRangeInsertedCommand.class);
+    Assert.assertEquals(2, inserted.getCount());
+    Assert.assertEquals(13, inserted.getRangeSizes().getSum());
+    Assert.assertEquals(10, inserted.getRangeSizes().getMax());
+    Assert.assertEquals(100,
+        profiler.getCommandTypeStatistics(ItemRangeRemovedCommand.class).getRangeSizes().getMax());
+    Assert.assertEquals(1,
+        profiler.getCommandTypeStatistics(EntireDataSetChangedCommand.class).getCount());
+    Assert.assertEquals(0, profiler.getCommandTypeStatistics(EntireDataSetChangedCommand.class)
+        .getRangeSizes()
+        .getCount());
+
+    Mockito.verify(adapter).notifyItemRangeInserted(0, 10);
+    Mockito.verify(adapter).notifyDataSetChanged();
+
+    StringBuilder dump = new StringBuilder();
+    try {
+      profiler.dump(dump);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    Assert.assertTrue(dump.toString().contains("ItemRangeInsertedCommand range sizes: count=2"));
+
+    processor.setProfiler(null);
+    processor.execute(entire);
+    Assert.assertEquals(2, profiler.getBatchNanos().getCount());
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class PendingChangeRangesTest {
+
+  @Test public void moveSplitsOnlyAffectedPart() {
+    PendingChangeRanges ranges = new PendingChangeRanges();
+    ranges.add(0, 10000);
+    ranges.moved(4000, 6000);
+
+    int entries = 0;
+    List<Integer> pending = new ArrayList<>();
+    while (!ranges.isEmpty()) {
+      if (ranges.nextCount() > 0) {
+        entries++;
+        for (int k = 0; k < ranges.nextCount(); k++) {
+          pending.add(ranges.nextStart() + k);
+        }
+      }
+      ranges.poll();
+    }
+    Assert.assertTrue("Entries: " + entries, entries <= 4);
+    Assert.assertEquals(10000, pending.size());
+  }
+
+  @Test public void behavesLikeMarkedList() {
+    Random random = new Random(27);
+    for (int round = 0; round < 200; round++) {
+      PendingChangeRanges ranges = new PendingChangeRanges();
+      List<Boolean> marked = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        marked.add(false);
+      }
+
+      for (int step = 0; step < 20; step++) {
+        int op = random.nextInt(4);
+        if (op == 0) {
+          int start = random.nextInt(marked.size());
+          int count = 1 + random.nextInt(Math.min(10, marked.size() - start));
+          ranges.add(start, count);
+          for (int k = start; k < start + count; k++) {
+            marked.set(k, true);
+          }
+        } else if (op == 1) {
+          int position = random.nextInt(marked.size() + 1);
+          int count = 1 + random.nextInt(5);
+          ranges.inserted(position, count);
+          for (int k = 0; k < count; k++) {
+            marked.add(position, false);
+          }
+        } else if (op == 2 && marked.size() > 10) {
+          int position = random.nextInt(marked.size());
+          int count = 1 + random.nextInt(Math.min(5, marked.size() - position));
+          ranges.removed(position, count);
+          marked.subList(position, position + count).clear();
+        } else {
+          int from = random.nextInt(marked.size());
+          int to = random.nextInt(marked.size());
+          ranges.moved(from, to);
+          marked.add(to, marked.remove(from));
+        }
+      }
+
+      ranges.normalize();
+      List<Boolean> actual = new ArrayList<>();
+      for (int i = 0; i < marked.size(); i++) {
+        actual.add(false);
+      }
+      while (!ranges.isEmpty()) {
+        for (int k = 0; k < ranges.nextCount(); k++) {
+          actual.set(ranges.nextStart() + k, true);
+        }
+        ranges.poll();
+      }
+      Assert.assertEquals(marked, actual);
+    }
+  }
+}
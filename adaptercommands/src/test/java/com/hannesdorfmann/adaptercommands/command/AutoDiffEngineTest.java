@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class AutoDiffEngineTest {
+
+  private static final Comparator<Integer> NATURAL = new Comparator<Integer>() {
+    @Override public int compare(Integer lhs, Integer rhs) {
+      return lhs.compareTo(rhs);
+    }
+  };
+
+  @Test public void smallListsUseLcs() {
+    DiffCommandsCalculator<Integer> calculator =
+        new DiffCommandsCalculator<>(false, null, new AutoDiffEngine<Integer>());
+    diffAndVerify(calculator, list(1, 2, 3, 4, 5), list(1, 3, 2, 6, 5));
+    Assert.assertTrue(calculator.getStatistics().getLastEngine() instanceof LcsDiffEngine);
+  }
+
+  @Test public void sortedListsUseSortedMerge() {
+    DiffCommandsCalculator<Integer> calculator =
+        new DiffCommandsCalculator<>(false, null, new AutoDiffEngine<>(NATURAL));
+    diffAndVerify(calculator, list(1, 3, 5, 7, 9), list(0, 3, 4, 7, 8));
+    Assert.assertTrue(calculator.getStatistics().getLastEngine() instanceof SortedMergeDiffEngine);
+
+    // Not sorted anymore
+    diffAndVerify(calculator, list(0, 3, 4, 7, 8), list(8, 0, 3, 7, 5));
+    Assert.assertTrue(calculator.getStatistics().getLastEngine() instanceof LcsDiffEngine);
+  }
+
+  @Test public void sortedMergeNeedsOldItems() {
+    ItemKeyProvider<Integer> keyProvider = new ItemKeyProvider<Integer>() {
+      @Override public long getKey(Integer item) {
+        return item;
+      }
+    };
+    DiffCommandsCalculator<Integer> calculator =
+        new DiffCommandsCalculator<>(false, keyProvider, null, new AutoDiffEngine<>(NATURAL));
+    diffAndVerify(calculator, list(1, 3, 5, 7, 9), list(0, 3, 4, 7, 8));
+    Assert.assertTrue(calculator.getStatistics().getLastEngine() instanceof LcsDiffEngine);
+  }
+
+  @Test public void largeReplacedListsUseHuntSzymanski() {
+    List<Integer> oldList = new ArrayList<>();
+    List<Integer> newList = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      oldList.add(i);
+      newList.add(i % 100 == 0 ? i : 10000 + i);
+    }
+    newList.set(0, -1);
+    newList.set(newList.size() - 1, -2);
+
+    DiffCommandsCalculator<Integer> calculator =
+        new DiffCommandsCalculator<>(false, null, new AutoDiffEngine<Integer>());
+    diffAndVerify(calculator, oldList, newList);
+    Assert.assertTrue(
+        calculator.getStatistics().getLastEngine() instanceof HuntSzymanskiDiffEngine);
+  }
+
+  @Test public void fastPathHasNoEngine() {
+    DiffCommandsCalculator<Integer> calculator =
+        new DiffCommandsCalculator<>(false, null, new AutoDiffEngine<Integer>());
+    diffAndVerify(calculator, list(1, 2, 3), list(1, 2, 3, 4));
+    Assert.assertNull(calculator.getStatistics().getLastEngine());
+  }
+
+  @Test public void randomLists() {
+    Random random = new Random(42);
+    DiffCommandsCalculator<Integer> calculator =
+        new DiffCommandsCalculator<>(false, null, new AutoDiffEngine<>(NATURAL));
+    List<Integer> oldList = new ArrayList<>();
+    calculator.diff(oldList);
+    for (int round = 0; round < 200; round++) {
+      List<Integer> newList = new ArrayList<>();
+      int size = random.nextInt(round % 10 == 0 ? 500 : 50);
+      int alphabet = 1 + random.nextInt(1000);
+      for (int i = 0; i < size; i++) {
+        newList.add(random.nextInt(alphabet));
+      }
+      if (random.nextBoolean()) {
+        Collections.sort(newList);
+      }
+      new ShadowList(oldList).apply(calculator.diff(newList)).assertTransformedTo(newList);
+      oldList = newList;
+    }
+  }
+
+  private void diffAndVerify(DiffCommandsCalculator<Integer> calculator, List<Integer> oldList,
+      List<Integer> newList) {
+    calculator.diff(oldList);
+    new ShadowList(oldList).apply(calculator.diff(newList)).assertTransformedTo(newList);
+  }
+
+  private List<Integer> list(Integer... items) {
+    List<Integer> list = new ArrayList<>();
+    Collections.addAll(list, items);
+    return list;
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.BulkItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Detector;
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Item;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class BulkChangeDetectionTest {
+
+  static class BulkDetector extends Detector implements BulkItemChangedDetector<Item> {
+    final AtomicInteger calls = new AtomicInteger();
+    final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+    @Override public void detectChanges(List<Item> oldItems, List<Item> newItems,
+        boolean[] changed) {
+      calls.incrementAndGet();
+      threads.add(Thread.currentThread());
+      // Each chunk owns its array, so the whole array may be used
+      Assert.assertEquals(oldItems.size(), changed.length);
+      for (int k = 0; k < changed.length; k++) {
+        changed[k] = hasChanged(oldItems.get(k), newItems.get(k));
+      }
+    }
+  }
+
+  private ExecutorService executor;
+
+  @Before public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test public void sameCommandsAsSequential() {
+    Random random = new Random(42);
+    BulkDetector bulkDetector = new BulkDetector();
+    DiffCommandsCalculator<Item> bulk = new DiffCommandsCalculator<>(false, bulkDetector);
+    bulk.setChangeDetectionExecutor(executor, 0);
+    DiffCommandsCalculator<Item> sequential = new DiffCommandsCalculator<>(false, new Detector());
+
+    List<Item> oldList = randomList(random, 1000);
+    bulk.diff(oldList);
+    sequential.diff(oldList);
+
+    for (int round = 0; round < 30; round++) {
+      List<Item> newList = randomList(random, round % 3 == 0 ? 1000 : 60);
+      List<AdapterCommand> bulkCommands = bulk.diff(newList);
+      Assert.assertEquals(sequential.diff(newList), bulkCommands);
+      new ShadowList(oldList).apply(bulkCommands).assertTransformedTo(newList);
+      oldList = newList;
+    }
+
+    Assert.assertTrue(bulkDetector.threads.size() > 1);
+  }
+
+  @Test public void withoutExecutorAllPairsAtOnce() {
+    BulkDetector detector = new BulkDetector();
+    DiffCommandsCalculator<Item> calculator = new DiffCommandsCalculator<>(false, detector);
+
+    List<Item> oldList = new ArrayList<>();
+    List<Item> newList = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      oldList.add(new Item("" + i, "v1"));
+      newList.add(new Item("" + i, i == 1500 ? "v2" : "v1"));
+    }
+    calculator.diff(oldList);
+    detector.calls.set(0);
+
+    List<AdapterCommand> commands = calculator.diff(newList);
+    Assert.assertEquals(1, detector.calls.get());
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals(new ItemChangedCommand(1500), commands.get(0));
+  }
+
+  @Test public void exceptionIsRethrown() {
+    DiffCommandsCalculator<Item> calculator =
+        new DiffCommandsCalculator<>(false, new BulkDetector() {
+          @Override public void detectChanges(List<Item> oldItems, List<Item> newItems,
+              boolean[] changed) {
+            throw new IllegalArgumentException("Test");
+          }
+        });
+    calculator.setChangeDetectionExecutor(executor, 0);
+
+    List<Item> list = randomList(new Random(1), 3000);
+    calculator.diff(list);
+    try {
+      calculator.diff(list);
+      Assert.fail("Exception expected");
+    } catch (IllegalArgumentException e) {
+      Assert.assertEquals("Test", e.getMessage());
+    }
+  }
+
+  private List<Item> randomList(Random random, int size) {
+    List<Item> list = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      if (random.nextInt(10) > 0) {
+        list.add(new Item("" + i, "" + random.nextInt(3)));
+      }
+    }
+    return list;
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.support.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class BulkDiffExecutorTest {
+
+  private ExecutorService executor;
+
+  @Before public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Sleeps while diffing and tracks how many diffs are running concurrently
+   */
+  static class SlowCalculator extends DiffCommandsCalculator<Integer> {
+    static final AtomicInteger running = new AtomicInteger();
+    static final AtomicInteger maxRunning = new AtomicInteger();
+    final long sleepMillis;
+
+    SlowCalculator(long sleepMillis) {
+      this.sleepMillis = sleepMillis;
+    }
+
+    @Override public List<AdapterCommand> diff(@NonNull List<Integer> newList) {
+      int now = running.incrementAndGet();
+      while (true) {
+        int max = maxRunning.get();
+        if (now <= max || maxRunning.compareAndSet(max, now)) {
+          break;
+        }
+      }
+      try {
+        Thread.sleep(sleepMillis);
+        return super.diff(newList);
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        running.decrementAndGet();
+      }
+    }
+  }
+
+  @Test public void diffAll() throws Exception {
+    BulkDiffExecutor bulk = new BulkDiffExecutor(executor, 4);
+    List<BulkDiffExecutor.Task<Integer>> tasks = new ArrayList<>();
+    List<List<Integer>> oldLists = new ArrayList<>();
+    List<List<Integer>> newLists = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      DiffCommandsCalculator<Integer> calculator = new DiffCommandsCalculator<>();
+      List<Integer> oldList = Arrays.asList(1, 2, 3, i);
+      List<Integer> newList = Arrays.asList(i, 2, 3, 4);
+      calculator.diff(oldList);
+      oldLists.add(oldList);
+      newLists.add(newList);
+      tasks.add(new BulkDiffExecutor.Task<>(calculator, newList));
+    }
+
+    List<Future<List<AdapterCommand>>> futures = bulk.diffAll(tasks);
+    Assert.assertEquals(tasks.size(), futures.size());
+    for (int i = 0; i < futures.size(); i++) {
+      new ShadowList(oldLists.get(i)).apply(futures.get(i).get(5, TimeUnit.SECONDS))
+          .assertTransformedTo(newLists.get(i));
+    }
+  }
+
+  @Test public void sameCalculatorInOrder() throws Exception {
+    BulkDiffExecutor bulk = new BulkDiffExecutor(executor, 4);
+    SlowCalculator calculator = new SlowCalculator(5);
+    calculator.diff(Arrays.asList(0));
+
+    List<List<Integer>> lists = new ArrayList<>();
+    List<BulkDiffExecutor.Task<Integer>> tasks = new ArrayList<>();
+    for (int i = 1; i <= 10; i++) {
+      List<Integer> list = new ArrayList<>();
+      for (int k = 0; k <= i; k++) {
+        list.add(k);
+      }
+      lists.add(list);
+      tasks.add(new BulkDiffExecutor.Task<Integer>(calculator, list));
+    }
+
+    List<Future<List<AdapterCommand>>> futures = bulk.diffAll(tasks);
+    for (int i = 0; i < futures.size(); i++) {
+      // Every diff appends exactly one item, if run in order
+      List<AdapterCommand> commands = futures.get(i).get(5, TimeUnit.SECONDS);
+      Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemInsertedCommand(i + 1)), commands);
+    }
+  }
+
+  @Test public void boundedParallelism() throws Exception {
+    SlowCalculator.running.set(0);
+    SlowCalculator.maxRunning.set(0);
+    BulkDiffExecutor bulk = new BulkDiffExecutor(executor, 2);
+    List<BulkDiffExecutor.Task<Integer>> tasks = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      tasks.add(new BulkDiffExecutor.Task<Integer>(new SlowCalculator(10), Arrays.asList(i)));
+    }
+
+    final CountDownLatch completed = new CountDownLatch(tasks.size());
+    bulk.diffAll(tasks, new BulkDiffExecutor.Listener<Integer>() {
+      @Override public void onDiffCompleted(@NonNull BulkDiffExecutor.Task<Integer> task,
+          @NonNull List<AdapterCommand> commands) {
+        completed.countDown();
+      }
+
+      @Override public void onDiffFailed(@NonNull BulkDiffExecutor.Task<Integer> task,
+          @NonNull Throwable error) {
+      }
+    });
+
+    Assert.assertTrue(completed.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(SlowCalculator.maxRunning.get() <= 2);
+    Assert.assertEquals(0, bulk.getQueuedCount());
+  }
+
+  @Test public void timeout() throws Exception {
+    BulkDiffExecutor bulk = new BulkDiffExecutor(executor, 2, 20, TimeUnit.MILLISECONDS);
+    SlowCalculator calculator = new SlowCalculator(500);
+
+    Future<List<AdapterCommand>> future = bulk.submit(calculator, Arrays.asList(1, 2));
+    List<AdapterCommand> commands = future.get(400, TimeUnit.MILLISECONDS);
+    Assert.assertEquals(1, commands.size());
+    Assert.assertTrue(commands.get(0) instanceof EntireDataSetChangedCommand);
+    bulk.shutdown();
+  }
+
+  @Test public void timeoutBeforeDiffStarts() throws Exception {
+    // Far more diffs than threads, so the timeout elapses before most diffs are started
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    BulkDiffExecutor bulk = new BulkDiffExecutor(pool, 2, 1, TimeUnit.NANOSECONDS);
+    List<DiffCommandsCalculator<Integer>> calculators = new ArrayList<>();
+    List<List<Integer>> newLists = new ArrayList<>();
+    List<Future<List<AdapterCommand>>> futures = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      DiffCommandsCalculator<Integer> calculator = new DiffCommandsCalculator<>();
+      calculator.diff(Arrays.asList(1, 2, 3));
+      List<Integer> newList = Arrays.asList(3, i, 1);
+      calculators.add(calculator);
+      newLists.add(newList);
+      futures.add(bulk.submit(calculator, newList));
+    }
+    for (int i = 0; i < futures.size(); i++) {
+      futures.get(i).get(5, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+    Assert.assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+    bulk.shutdown();
+
+    // Timed out or not, every diff has run to the end
+    for (int i = 0; i < calculators.size(); i++) {
+      Assert.assertTrue(calculators.get(i).diff(newLists.get(i)).isEmpty());
+    }
+  }
+
+  @Test public void rejectionFailsAllQueuedDiffs() throws Exception {
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    BulkDiffExecutor bulk = new BulkDiffExecutor(pool, 1);
+    final CountDownLatch release = new CountDownLatch(1);
+    DiffCommandsCalculator<Integer> blocking = new DiffCommandsCalculator<Integer>() {
+      @Override public List<AdapterCommand> diff(@NonNull List<Integer> newList) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        return super.diff(newList);
+      }
+    };
+
+    Future<List<AdapterCommand>> first = bulk.submit(blocking, Arrays.asList(1));
+    Future<List<AdapterCommand>> second =
+        bulk.submit(new DiffCommandsCalculator<Integer>(), Arrays.asList(2));
+    Future<List<AdapterCommand>> third =
+        bulk.submit(new DiffCommandsCalculator<Integer>(), Arrays.asList(3));
+    Assert.assertEquals(2, bulk.getQueuedCount());
+
+    // The queued diffs are dispatched after the first one, but the executor rejects them
+    pool.shutdown();
+    release.countDown();
+    Assert.assertEquals(1, first.get(5, TimeUnit.SECONDS).size());
+    for (Future<List<AdapterCommand>> future : Arrays.asList(second, third)) {
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        Assert.fail("Exception expected");
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+      }
+    }
+    Assert.assertEquals(0, bulk.getQueuedCount());
+  }
+
+  @Test public void failure() throws Exception {
+    BulkDiffExecutor bulk = new BulkDiffExecutor(executor, 2);
+    DiffCommandsCalculator<Integer> calculator = new DiffCommandsCalculator<Integer>() {
+      @Override public List<AdapterCommand> diff(@NonNull List<Integer> newList) {
+        throw new IllegalStateException("Test");
+      }
+    };
+
+    final CountDownLatch failed = new CountDownLatch(1);
+    List<BulkDiffExecutor.Task<Integer>> tasks = new ArrayList<>();
+    tasks.add(new BulkDiffExecutor.Task<Integer>(calculator, Arrays.asList(1)));
+    bulk.diffAll(tasks, new BulkDiffExecutor.Listener<Integer>() {
+      @Override public void onDiffCompleted(@NonNull BulkDiffExecutor.Task<Integer> task,
+          @NonNull List<AdapterCommand> commands) {
+      }
+
+      @Override public void onDiffFailed(@NonNull BulkDiffExecutor.Task<Integer> task,
+          @NonNull Throwable error) {
+        if (error instanceof IllegalStateException) {
+          failed.countDown();
+        }
+      }
+    });
+    Assert.assertTrue(failed.await(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Detector;
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Item;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class CachingDiffCommandsCalculatorTest {
+
+  private DiffResultCache cache;
+  private CachingDiffCommandsCalculator<Item> calculator;
+
+  @Before public void init() {
+    cache = new DiffResultCache(10, 1024 * 1024);
+    calculator =
+        new CachingDiffCommandsCalculator<>(false, new Detector(), new Fingerprinter(), cache);
+  }
+
+  @Test public void togglingStatesHitsCache() {
+    List<Item> all = newList("a", "b", "c", "d");
+    List<Item> filtered = newList("a", "c");
+
+    calculator.diff(all);
+
+    List<AdapterCommand> first = calculator.diff(filtered);
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+
+    List<AdapterCommand> back = calculator.diff(all);
+    Assert.assertEquals(2, cache.getMissCount());
+
+    Assert.assertEquals(first, calculator.diff(filtered));
+    Assert.assertEquals(back, calculator.diff(all));
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(2, cache.size());
+  }
+
+  @Test public void changedContentIsDifferentTransition() {
+    List<Item> items = newList("a", "b");
+    calculator.diff(items);
+    calculator.diff(newList("a"));
+    calculator.diff(items);
+
+    List<Item> changed = newList("a");
+    changed.set(0, new Item("a", "otherValue"));
+    List<AdapterCommand> commands = calculator.diff(changed);
+
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertTrue(commands.contains(new ItemChangedCommand(0)));
+  }
+
+  @Test public void snapshotUpdatedOnCacheHit() {
+    calculator.diff(newList("a", "b"));
+    calculator.diff(newList("a"));
+    calculator.diff(newList("a", "b"));
+    calculator.diff(newList("a")); // cache hit
+
+    List<AdapterCommand> commands = calculator.diff(newList("a", "c"));
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals(new ItemInsertedCommand(1), commands.get(0));
+  }
+
+  @Test public void lazyChangesBypassCache() {
+    List<Item> original = newList("a", "b", "c", "d", "e");
+    List<Item> changed = newList("a", "b", "c", "d", "e");
+    for (int i = 1; i < changed.size(); i++) {
+      changed.set(i, new Item(changed.get(i).id, "changed"));
+    }
+    calculator.diff(original);
+    calculator.diff(changed);
+    calculator.diff(original);
+    Assert.assertEquals(2, cache.size());
+
+    // Commands of a diff with visible range are incomplete, so they are neither taken from nor
+    // put into the cache
+    calculator.setVisibleRange(0, 0);
+    calculator.diff(changed);
+    Assert.assertEquals(0, cache.getHitCount());
+    LazyChanges<Item> lazyChanges = calculator.getLazyChanges();
+    Assert.assertEquals(4, lazyChanges.getRemainingCount());
+
+    // Cache hit replaces the snapshot, so the lazy changes are outdated
+    calculator.clearVisibleRange();
+    calculator.diff(original);
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertTrue(lazyChanges.isInvalidated());
+    Assert.assertNull(calculator.getLazyChanges());
+  }
+
+  @Test public void evictsLeastRecentlyUsed() {
+    DiffResultCache cache = new DiffResultCache(2, 1024 * 1024);
+    cache.put(1, 2, new ArrayList<AdapterCommand>());
+    cache.put(2, 3, new ArrayList<AdapterCommand>());
+    Assert.assertNotNull(cache.get(1, 2));
+    cache.put(3, 4, new ArrayList<AdapterCommand>());
+
+    Assert.assertEquals(2, cache.size());
+    Assert.assertNotNull(cache.get(1, 2));
+    Assert.assertNull(cache.get(2, 3));
+    Assert.assertNotNull(cache.get(3, 4));
+  }
+
+  @Test public void boundedByRetainedBytes() {
+    List<AdapterCommand> commands = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      commands.add(new ItemInsertedCommand(i));
+    }
+    long entryBytes = DiffResultCache.estimateBytes(commands);
+
+    DiffResultCache cache = new DiffResultCache(100, entryBytes * 2);
+    cache.put(1, 2, commands);
+    cache.put(2, 3, commands);
+    cache.put(3, 4, commands);
+
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals(entryBytes * 2, cache.getRetainedBytes());
+    Assert.assertNull(cache.get(1, 2));
+  }
+
+  private List<Item> newList(String... items) {
+    ArrayList<Item> list = new ArrayList<>();
+    for (String item : items) {
+      list.add(new Item(item));
+    }
+    return list;
+  }
+
+  static class Fingerprinter implements ItemFingerprinter<Item> {
+    @Override public long fingerprint(Item item) {
+      return 31L * item.id.hashCode() + item.value.hashCode();
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class CommandBatchComposerTest {
+
+  @Test public void laterPositionsAreTransformed() {
+    List<AdapterCommand> first = new ArrayList<>();
+    first.add(new ItemRangeInsertedCommand(0, 2));
+    List<AdapterCommand> second = new ArrayList<>();
+    second.add(new ItemChangedCommand(3));
+    second.add(new ItemRemovedCommand(0));
+
+    List<AdapterCommand> composed = CommandBatchComposer.compose(Arrays.asList(first, second));
+
+    List<AdapterCommand> expected = new ArrayList<>();
+    expected.add(new ItemInsertedCommand(0));
+    expected.add(new ItemChangedCommand(2));
+    Assert.assertEquals(expected, composed);
+  }
+
+  @Test public void insertedAndRemovedLaterCancelsOut() {
+    CommandBatchComposer composer = new CommandBatchComposer();
+    composer.add(Arrays.<AdapterCommand>asList(new ItemRangeInsertedCommand(5, 3)));
+    composer.add(Arrays.<AdapterCommand>asList(new ItemRangeChangedCommand(5, 3)));
+    composer.add(Arrays.<AdapterCommand>asList(new ItemRangeRemovedCommand(5, 3)));
+
+    Assert.assertEquals(3, composer.getBatchCount());
+    Assert.assertTrue(composer.compose().isEmpty());
+    Assert.assertEquals(0, composer.getBatchCount());
+    Assert.assertTrue(composer.isEmpty());
+  }
+
+  @Test public void entireDataSetChangedDropsFollowingBatches() {
+    CommandBatchComposer composer = new CommandBatchComposer();
+    composer.add(Arrays.<AdapterCommand>asList(new ItemInsertedCommand(0)));
+    composer.add(Arrays.<AdapterCommand>asList(new EntireDataSetChangedCommand()));
+    composer.add(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0)));
+
+    List<AdapterCommand> composed = composer.compose();
+    Assert.assertEquals(1, composed.size());
+    Assert.assertTrue(composed.get(0) instanceof EntireDataSetChangedCommand);
+
+    composer.add(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0)));
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0)),
+        composer.compose());
+  }
+
+  @Test public void composedDiffsAreEquivalentToSuccessiveDiffs() {
+    Random random = new Random(44);
+    for (int round = 0; round < 50; round++) {
+      DiffCommandsCalculator<String> calculator = new DiffCommandsCalculator<>();
+      List<String> list = randomList(random, 30);
+      calculator.diff(list);
+
+      List<String> before = list;
+      CommandBatchComposer composer = new CommandBatchComposer();
+      ShadowList successive = new ShadowList(before);
+      int batches = 1 + random.nextInt(60);
+      for (int i = 0; i < batches; i++) {
+        list = randomList(random, 30);
+        List<AdapterCommand> commands = calculator.diff(list);
+        successive.apply(commands);
+        composer.add(commands);
+      }
+
+      List<AdapterCommand> composed = composer.compose();
+      ShadowList shadow = new ShadowList(before).apply(composed);
+      shadow.assertBoundTo(list);
+      shadow.assertEquivalentTo(successive);
+    }
+  }
+
+  private static List<String> randomList(Random random, int maxSize) {
+    int size = random.nextInt(maxSize);
+    List<String> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      String item = "Item " + random.nextInt(2 * maxSize);
+      if (!list.contains(item)) {
+        list.add(item);
+      }
+    }
+    return list;
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class CommandListOptimizerTest {
+
+  @Test public void removeAndInsertAtSamePositionBecomesChange() {
+    List<AdapterCommand> commands = commands(new ItemRemovedCommand(3), new ItemInsertedCommand(3));
+
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    Assert.assertEquals(commands(new ItemChangedCommand(3)), optimized);
+    assertEquivalent(10, commands, optimized);
+  }
+
+  @Test public void mergeRanges() {
+    List<AdapterCommand> commands =
+        commands(new ItemInsertedCommand(2), new ItemInsertedCommand(3), new ItemInsertedCommand(4),
+            new ItemRemovedCommand(8), new ItemRemovedCommand(8), new ItemChangedCommand(0),
+            new ItemChangedCommand(1));
+
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    Assert.assertEquals(commands(new ItemRangeRemovedCommand(5, 2), new ItemRangeInsertedCommand(2, 3),
+        new ItemRangeChangedCommand(0, 2)), optimized);
+    assertEquivalent(10, commands, optimized);
+  }
+
+  @Test public void dropNoOps() {
+    List<AdapterCommand> commands =
+        commands(new ItemInsertedCommand(2), new ItemChangedCommand(2), new ItemRemovedCommand(2),
+            new ItemMovedCommand(4, 4), new ItemMovedCommand(1, 5), new ItemMovedCommand(5, 1));
+
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    Assert.assertTrue(optimized.isEmpty());
+    assertEquivalent(10, commands, optimized);
+  }
+
+  @Test public void changedItemRemovedLater() {
+    List<AdapterCommand> commands =
+        commands(new ItemRangeChangedCommand(0, 5), new ItemRangeRemovedCommand(0, 5));
+
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    Assert.assertEquals(commands(new ItemRangeRemovedCommand(0, 5)), optimized);
+    assertEquivalent(10, commands, optimized);
+  }
+
+  @Test public void movesOfSingleItemAreCollapsed() {
+    List<AdapterCommand> commands =
+        commands(new ItemMovedCommand(0, 1), new ItemMovedCommand(1, 2), new ItemMovedCommand(2, 3));
+
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    Assert.assertEquals(commands(new ItemMovedCommand(0, 3)), optimized);
+    assertEquivalent(10, commands, optimized);
+  }
+
+  @Test public void entireDataSetChanged() {
+    List<AdapterCommand> commands =
+        commands(new ItemInsertedCommand(2), new EntireDataSetChangedCommand(),
+            new ItemRemovedCommand(2));
+
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    Assert.assertEquals(1, optimized.size());
+    Assert.assertSame(commands.get(1), optimized.get(0));
+  }
+
+  @Test public void alreadyOptimal() {
+    List<AdapterCommand> commands = commands(new ItemRemovedCommand(0), new ItemInsertedCommand(5));
+    Assert.assertSame(commands, CommandListOptimizer.optimize(commands));
+  }
+
+  @Test public void randomCommands() {
+    Random random = new Random(42);
+    for (int round = 0; round < 2000; round++) {
+      int size = random.nextInt(20);
+      List<AdapterCommand> commands = randomCommands(random, size, 1 + random.nextInt(12));
+
+      List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+      Assert.assertTrue(optimized.size() <= commands.size());
+      assertEquivalent(size, commands, optimized);
+    }
+  }
+
+  @Test public void diffCommands() {
+    Random random = new Random(7);
+    for (int round = 0; round < 200; round++) {
+      List<Integer> oldList = new ArrayList<>();
+      List<Integer> newList = new ArrayList<>();
+      for (int i = 0; i < 30; i++) {
+        if (random.nextInt(3) > 0) {
+          oldList.add(i);
+        }
+        if (random.nextInt(3) > 0) {
+          newList.add(i);
+        }
+      }
+      DiffCommandsCalculator<Integer> calculator = new DiffCommandsCalculator<>();
+      calculator.diff(oldList);
+      List<AdapterCommand> commands = calculator.diff(newList);
+
+      List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+      Assert.assertTrue(optimized.size() <= commands.size());
+      new ShadowList(oldList).apply(optimized)
+          .assertEquivalentTo(new ShadowList(oldList).apply(commands));
+    }
+  }
+
+  @Test public void manyCommandsScale() {
+    Random random = new Random(11);
+    int size = 20000;
+    List<AdapterCommand> commands = new ArrayList<>();
+    for (int i = 0; i < 64000; i++) {
+      if (random.nextBoolean()) {
+        commands.add(new ItemMovedCommand(random.nextInt(size), random.nextInt(size)));
+      } else {
+        commands.add(new ItemChangedCommand(random.nextInt(size)));
+      }
+    }
+
+    long start = System.nanoTime();
+    List<AdapterCommand> optimized = CommandListOptimizer.optimize(commands);
+    long millis = (System.nanoTime() - start) / 1000000;
+
+    // Scanning the runs for every command took seconds here
+    Assert.assertTrue("optimize took " + millis + " ms", millis < 2000);
+    Assert.assertTrue(optimized.size() <= commands.size());
+    assertEquivalent(size, commands, optimized);
+  }
+
+  private void assertEquivalent(int size, List<AdapterCommand> commands,
+      List<AdapterCommand> optimized) {
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      items.add(i);
+    }
+    new ShadowList(items).apply(optimized).assertEquivalentTo(new ShadowList(items).apply(commands));
+  }
+
+  private List<AdapterCommand> randomCommands(Random random, int size, int count) {
+    List<AdapterCommand> commands = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      int type = random.nextInt(7);
+      if (size == 0 && type > 1) {
+        type = random.nextInt(2);
+      }
+      switch (type) {
+        case 0:
+          commands.add(new ItemInsertedCommand(random.nextInt(size + 1)));
+          size++;
+          break;
+        case 1:
+          int inserted = 1 + random.nextInt(4);
+          commands.add(new ItemRangeInsertedCommand(random.nextInt(size + 1), inserted));
+          size += inserted;
+          break;
+        case 2:
+          commands.add(new ItemRemovedCommand(random.nextInt(size)));
+          size--;
+          break;
+        case 3:
+          int removeStart = random.nextInt(size);
+          int removed = 1 + random.nextInt(size - removeStart);
+          commands.add(new ItemRangeRemovedCommand(removeStart, removed));
+          size -= removed;
+          break;
+        case 4:
+          commands.add(new ItemMovedCommand(random.nextInt(size), random.nextInt(size)));
+          break;
+        case 5:
+          commands.add(new ItemChangedCommand(random.nextInt(size)));
+          break;
+        default:
+          int changeStart = random.nextInt(size);
+          commands.add(new ItemRangeChangedCommand(changeStart,
+              1 + random.nextInt(size - changeStart)));
+          break;
+      }
+    }
+    return commands;
+  }
+
+  private List<AdapterCommand> commands(AdapterCommand... commands) {
+    return new ArrayList<>(Arrays.asList(commands));
+  }
+}
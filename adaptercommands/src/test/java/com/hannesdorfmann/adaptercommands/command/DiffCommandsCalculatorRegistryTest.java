@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import android.content.ComponentCallbacks2;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class DiffCommandsCalculatorRegistryTest {
+
+  static class TestRegistry extends DiffCommandsCalculatorRegistry<String, Integer> {
+    long now = 1000;
+
+    TestRegistry(Factory<String, Integer> factory) {
+      super(factory, 100);
+    }
+
+    @Override long nowMillis() {
+      return now;
+    }
+  }
+
+  static class CountingFactory
+      implements DiffCommandsCalculatorRegistry.Factory<String, Integer> {
+    final AtomicInteger created = new AtomicInteger();
+
+    @Override public DiffCommandsCalculator<Integer> create(String listId) {
+      created.incrementAndGet();
+      return new DiffCommandsCalculator<>();
+    }
+  }
+
+  @Test public void onePerList() {
+    CountingFactory factory = new CountingFactory();
+    TestRegistry registry = new TestRegistry(factory);
+
+    Assert.assertSame(registry.get("a"), registry.get("a"));
+    Assert.assertNotSame(registry.get("a"), registry.get("b"));
+    Assert.assertEquals(2, factory.created.get());
+    Assert.assertEquals(2, registry.size());
+
+    Assert.assertTrue(registry.remove("a"));
+    Assert.assertFalse(registry.remove("a"));
+    Assert.assertEquals(1, registry.size());
+  }
+
+  @Test public void evictIdle() {
+    TestRegistry registry = new TestRegistry(new CountingFactory());
+    registry.diff("a", list(1, 2, 3));
+    registry.diff("b", list(1, 2, 3));
+
+    registry.now += 60;
+    registry.diff("b", list(1, 2));
+
+    registry.now += 60;
+    Assert.assertEquals(1, registry.evictIdle());
+    Assert.assertEquals(1, registry.size());
+
+    // Snapshot of b is still there
+    List<AdapterCommand> commands = registry.diff("b", list(1, 2, 4));
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals(new ItemInsertedCommand(2), commands.get(0));
+
+    // Snapshot of a is gone
+    commands = registry.diff("a", list(1, 2, 3));
+    Assert.assertTrue(commands.get(0) instanceof EntireDataSetChangedCommand);
+  }
+
+  @Test public void trimMemory() {
+    TestRegistry registry = new TestRegistry(new CountingFactory());
+    registry.diff("a", list(1, 2, 3));
+    registry.diff("a", list(3, 2, 1));
+    Assert.assertTrue(registry.get("a").getWorkspace().getRetainedBytes() > 0);
+
+    registry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+    Assert.assertEquals(1, registry.size());
+    Assert.assertEquals(0, registry.get("a").getWorkspace().getRetainedBytes());
+
+    registry.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_MODERATE);
+    Assert.assertEquals(0, registry.size());
+  }
+
+  @Test public void concurrentLists() throws InterruptedException {
+    final DiffCommandsCalculatorRegistry<String, Integer> registry =
+        new DiffCommandsCalculatorRegistry<>(new CountingFactory());
+    final int threads = 8;
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    final AtomicInteger failures = new AtomicInteger();
+
+    for (int t = 0; t < threads; t++) {
+      final String listId = "list" + (t % 4);
+      new Thread(new Runnable() {
+        @Override public void run() {
+          try {
+            start.await();
+            for (int round = 0; round < 200; round++) {
+              List<Integer> newList = list(round % 7, round % 5, round % 3);
+              registry.diff(listId, newList);
+            }
+          } catch (Throwable e) {
+            failures.incrementAndGet();
+          } finally {
+            done.countDown();
+          }
+        }
+      }).start();
+    }
+
+    start.countDown();
+    done.await();
+    Assert.assertEquals(0, failures.get());
+    Assert.assertEquals(4, registry.size());
+  }
+
+  private static List<Integer> list(Integer... items) {
+    List<Integer> list = new ArrayList<>();
+    for (Integer item : items) {
+      list.add(item);
+    }
+    return list;
+  }
+}
@@ -17,9 +17,12 @@
 package com.hannesdorfmann.adaptercommands.command;
 
 import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -156,12 +159,68 @@ public class DiffCommandsCalculatorTest {
 
     List<AdapterCommand> commands = calculator.diff(items);
 
-    // TODO update once move commands are implemented
-    Assert.assertEquals(4, commands.size());
-    assertContainCommand(commands, new ItemRemovedCommand(0));
-    assertContainCommand(commands, new ItemInsertedCommand(2));
-    assertContainCommand(commands, new ItemRemovedCommand(1));
-    assertContainCommand(commands, new ItemInsertedCommand(4));
+    Assert.assertEquals(2, commands.size());
+    Assert.assertEquals(new ItemMovedCommand(0, 3), commands.get(0));
+    Assert.assertEquals(new ItemMovedCommand(1, 4), commands.get(1));
+    Assert.assertEquals(1, calculator.getStatistics().getReorderCount());
+    Assert.assertEquals(2, calculator.getStatistics().getMoveCount());
+
+    // Moved and changed
+    List<Item> oldItems = new ArrayList<>(items);
+    items.add(0, items.remove(4));
+    items.set(3, new Item("a", "newValueA"));
+    commands = calculator.diff(items);
+    Assert.assertEquals(2, commands.size());
+    Assert.assertEquals(new ItemMovedCommand(4, 0), commands.get(0));
+    Assert.assertEquals(new ItemChangedCommand(3), commands.get(1));
+    new ShadowList(oldItems).apply(commands).assertBoundTo(items);
+  }
+
+  @Test public void shuffleEmitsMinimalMoves() {
+    Random random = new Random(49);
+    for (int round = 0; round < 200; round++) {
+      List<Item> items = new ArrayList<>();
+      for (int i = random.nextInt(300); i >= 0; i--) {
+        items.add(new Item("Item " + i));
+      }
+      calculator.diff(items);
+
+      List<Item> shuffled = new ArrayList<>(items);
+      if (round % 2 == 0) {
+        Collections.shuffle(shuffled, random);
+      } else {
+        for (int k = random.nextInt(5); k >= 0; k--) {
+          shuffled.add(random.nextInt(shuffled.size()),
+              shuffled.remove(random.nextInt(shuffled.size())));
+        }
+      }
+
+      List<AdapterCommand> commands = calculator.diff(shuffled);
+      Assert.assertEquals(items.size() - increasingRun(items, shuffled), commands.size());
+      for (AdapterCommand command : commands) {
+        Assert.assertTrue(command.toString(), command instanceof ItemMovedCommand);
+      }
+      new ShadowList(items).apply(commands).assertTransformedTo(shuffled);
+    }
+  }
+
+  /**
+   * Length of the longest increasing subsequence of old positions, O(n^2)
+   */
+  private static int increasingRun(List<Item> oldItems, List<Item> newItems) {
+    int[] lengths = new int[newItems.size()];
+    int max = 0;
+    for (int j = 0; j < newItems.size(); j++) {
+      int old = oldItems.indexOf(newItems.get(j));
+      lengths[j] = 1;
+      for (int k = 0; k < j; k++) {
+        if (oldItems.indexOf(newItems.get(k)) < old) {
+          lengths[j] = Math.max(lengths[j], lengths[k] + 1);
+        }
+      }
+      max = Math.max(max, lengths[j]);
+    }
+    return max;
   }
 
   @Test public void remove() {
@@ -189,6 +248,92 @@ public class DiffCommandsCalculatorTest {
     Assert.assertTrue(commands2.isEmpty());
   }
 
+  @Test public void appendAndPrependFastPath() {
+    List<Item> items = newList("a", "b", "c");
+    calculator.diff(items);
+
+    items.add(new Item("d"));
+    items.add(new Item("e"));
+    List<AdapterCommand> commands = calculator.diff(items);
+    Assert.assertEquals(1, commands.size());
+    assertContainCommand(commands, new ItemRangeInsertedCommand(3, 2));
+
+    items.add(0, new Item("y"));
+    items.add(0, new Item("x"));
+    items.set(3, new Item("b", "newValueB"));
+    commands = calculator.diff(items);
+    Assert.assertEquals(2, commands.size());
+    Assert.assertEquals(new ItemRangeInsertedCommand(0, 2), commands.get(0));
+    Assert.assertEquals(new ItemChangedCommand(3), commands.get(1));
+
+    // Identical lists are neither appended nor prepended
+    Assert.assertTrue(calculator.diff(new ArrayList<>(items)).isEmpty());
+
+    DiffStatistics statistics = calculator.getStatistics();
+    Assert.assertEquals(4, statistics.getDiffCount());
+    Assert.assertEquals(3, statistics.getFastPathCount());
+    Assert.assertEquals(1, statistics.getAppendCount());
+    Assert.assertEquals(1, statistics.getPrependCount());
+  }
+
+  @Test public void truncateFastPath() {
+    List<Item> items = newList("a", "b", "c", "d", "e", "f");
+    calculator.diff(items);
+
+    List<AdapterCommand> commands = calculator.diff(items.subList(2, 6));
+    Assert.assertEquals(1, commands.size());
+    assertContainCommand(commands, new ItemRangeRemovedCommand(0, 2));
+
+    commands = calculator.diff(items.subList(2, 4));
+    Assert.assertEquals(1, commands.size());
+    assertContainCommand(commands, new ItemRangeRemovedCommand(2, 2));
+
+    commands = calculator.diff(newList("c"));
+    Assert.assertEquals(1, commands.size());
+    assertContainCommand(commands, new ItemRemovedCommand(1));
+
+    DiffStatistics statistics = calculator.getStatistics();
+    Assert.assertEquals(3, statistics.getFastPathCount());
+    Assert.assertEquals(1, statistics.getHeadRemovedCount());
+    Assert.assertEquals(2, statistics.getTailRemovedCount());
+  }
+
+  @Test public void keyAndFingerprintSnapshot() {
+    DiffCommandsCalculator<Item> calculator =
+        new DiffCommandsCalculator<>(new KeyProvider(), new Fingerprinter());
+
+    List<Item> items = newList("a", "b", "c", "d");
+    calculator.diff(items);
+
+    items.remove(1);
+    items.add(2, new Item("e"));
+    items.set(0, new Item("a", "newValueA"));
+
+    List<AdapterCommand> commands = calculator.diff(items);
+    Assert.assertEquals(3, commands.size());
+    assertContainCommand(commands, new ItemChangedCommand(0));
+    assertContainCommand(commands, new ItemRemovedCommand(1));
+    assertContainCommand(commands, new ItemInsertedCommand(2));
+
+    // Same content again, no changes
+    List<Item> sameContent = newList("a", "c", "e", "d");
+    sameContent.set(0, new Item("a", "newValueA"));
+    Assert.assertTrue(calculator.diff(sameContent).isEmpty());
+  }
+
+  @Test public void keySnapshotWithoutFingerprinter() {
+    DiffCommandsCalculator<Item> calculator = new DiffCommandsCalculator<>(new KeyProvider(), null);
+
+    List<Item> items = newList("a", "b");
+    calculator.diff(items);
+    items.set(1, new Item("b", "newValueB"));
+
+    Assert.assertTrue(calculator.diff(items).isEmpty());
+    List<AdapterCommand> commands = calculator.diff(newList("b"));
+    Assert.assertEquals(1, commands.size());
+    assertContainCommand(commands, new ItemRemovedCommand(0));
+  }
+
   private List<Item> newList(String... items) {
     ArrayList<Item> list = new ArrayList<>();
     for (String item : items) {
@@ -241,6 +386,18 @@ public class DiffCommandsCalculatorTest {
     }
   }
 
+  static class KeyProvider implements ItemKeyProvider<Item> {
+    @Override public long getKey(Item item) {
+      return item.id.hashCode();
+    }
+  }
+
+  static class Fingerprinter implements ItemFingerprinter<Item> {
+    @Override public long fingerprint(Item item) {
+      return item.value.hashCode();
+    }
+  }
+
   static class Detector implements ItemChangedDetector<Item> {
     @Override public boolean hasChanged(Item oldItem, Item newItem) {
       return !oldItem.value.equals(newItem.value);
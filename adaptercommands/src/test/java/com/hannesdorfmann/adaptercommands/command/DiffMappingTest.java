@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class DiffMappingTest {
+
+  private static final ItemKeyProvider<Integer> KEYS = new ItemKeyProvider<Integer>() {
+    @Override public long getKey(Integer item) {
+      return item;
+    }
+  };
+
+  @Test public void mapsPositions() {
+    DiffCommandsCalculator<String> calculator = new DiffCommandsCalculator<>();
+    DiffMapping<String> mapping = calculator.diffWithMapping(list("a", "b", "c", "d"));
+    Assert.assertEquals(0, mapping.getOldToNew().length);
+    Assert.assertEquals(-1, mapping.getOldPosition(2));
+    Assert.assertEquals(2, mapping.indexOf("c"));
+
+    mapping = calculator.diffWithMapping(list("x", "a", "c", "d", "b"));
+    Assert.assertEquals(1, mapping.getNewPosition(0));
+    Assert.assertEquals(2, mapping.getNewPosition(2));
+    Assert.assertEquals(-1, mapping.getOldPosition(0));
+    Assert.assertEquals(2, mapping.getOldPosition(2));
+    Assert.assertEquals(4, mapping.indexOf("b"));
+    Assert.assertEquals(-1, mapping.indexOf("y"));
+    new ShadowList(list("a", "b", "c", "d")).apply(mapping.getCommands())
+        .assertTransformedTo(list("x", "a", "c", "d", "b"));
+
+    mapping = calculator.diffWithMapping(Collections.<String>emptyList());
+    Assert.assertArrayEquals(new int[] { -1, -1, -1, -1, -1 }, mapping.getOldToNew());
+    Assert.assertEquals(-1, mapping.indexOf("a"));
+  }
+
+  @Test(expected = IllegalStateException.class) public void indexOfKeyNeedsKeys() {
+    DiffCommandsCalculator<String> calculator = new DiffCommandsCalculator<>();
+    calculator.diffWithMapping(list("a")).indexOfKey(1);
+  }
+
+  @Test public void randomDiffsByEquals() {
+    verifyRandomDiffs(new DiffCommandsCalculator<Integer>(), false);
+  }
+
+  @Test public void randomDiffsByKey() {
+    verifyRandomDiffs(new DiffCommandsCalculator<Integer>(false, KEYS, null), true);
+  }
+
+  private static void verifyRandomDiffs(DiffCommandsCalculator<Integer> calculator,
+      boolean keys) {
+    Random random = new Random(50);
+    List<Integer> list = new ArrayList<>();
+    calculator.diffWithMapping(list);
+    int next = 0;
+    for (int round = 0; round < 300; round++) {
+      List<Integer> newList = new ArrayList<>(list);
+      if (round % 5 == 0) {
+        Collections.shuffle(newList, random);
+      }
+      for (int i = random.nextInt(6); i >= 0; i--) {
+        if (random.nextBoolean() || newList.isEmpty()) {
+          newList.add(random.nextInt(newList.size() + 1), next++);
+        } else {
+          newList.remove(random.nextInt(newList.size()));
+        }
+      }
+
+      DiffMapping<Integer> mapping = calculator.diffWithMapping(newList);
+      ShadowList shadow = new ShadowList(list).apply(mapping.getCommands());
+      shadow.assertTransformedTo(newList);
+
+      Assert.assertEquals(list.size(), mapping.getOldToNew().length);
+      Assert.assertEquals(newList.size(), mapping.getNewToOld().length);
+      for (int j = 0; j < newList.size(); j++) {
+        Object item = shadow.items.get(j);
+        int expected = item == ShadowList.INSERTED ? -1 : list.indexOf(item);
+        Assert.assertEquals("Old position of " + j, expected, mapping.getOldPosition(j));
+        if (expected != -1) {
+          Assert.assertEquals(j, mapping.getNewPosition(expected));
+        }
+        Assert.assertEquals(j, mapping.indexOf(newList.get(j)));
+        if (keys) {
+          Assert.assertEquals(j, mapping.indexOfKey(newList.get(j)));
+        }
+      }
+      for (int i = 0; i < list.size(); i++) {
+        // Moved items may be removed and inserted, but are still found
+        Assert.assertEquals(newList.indexOf(list.get(i)), mapping.indexOf(list.get(i)));
+      }
+      Assert.assertEquals(-1, mapping.indexOf(-1));
+      list = newList;
+    }
+  }
+
+  private static List<String> list(String... items) {
+    List<String> list = new ArrayList<>();
+    Collections.addAll(list, items);
+    return list;
+  }
+}
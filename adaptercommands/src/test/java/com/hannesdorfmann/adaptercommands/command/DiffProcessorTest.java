@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class DiffProcessorTest {
+
+  private static final Executor DIRECT = new Executor() {
+    @Override public void execute(Runnable command) {
+      command.run();
+    }
+  };
+
+  static class TestSubscriber implements DiffFlow.Subscriber<List<AdapterCommand>> {
+    DiffFlow.Subscription subscription;
+    final List<List<AdapterCommand>> batches = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+    Throwable error;
+    boolean completed;
+    final CountDownLatch terminated = new CountDownLatch(1);
+
+    @Override public void onSubscribe(DiffFlow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override public synchronized void onNext(List<AdapterCommand> item) {
+      batches.add(item);
+      threads.add(Thread.currentThread());
+    }
+
+    @Override public void onError(Throwable error) {
+      this.error = error;
+      terminated.countDown();
+    }
+
+    @Override public void onComplete() {
+      completed = true;
+      terminated.countDown();
+    }
+  }
+
+  static class TestUpstream implements DiffFlow.Subscription {
+    long requested;
+    boolean canceled;
+
+    @Override public void request(long n) {
+      requested += n;
+    }
+
+    @Override public void cancel() {
+      canceled = true;
+    }
+  }
+
+  @Test public void dropIntermediateListsWithoutDemand() {
+    DiffProcessor<Integer> processor =
+        new DiffProcessor<>(new DiffCommandsCalculator<Integer>(true), DIRECT);
+    TestUpstream upstream = new TestUpstream();
+    processor.onSubscribe(upstream);
+    Assert.assertEquals(Long.MAX_VALUE, upstream.requested);
+
+    TestSubscriber subscriber = new TestSubscriber();
+    processor.subscribe(subscriber);
+
+    processor.onNext(Arrays.asList(1));
+    processor.onNext(Arrays.asList(1, 2));
+    processor.onNext(Arrays.asList(1, 2, 3));
+    Assert.assertTrue(subscriber.batches.isEmpty());
+
+    subscriber.subscription.request(1);
+    Assert.assertEquals(1, subscriber.batches.size());
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRangeInsertedCommand(0, 3)),
+        subscriber.batches.get(0));
+
+    // Diffs against the last emitted list
+    processor.onNext(Arrays.asList(0, 1, 2));
+    processor.onNext(Arrays.asList(1, 2));
+    subscriber.subscription.request(1);
+    Assert.assertEquals(2, subscriber.batches.size());
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(2)),
+        subscriber.batches.get(1));
+  }
+
+  @Test public void completeAfterPendingList() {
+    DiffProcessor<Integer> processor =
+        new DiffProcessor<>(new DiffCommandsCalculator<Integer>(true), DIRECT);
+    processor.onSubscribe(new TestUpstream());
+    TestSubscriber subscriber = new TestSubscriber();
+    processor.subscribe(subscriber);
+
+    processor.onNext(Arrays.asList(1, 2));
+    processor.onComplete();
+    Assert.assertFalse(subscriber.completed);
+
+    subscriber.subscription.request(5);
+    Assert.assertEquals(1, subscriber.batches.size());
+    Assert.assertTrue(subscriber.completed);
+  }
+
+  @Test public void cancelUpstream() {
+    DiffProcessor<Integer> processor =
+        new DiffProcessor<>(new DiffCommandsCalculator<Integer>(true), DIRECT);
+    TestUpstream upstream = new TestUpstream();
+    processor.onSubscribe(upstream);
+    TestSubscriber subscriber = new TestSubscriber();
+    processor.subscribe(subscriber);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    processor.onNext(Arrays.asList(1, 2));
+    subscriber.subscription.cancel();
+    processor.onNext(Arrays.asList(1, 2, 3));
+
+    Assert.assertTrue(upstream.canceled);
+    Assert.assertEquals(1, subscriber.batches.size());
+  }
+
+  @Test public void singleSubscriber() {
+    DiffProcessor<Integer> processor =
+        new DiffProcessor<>(new DiffCommandsCalculator<Integer>(), DIRECT);
+    processor.subscribe(new TestSubscriber());
+    TestSubscriber second = new TestSubscriber();
+    processor.subscribe(second);
+    Assert.assertTrue(second.error instanceof IllegalStateException);
+  }
+
+  @Test public void executorRejects() {
+    DiffProcessor<Integer> processor =
+        new DiffProcessor<>(new DiffCommandsCalculator<Integer>(true), new Executor() {
+          @Override public void execute(Runnable command) {
+            throw new RejectedExecutionException();
+          }
+        });
+    TestUpstream upstream = new TestUpstream();
+    processor.onSubscribe(upstream);
+    TestSubscriber subscriber = new TestSubscriber();
+    processor.subscribe(subscriber);
+
+    Assert.assertTrue(subscriber.error instanceof RejectedExecutionException);
+    Assert.assertTrue(upstream.canceled);
+  }
+
+  @Test public void drainAgainAfterError() {
+    final List<Runnable> failed = new ArrayList<>();
+    DiffProcessor<Integer> processor =
+        new DiffProcessor<>(new DiffCommandsCalculator<Integer>(true), new Executor() {
+          @Override public void execute(Runnable command) {
+            try {
+              command.run();
+            } catch (AssertionError e) {
+              failed.add(command);
+            }
+          }
+        });
+    processor.onSubscribe(new TestUpstream());
+    TestSubscriber subscriber = new TestSubscriber() {
+      @Override public synchronized void onNext(List<AdapterCommand> item) {
+        super.onNext(item);
+        if (batches.size() == 1) {
+          throw new AssertionError();
+        }
+      }
+    };
+    processor.subscribe(subscriber);
+    subscriber.subscription.request(Long.MAX_VALUE);
+
+    processor.onNext(Arrays.asList(1));
+    Assert.assertEquals(1, failed.size());
+
+    processor.onNext(Arrays.asList(1, 2));
+    Assert.assertEquals(2, subscriber.batches.size());
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemInsertedCommand(1)),
+        subscriber.batches.get(1));
+  }
+
+  @Test public void diffOffSubscriberThread() throws InterruptedException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      DiffProcessor<Integer> processor =
+          new DiffProcessor<>(new DiffCommandsCalculator<Integer>(true), executor);
+      processor.onSubscribe(new TestUpstream());
+      TestSubscriber subscriber = new TestSubscriber();
+      processor.subscribe(subscriber);
+      subscriber.subscription.request(Long.MAX_VALUE);
+
+      List<Integer> list = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        list = new ArrayList<>(list);
+        list.add(i);
+        processor.onNext(list);
+      }
+      processor.onComplete();
+
+      Assert.assertTrue(subscriber.terminated.await(5, TimeUnit.SECONDS));
+      Assert.assertTrue(subscriber.completed);
+      Assert.assertFalse(subscriber.batches.isEmpty());
+      for (Thread thread : subscriber.threads) {
+        Assert.assertNotSame(Thread.currentThread(), thread);
+      }
+
+      // All batches applied one after another result in the last list
+      List<Integer> empty = new ArrayList<>();
+      ShadowList shadow = new ShadowList(empty);
+      for (List<AdapterCommand> batch : subscriber.batches) {
+        shadow.apply(batch);
+      }
+      Assert.assertEquals(100, shadow.items.size());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class DiffTraceTest {
+
+  private static final ItemKeyProvider<ListPatchTest.Entry> KEY_PROVIDER =
+      new ItemKeyProvider<ListPatchTest.Entry>() {
+        @Override public long getKey(ListPatchTest.Entry item) {
+          return item.id;
+        }
+      };
+
+  private static final ItemFingerprinter<ListPatchTest.Entry> FINGERPRINTER =
+      new ItemFingerprinter<ListPatchTest.Entry>() {
+        @Override public long fingerprint(ListPatchTest.Entry item) {
+          return item.version;
+        }
+      };
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test public void replayMatchesRecordedDiffs() throws IOException {
+    File file = new File(folder.getRoot(), "trace.bin");
+    DiffTraceRecorder recorder = new DiffTraceRecorder(file, 1 << 20, 3);
+    DiffCommandsCalculator<ListPatchTest.Entry> calculator =
+        new DiffCommandsCalculator<>(KEY_PROVIDER, FINGERPRINTER);
+    calculator.setTraceRecorder(recorder);
+
+    Random random = new Random(47);
+    List<ListPatchTest.Entry> list = randomList(random, Collections.<ListPatchTest.Entry>emptyList());
+    long commands = calculator.diff(list).size();
+    for (int i = 0; i < 30; i++) {
+      if (i == 15) {
+        // Breaks the chain of old lists
+        list = new ArrayList<>(list);
+        list.add(0, new ListPatchTest.Entry(-1, 0));
+        calculator.applyPatch(new ListPatch<ListPatchTest.Entry>().insert(0, list.get(0)));
+      }
+      list = randomList(random, list);
+      commands += calculator.diff(list).size();
+    }
+    recorder.close();
+
+    Assert.assertNull(recorder.getError());
+    Assert.assertEquals(31, recorder.getRecordCount());
+    for (String engine : DiffTraceReplay.ENGINES) {
+      DiffTraceReplay.Result result = DiffTraceReplay.replay(Arrays.asList(file), engine, 2);
+      Assert.assertEquals(31, result.getDiffCount());
+      Assert.assertEquals(engine, 0, result.getCommandCountMismatches());
+      Assert.assertEquals(commands, result.getRecordedCommands());
+    }
+  }
+
+  @Test public void rotation() throws IOException {
+    File file = new File(folder.getRoot(), "trace.bin");
+    DiffTraceRecorder recorder = new DiffTraceRecorder(file, 2000, 3);
+    DiffCommandsCalculator<String> calculator = new DiffCommandsCalculator<>();
+    calculator.setTraceRecorder(recorder);
+
+    Random random = new Random(4747);
+    for (int i = 0; i < 100; i++) {
+      List<String> list = new ArrayList<>();
+      for (int k = random.nextInt(20); k > 0; k--) {
+        list.add("Item " + random.nextInt(40));
+      }
+      calculator.diff(list);
+    }
+    recorder.close();
+
+    Assert.assertNull(recorder.getError());
+    Assert.assertTrue(file.length() > 0);
+    Assert.assertTrue(new File(folder.getRoot(), "trace.bin.1").exists());
+    Assert.assertTrue(new File(folder.getRoot(), "trace.bin.2").exists());
+    Assert.assertFalse(new File(folder.getRoot(), "trace.bin.3").exists());
+    Assert.assertTrue(new File(folder.getRoot(), "trace.bin.2").length() < 2000 + 1000);
+
+    // Every file can be replayed on its own
+    long diffs = 0;
+    for (String name : new String[] { "trace.bin.2", "trace.bin.1", "trace.bin" }) {
+      DiffTraceReplay.Result result =
+          DiffTraceReplay.replay(Arrays.asList(new File(folder.getRoot(), name)), "lcs", 1);
+      Assert.assertEquals(0, result.getCommandCountMismatches());
+      diffs += result.getDiffCount();
+    }
+    Assert.assertTrue(diffs > 0 && diffs < 100);
+  }
+
+  private static List<ListPatchTest.Entry> randomList(Random random,
+      List<ListPatchTest.Entry> previous) {
+    List<ListPatchTest.Entry> list = new ArrayList<>();
+    for (ListPatchTest.Entry entry : previous) {
+      int r = random.nextInt(10);
+      if (r == 0) {
+        continue;
+      }
+      list.add(r == 1 ? new ListPatchTest.Entry(entry.id, entry.version + 1) : entry);
+    }
+    for (int i = random.nextInt(10); i > 0; i--) {
+      list.add(random.nextInt(list.size() + 1),
+          new ListPatchTest.Entry(random.nextInt(100000), 0));
+    }
+    return list;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Item;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class DiffWorkspaceTest {
+
+  @Test public void buffersReused() {
+    DiffWorkspace workspace = new DiffWorkspace();
+    workspace.begin();
+    int[] buffer = workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, 100);
+    workspace.end();
+
+    workspace.begin();
+    Assert.assertSame(buffer, workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, 90));
+    workspace.end();
+  }
+
+  @Test public void shrinkAfterSpike() {
+    DiffWorkspace workspace = new DiffWorkspace(60000, 4, 3);
+
+    workspace.begin();
+    int[] spike = workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, 10000);
+    workspace.end();
+
+    for (int i = 0; i < 2; i++) {
+      workspace.begin();
+      Assert.assertSame(spike, workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, 10));
+      workspace.end();
+    }
+
+    workspace.begin();
+    workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, 10);
+    workspace.end(); // third oversized diff
+
+    workspace.begin();
+    Assert.assertTrue(workspace.intBuffer(DiffWorkspace.SLOT_LCS_TABLE, 10).length < 100);
+    workspace.end();
+  }
+
+  @Test public void releaseWhenIdle() {
+    TestWorkspace workspace = new TestWorkspace();
+    workspace.begin();
+    workspace.longBuffer(DiffWorkspace.SLOT_ENGINE_1, 100);
+    workspace.end();
+    Assert.assertTrue(workspace.getRetainedBytes() >= 800);
+
+    workspace.now += 999;
+    Assert.assertFalse(workspace.releaseIfIdle());
+
+    workspace.now += 1;
+    Assert.assertTrue(workspace.releaseIfIdle());
+    Assert.assertEquals(0, workspace.getRetainedBytes());
+  }
+
+  @Test public void reusedTableGivesSameResults() {
+    DiffCommandsCalculator<Item> calculator = new DiffCommandsCalculator<>();
+    DiffWorkspace workspace = new DiffWorkspace();
+    calculator.setWorkspace(workspace);
+
+    List<Item> previous = items("a", "b", "c", "d", "e", "f", "g", "h");
+    calculator.diff(previous);
+
+    String[][] states = {
+        { "h", "a", "c", "x", "e", "g" }, { "a", "y", "c" }, { "z", "c", "a", "y", "b", "q" },
+        { "q", "b" }
+    };
+    for (String[] state : states) {
+      List<Item> next = items(state);
+      List<AdapterCommand> commands = calculator.diff(next);
+
+      DiffCommandsCalculator<Item> fresh = new DiffCommandsCalculator<>();
+      fresh.diff(previous);
+      Assert.assertEquals(fresh.diff(next), commands);
+      previous = next;
+    }
+    Assert.assertTrue(workspace.getRetainedBytes() > 0);
+  }
+
+  private List<Item> items(String... ids) {
+    List<Item> items = new ArrayList<>();
+    for (String id : ids) {
+      items.add(new Item(id));
+    }
+    return items;
+  }
+
+  static class TestWorkspace extends DiffWorkspace {
+    long now = 1;
+
+    TestWorkspace() {
+      super(1000, 4, 8);
+    }
+
+    @Override long nowMillis() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class FilteredListTest {
+
+  static class Contains implements ItemFilter<String> {
+    final String query;
+    final AtomicInteger evaluated;
+
+    Contains(String query, AtomicInteger evaluated) {
+      this.query = query;
+      this.evaluated = evaluated;
+    }
+
+    @Override public boolean accept(String item) {
+      evaluated.incrementAndGet();
+      return item.contains(query);
+    }
+  }
+
+  @Test public void narrowOnlyEvaluatesVisibleRows() {
+    AtomicInteger evaluated = new AtomicInteger();
+    List<String> source = new ArrayList<>(Arrays.asList("apple", "banana", "cherry", "apricot",
+        "avocado", "blueberry", "grape"));
+    FilteredList<String> filtered = new FilteredList<>(source, new Contains("a", evaluated));
+    Assert.assertEquals(Arrays.asList("apple", "banana", "apricot", "avocado", "grape"),
+        items(filtered));
+
+    evaluated.set(0);
+    List<String> before = items(filtered);
+    List<AdapterCommand> commands = filtered.narrowFilter(new Contains("ap", evaluated));
+    Assert.assertEquals(5, evaluated.get());
+    Assert.assertEquals(Arrays.asList("apple", "apricot", "grape"), items(filtered));
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(1),
+        new ItemRemovedCommand(2)), commands);
+    new ShadowList(before).apply(commands).assertTransformedTo(items(filtered));
+
+    evaluated.set(0);
+    before = items(filtered);
+    commands = filtered.widenFilter(new Contains("", evaluated));
+    Assert.assertEquals(4, evaluated.get());
+    Assert.assertEquals(source, items(filtered));
+    new ShadowList(before).apply(commands).assertTransformedTo(items(filtered));
+  }
+
+  @Test public void sourceChanges() {
+    AtomicInteger evaluated = new AtomicInteger();
+    List<String> source = new ArrayList<>(Arrays.asList("a1", "b1", "a2", "b2"));
+    FilteredList<String> filtered = new FilteredList<>(source, new Contains("a", evaluated));
+
+    source.addAll(1, Arrays.asList("a3", "a4", "b3"));
+    evaluated.set(0);
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRangeInsertedCommand(1, 2)),
+        filtered.onSourceInserted(1, 3));
+    Assert.assertEquals(3, evaluated.get());
+    Assert.assertEquals(Arrays.asList("a1", "a3", "a4", "a2"), items(filtered));
+
+    source.remove(0);
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0)),
+        filtered.onSourceRemoved(0, 1));
+
+    // "a3", "a4", "b3", "b1" -> "x3", "a4", "a5", "b1"
+    source.set(0, "x3");
+    source.set(2, "a5");
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0),
+        new ItemChangedCommand(0), new ItemInsertedCommand(1)), filtered.onSourceChanged(0, 3));
+    Assert.assertEquals(Arrays.asList("a4", "a5", "a2"), items(filtered));
+    Assert.assertEquals(1, filtered.getFilteredPosition(2));
+    Assert.assertEquals(-1, filtered.getFilteredPosition(0));
+  }
+
+  @Test public void randomOperations() {
+    Random random = new Random(42);
+    AtomicInteger evaluated = new AtomicInteger();
+    List<String> source = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      source.add(randomWord(random));
+    }
+    String query = "";
+    FilteredList<String> filtered = new FilteredList<>(source, new Contains(query, evaluated));
+
+    for (int round = 0; round < 500; round++) {
+      List<String> before = items(filtered);
+      List<AdapterCommand> commands;
+      int operation = random.nextInt(6);
+      if (operation == 0) {
+        query = query.length() < 3 ? query + (char) ('a' + random.nextInt(4)) : query;
+        commands = filtered.narrowFilter(new Contains(query, evaluated));
+      } else if (operation == 1) {
+        query = query.isEmpty() ? query : query.substring(0, query.length() - 1);
+        commands = filtered.widenFilter(new Contains(query, evaluated));
+      } else if (operation == 2) {
+        int position = random.nextInt(source.size() + 1);
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+          source.add(position, randomWord(random));
+        }
+        commands = filtered.onSourceInserted(position, count);
+      } else if (operation == 3 && !source.isEmpty()) {
+        int position = random.nextInt(source.size());
+        int count = 1 + random.nextInt(Math.min(4, source.size() - position));
+        source.subList(position, position + count).clear();
+        commands = filtered.onSourceRemoved(position, count);
+      } else if (operation == 4 && !source.isEmpty()) {
+        int position = random.nextInt(source.size());
+        int count = 1 + random.nextInt(Math.min(4, source.size() - position));
+        for (int i = position; i < position + count; i++) {
+          source.set(i, randomWord(random));
+        }
+        commands = filtered.onSourceChanged(position, count);
+      } else {
+        query = randomWord(random).substring(0, random.nextInt(3));
+        commands = filtered.setFilter(new Contains(query, evaluated));
+      }
+
+      List<String> expected = new ArrayList<>();
+      for (String item : source) {
+        if (item.contains(query)) {
+          expected.add(item);
+        }
+      }
+      Assert.assertEquals(expected, items(filtered));
+      new ShadowList(before).apply(commands).assertBoundTo(expected);
+    }
+  }
+
+  private String randomWord(Random random) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 5; i++) {
+      builder.append((char) ('a' + random.nextInt(4)));
+    }
+    return builder.toString();
+  }
+
+  private List<String> items(FilteredList<String> filtered) {
+    List<String> items = new ArrayList<>();
+    for (int i = 0; i < filtered.size(); i++) {
+      items.add(filtered.get(i));
+    }
+    return items;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class HuntSzymanskiDiffEngineTest {
+
+  @Test public void mostlyReplaced() {
+    DiffCommandsCalculator<Integer> calculator = newCalculator();
+    List<Integer> oldList = list(1, 2, 3, 4, 5, 6);
+    List<Integer> newList = list(10, 2, 11, 12, 5, 13);
+    calculator.diff(oldList);
+
+    List<AdapterCommand> commands = calculator.diff(newList);
+    new ShadowList(oldList).apply(commands).assertTransformedTo(newList);
+    Assert.assertEquals(2, new ShadowList(oldList).apply(commands).keptItems());
+  }
+
+  @Test public void sameResultAsLcs() {
+    Random random = new Random(42);
+    for (int round = 0; round < 300; round++) {
+      // Small alphabet to get many duplicates
+      int alphabet = 2 + random.nextInt(20);
+      List<Integer> oldList = randomList(random, alphabet);
+      List<Integer> newList = randomList(random, alphabet);
+
+      DiffCommandsCalculator<Integer> hs = newCalculator();
+      DiffCommandsCalculator<Integer> lcs = new DiffCommandsCalculator<>();
+      hs.diff(oldList);
+      lcs.diff(oldList);
+
+      List<AdapterCommand> hsCommands = hs.diff(newList);
+      List<AdapterCommand> lcsCommands = lcs.diff(newList);
+
+      new ShadowList(oldList).apply(hsCommands).assertTransformedTo(newList);
+      Assert.assertEquals(new ShadowList(oldList).apply(lcsCommands).keptItems(),
+          new ShadowList(oldList).apply(hsCommands).keptItems());
+    }
+  }
+
+  @Test public void hashCollisions() {
+    List<Colliding> oldList = new ArrayList<>();
+    List<Colliding> newList = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      oldList.add(new Colliding(i));
+      newList.add(new Colliding(9 - i));
+    }
+    newList.add(4, new Colliding(42));
+
+    DiffCommandsCalculator<Colliding> calculator =
+        new DiffCommandsCalculator<>(false, null, new HuntSzymanskiDiffEngine<Colliding>());
+    calculator.diff(oldList);
+    List<AdapterCommand> commands = calculator.diff(newList);
+    new ShadowList(oldList).apply(commands).assertTransformedTo(newList);
+  }
+
+  @Test public void reuseWorkspaceAcrossDiffs() {
+    DiffCommandsCalculator<Integer> calculator = newCalculator();
+    Random random = new Random(7);
+    List<Integer> oldList = randomList(random, 50);
+    calculator.diff(oldList);
+    for (int round = 0; round < 50; round++) {
+      List<Integer> newList = randomList(random, 50);
+      List<AdapterCommand> commands = calculator.diff(newList);
+      new ShadowList(oldList).apply(commands).assertTransformedTo(newList);
+      oldList = newList;
+    }
+  }
+
+  private DiffCommandsCalculator<Integer> newCalculator() {
+    return new DiffCommandsCalculator<>(false, null, new HuntSzymanskiDiffEngine<Integer>());
+  }
+
+  private List<Integer> randomList(Random random, int alphabet) {
+    List<Integer> list = new ArrayList<>();
+    int size = random.nextInt(60);
+    for (int i = 0; i < size; i++) {
+      list.add(random.nextInt(alphabet));
+    }
+    return list;
+  }
+
+  private List<Integer> list(Integer... items) {
+    List<Integer> list = new ArrayList<>();
+    Collections.addAll(list, items);
+    return list;
+  }
+
+  static class Colliding {
+    final int value;
+
+    Colliding(int value) {
+      this.value = value;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Colliding && ((Colliding) o).value == value;
+    }
+
+    @Override public int hashCode() {
+      return value % 2;
+    }
+
+    @Override public String toString() {
+      return "Colliding(" + value + ")";
+    }
+  }
+}
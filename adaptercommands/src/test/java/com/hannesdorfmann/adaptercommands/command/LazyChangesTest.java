@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Detector;
+import com.hannesdorfmann.adaptercommands.command.DiffCommandsCalculatorTest.Item;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class LazyChangesTest {
+
+  static class CountingDetector extends Detector {
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Override public boolean hasChanged(Item oldItem, Item newItem) {
+      calls.incrementAndGet();
+      return super.hasChanged(oldItem, newItem);
+    }
+  }
+
+  @Test public void onlyVisibleRangeEagerly() {
+    CountingDetector detector = new CountingDetector();
+    DiffCommandsCalculator<Item> calculator = new DiffCommandsCalculator<>(false, detector);
+    calculator.setVisibleRange(2, 4);
+
+    calculator.diff(items(0, 100, "v1"));
+    Assert.assertNull(calculator.getLazyChanges());
+
+    detector.calls.set(0);
+    List<AdapterCommand> commands = calculator.diff(items(1, 100, "v2"));
+
+    Assert.assertEquals(3, detector.calls.get());
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0),
+        new ItemChangedCommand(2), new ItemChangedCommand(3), new ItemChangedCommand(4)),
+        commands);
+
+    LazyChanges<Item> lazy = calculator.getLazyChanges();
+    Assert.assertEquals(96, lazy.getRemainingCount());
+
+    // Scrolled down, 3 and 4 have been evaluated already
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRangeChangedCommand(5, 3)),
+        lazy.evaluate(3, 7));
+    Assert.assertEquals(93, lazy.getRemainingCount());
+
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRangeChangedCommand(0, 2),
+        new ItemRangeChangedCommand(8, 91)), lazy.evaluateAll());
+    Assert.assertEquals(0, lazy.getRemainingCount());
+    Assert.assertEquals(99, detector.calls.get());
+  }
+
+  @Test public void nextDiffInvalidates() {
+    CountingDetector detector = new CountingDetector();
+    DiffCommandsCalculator<Item> calculator = new DiffCommandsCalculator<>(false, detector);
+    calculator.setVisibleRange(0, 9);
+
+    calculator.diff(items(0, 100, "v1"));
+    calculator.diff(items(0, 100, "v2"));
+    LazyChanges<Item> lazy = calculator.getLazyChanges();
+    Assert.assertEquals(90, lazy.getRemainingCount());
+
+    calculator.diff(items(0, 100, "v2"));
+    Assert.assertTrue(lazy.isInvalidated());
+    Assert.assertTrue(lazy.evaluateAll().isEmpty());
+    Assert.assertNotSame(lazy, calculator.getLazyChanges());
+
+    calculator.clearVisibleRange();
+    detector.calls.set(0);
+    calculator.diff(items(0, 100, "v3"));
+    Assert.assertNull(calculator.getLazyChanges());
+    Assert.assertEquals(100, detector.calls.get());
+  }
+
+  @Test public void unchangedItemsProduceNoCommands() {
+    DiffCommandsCalculator<Item> calculator = new DiffCommandsCalculator<>(false, new Detector());
+    calculator.setVisibleRange(0, 1);
+    calculator.diff(items(0, 10, "v1"));
+    List<Item> newList = items(0, 10, "v1");
+    newList.set(5, new Item("5", "v2"));
+    Assert.assertTrue(calculator.diff(newList).isEmpty());
+
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemChangedCommand(5)),
+        calculator.getLazyChanges().evaluateAll());
+  }
+
+  private List<Item> items(int from, int to, String value) {
+    List<Item> items = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      items.add(new Item("" + i, value));
+    }
+    return items;
+  }
+}
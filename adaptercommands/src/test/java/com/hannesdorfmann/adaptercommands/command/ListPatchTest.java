@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class ListPatchTest {
+
+  private static final ItemChangedDetector<Entry> DETECTOR = new ItemChangedDetector<Entry>() {
+    @Override public boolean hasChanged(Entry oldItem, Entry newItem) {
+      return oldItem.version != newItem.version;
+    }
+  };
+
+  private static final ItemKeyProvider<Entry> KEY_PROVIDER = new ItemKeyProvider<Entry>() {
+    @Override public long getKey(Entry item) {
+      return item.id;
+    }
+  };
+
+  private static final ItemFingerprinter<Entry> FINGERPRINTER = new ItemFingerprinter<Entry>() {
+    @Override public long fingerprint(Entry item) {
+      return item.version;
+    }
+  };
+
+  @Test public void positionalOperations() {
+    DiffCommandsCalculator<Entry> calculator = new DiffCommandsCalculator<>(DETECTOR);
+    calculator.diff(entries(1, 2, 3, 4, 5));
+
+    List<AdapterCommand> commands = calculator.applyPatch(new ListPatch<Entry>().insert(1,
+        Arrays.asList(new Entry(10, 0), new Entry(11, 0))).remove(5, 2).update(0, new Entry(1, 1)));
+
+    List<AdapterCommand> expected = new ArrayList<>();
+    expected.add(new ItemRangeInsertedCommand(1, 2));
+    expected.add(new ItemRangeRemovedCommand(5, 2));
+    expected.add(new ItemChangedCommand(0));
+    Assert.assertEquals(expected, commands);
+
+    List<Entry> patched = entries(1, 10, 11, 2, 3);
+    patched.set(0, new Entry(1, 1));
+    Assert.assertTrue(calculator.diff(patched).isEmpty());
+  }
+
+  @Test public void keyedOperations() {
+    DiffCommandsCalculator<Entry> calculator =
+        new DiffCommandsCalculator<>(KEY_PROVIDER, FINGERPRINTER);
+    calculator.diff(entries(1, 2, 3, 4, 5));
+
+    List<AdapterCommand> commands = calculator.applyPatch(
+        new ListPatch<Entry>().removeItem(new Entry(2, 0)).moveItem(new Entry(5, 0), 0)
+            .updateItem(new Entry(3, 7)));
+
+    List<AdapterCommand> expected = new ArrayList<>();
+    expected.add(new ItemRemovedCommand(1));
+    expected.add(new ItemMovedCommand(3, 0));
+    expected.add(new ItemChangedCommand(2));
+    Assert.assertEquals(expected, commands);
+
+    List<Entry> patched = entries(5, 1, 3, 4);
+    patched.set(2, new Entry(3, 7));
+    Assert.assertTrue(calculator.diff(patched).isEmpty());
+  }
+
+  @Test public void invalidOperationDropsSnapshot() {
+    DiffCommandsCalculator<Entry> calculator = new DiffCommandsCalculator<>(DETECTOR);
+    calculator.diff(entries(1, 2, 3));
+
+    try {
+      calculator.applyPatch(new ListPatch<Entry>().remove(0, 1).update(2, new Entry(4, 0)));
+      Assert.fail("IndexOutOfBoundsException expected");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+
+    List<AdapterCommand> commands = calculator.diff(entries(2, 3));
+    Assert.assertEquals(1, commands.size());
+    Assert.assertTrue(commands.get(0) instanceof EntireDataSetChangedCommand);
+
+    try {
+      calculator.applyPatch(new ListPatch<Entry>().removeItem(new Entry(1, 0)));
+      Assert.fail("IllegalArgumentException expected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = IllegalStateException.class) public void patchBeforeFirstDiff() {
+    new DiffCommandsCalculator<Entry>().applyPatch(new ListPatch<Entry>().remove(0, 1));
+  }
+
+  @Test public void randomPatches() {
+    Random random = new Random(45);
+    for (int round = 0; round < 200; round++) {
+      boolean keyed = random.nextBoolean();
+      DiffCommandsCalculator<Entry> calculator =
+          keyed ? new DiffCommandsCalculator<>(KEY_PROVIDER, FINGERPRINTER)
+              : new DiffCommandsCalculator<>(DETECTOR);
+      List<Entry> list = new ArrayList<>();
+      int nextId = 0;
+      for (int i = random.nextInt(20); i > 0; i--) {
+        list.add(new Entry(nextId++, 0));
+      }
+      calculator.diff(list);
+
+      List<Entry> before = new ArrayList<>(list);
+      ListPatch<Entry> patch = new ListPatch<>();
+      for (int i = random.nextInt(15); i > 0; i--) {
+        int op = list.isEmpty() ? 0 : random.nextInt(7);
+        int position = list.isEmpty() ? 0 : random.nextInt(list.size());
+        switch (op) {
+          case 0: {
+            int count = 1 + random.nextInt(3);
+            List<Entry> items = new ArrayList<>();
+            for (int k = 0; k < count; k++) {
+              items.add(new Entry(nextId++, 0));
+            }
+            position = random.nextInt(list.size() + 1);
+            list.addAll(position, items);
+            patch.insert(position, items);
+            break;
+          }
+          case 1: {
+            int count = 1 + random.nextInt(Math.min(3, list.size() - position));
+            list.subList(position, position + count).clear();
+            patch.remove(position, count);
+            break;
+          }
+          case 2: {
+            int to = random.nextInt(list.size());
+            list.add(to, list.remove(position));
+            patch.move(position, to);
+            break;
+          }
+          case 3: {
+            Entry updated = new Entry(list.get(position).id, list.get(position).version + 1);
+            list.set(position, updated);
+            patch.update(position, updated);
+            break;
+          }
+          case 4:
+            patch.removeItem(list.remove(position));
+            break;
+          case 5: {
+            int to = random.nextInt(list.size());
+            Entry item = list.remove(position);
+            list.add(to, item);
+            patch.moveItem(item, to);
+            break;
+          }
+          default: {
+            Entry updated = new Entry(list.get(position).id, list.get(position).version + 1);
+            list.set(position, updated);
+            patch.updateItem(updated);
+            break;
+          }
+        }
+      }
+
+      List<AdapterCommand> commands = calculator.applyPatch(patch);
+      new ShadowList(before).apply(commands).assertBoundTo(list);
+      for (AdapterCommand command : calculator.diff(list)) {
+        Assert.fail("Snapshot not in sync with the patched list: " + command);
+      }
+    }
+  }
+
+  private static List<Entry> entries(int... ids) {
+    List<Entry> entries = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      entries.add(new Entry(id, 0));
+    }
+    return entries;
+  }
+
+  /**
+   * Equal if the ids are equal, the version tells whether the content has been changed
+   */
+  static final class Entry {
+    final int id;
+    final int version;
+
+    Entry(int id, int version) {
+      this.id = id;
+      this.version = version;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Entry && ((Entry) o).id == id;
+    }
+
+    @Override public int hashCode() {
+      return id;
+    }
+
+    @Override public String toString() {
+      return id + "v" + version;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.Random;
+
+/**
+ * Compares the scans of {@link LongArrayScan} with a plain loop. Not a test, run it as a Java
+ * application with a JDK 9+ to compare the Arrays.mismatch() based path too.
+ *
+ * @author Hannes Dorfmann
+ */
+public class LongArrayScanBenchmark {
+
+  private static final int[] SIZES = { 10000, 100000, 1000000 };
+  private static volatile int sink;
+
+  public static void main(String[] args) {
+    Random random = new Random(48);
+    System.out.println("Arrays.mismatch() available: " + LongArrayScan.hasIntrinsic());
+    for (int size : SIZES) {
+      long[] a = new long[size];
+      for (int i = 0; i < size; i++) {
+        a[i] = random.nextLong();
+      }
+      long[] b = a.clone();
+      int iterations = Math.max(20, 20000000 / size);
+
+      for (int warmup = 0; warmup < 10; warmup++) {
+        plain(a, b, iterations);
+        scalar(a, b, iterations);
+        selected(a, b, iterations);
+        backwards(a, b, iterations);
+      }
+      System.out.println(String.format("%8d keys: plain %6.1f, scalar %6.1f, selected %6.1f, "
+              + "backwards %6.1f us/scan", size, plain(a, b, iterations),
+          scalar(a, b, iterations), selected(a, b, iterations), backwards(a, b, iterations)));
+    }
+  }
+
+  private static double plain(long[] a, long[] b, int iterations) {
+    long start = System.nanoTime();
+    for (int k = 0; k < iterations; k++) {
+      int i = 0;
+      while (i < a.length && a[i] == b[i]) {
+        i++;
+      }
+      sink += i;
+    }
+    return micros(start, iterations);
+  }
+
+  private static double scalar(long[] a, long[] b, int iterations) {
+    long start = System.nanoTime();
+    for (int k = 0; k < iterations; k++) {
+      sink += LongArrayScan.scalarMatchingRun(a, 0, b, 0, a.length);
+    }
+    return micros(start, iterations);
+  }
+
+  private static double selected(long[] a, long[] b, int iterations) {
+    long start = System.nanoTime();
+    for (int k = 0; k < iterations; k++) {
+      sink += LongArrayScan.matchingRun(a, 0, b, 0, a.length);
+    }
+    return micros(start, iterations);
+  }
+
+  private static double backwards(long[] a, long[] b, int iterations) {
+    long start = System.nanoTime();
+    for (int k = 0; k < iterations; k++) {
+      sink += LongArrayScan.matchingRunBackwards(a, a.length, b, b.length, a.length);
+    }
+    return micros(start, iterations);
+  }
+
+  private static double micros(long start, int iterations) {
+    return (System.nanoTime() - start) / 1000.0 / iterations;
+  }
+}
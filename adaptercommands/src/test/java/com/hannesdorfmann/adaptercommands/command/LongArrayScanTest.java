@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class LongArrayScanTest {
+
+  @Test public void matchesNaiveScan() {
+    Random random = new Random(48);
+    for (int round = 0; round < 2000; round++) {
+      int size = random.nextInt(300);
+      long[] a = new long[size];
+      long[] b = new long[size + 5];
+      for (int i = 0; i < size; i++) {
+        a[i] = random.nextLong();
+      }
+      System.arraycopy(a, 0, b, 5, size);
+      if (size > 0 && random.nextBoolean()) {
+        b[5 + random.nextInt(size)]++;
+      }
+
+      int from = size == 0 ? 0 : random.nextInt(size);
+      int max = size - from;
+      int expected = 0;
+      while (expected < max && a[from + expected] == b[5 + from + expected]) {
+        expected++;
+      }
+      Assert.assertEquals(expected, LongArrayScan.matchingRun(a, from, b, 5 + from, max));
+      Assert.assertEquals(expected, LongArrayScan.scalarMatchingRun(a, from, b, 5 + from, max));
+
+      int end = size == 0 ? 0 : 1 + random.nextInt(size);
+      expected = 0;
+      while (expected < end && a[end - 1 - expected] == b[5 + end - 1 - expected]) {
+        expected++;
+      }
+      Assert.assertEquals(expected, LongArrayScan.matchingRunBackwards(a, end, b, 5 + end, end));
+    }
+  }
+}
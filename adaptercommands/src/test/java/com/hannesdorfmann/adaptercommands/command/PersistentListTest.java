@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class PersistentListTest {
+
+  @Test public void behavesLikeArrayList() {
+    Random random = new Random(46);
+    PersistentList<Integer> persistent = PersistentList.empty();
+    List<Integer> expected = new ArrayList<>();
+
+    for (int step = 0; step < 5000; step++) {
+      int op = random.nextInt(10);
+      if (op < 5 || expected.isEmpty()) {
+        persistent = persistent.plus(step);
+        expected.add(step);
+      } else if (op == 5) {
+        int index = random.nextInt(expected.size() + 1);
+        persistent = persistent.plus(index, step);
+        expected.add(index, step);
+      } else if (op == 6) {
+        int index = random.nextInt(expected.size());
+        persistent = persistent.minus(index);
+        expected.remove(index);
+      } else if (op == 7) {
+        persistent = persistent.minusLast();
+        expected.remove(expected.size() - 1);
+      } else if (op == 8) {
+        int index = random.nextInt(expected.size());
+        persistent = persistent.with(index, -step);
+        expected.set(index, -step);
+      } else {
+        List<Integer> items = new ArrayList<>();
+        for (int i = random.nextInt(70); i > 0; i--) {
+          items.add(step * 100 + i);
+        }
+        persistent = persistent.plusAll(items);
+        expected.addAll(items);
+      }
+      if (step % 100 == 0) {
+        Assert.assertEquals(expected, persistent);
+      }
+    }
+    Assert.assertEquals(expected, persistent);
+    Assert.assertEquals(expected, PersistentList.of(expected));
+  }
+
+  @Test public void modificationsShareLeaves() {
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      items.add(i);
+    }
+    PersistentList<Integer> list = PersistentList.of(items);
+    PersistentList<Integer> modified = list.with(2500, -1).plus(5000);
+
+    Assert.assertSame(list.leafFor(0), modified.leafFor(0));
+    Assert.assertSame(list.leafFor(4999 - 32), modified.leafFor(4999 - 32));
+    Assert.assertNotSame(list.leafFor(2500), modified.leafFor(2500));
+    Assert.assertEquals(2500, PersistentList.sharedRun(list, 0, modified, 0, 5000));
+    Assert.assertEquals(2499, PersistentList.sharedRun(list, 2501, modified, 2501, 2499));
+    Assert.assertSame(list, list.with(3, list.get(3)));
+
+    PersistentList<Integer> updated = list.with(100, -1);
+    Assert.assertEquals(4899, PersistentList.sharedRunBackwards(list, 5000, updated, 5000, 5000));
+    Assert.assertEquals(5000, PersistentList.sharedRunBackwards(list, 5000, list, 5000, 5000));
+
+    PersistentList<Integer> inserted = list.plus(40, -1);
+    Assert.assertSame(list.leafFor(0), inserted.leafFor(0));
+    Assert.assertEquals(40, PersistentList.sharedRun(list, 0, inserted, 0, 5000));
+    Assert.assertEquals(4960, PersistentList.sharedRun(list, 40, inserted, 41, 4960));
+    Assert.assertEquals(4960, PersistentList.sharedRunBackwards(list, 5000, inserted, 5001, 5000));
+  }
+
+  @Test public void diffSkipsSharedItems() {
+    CountingDetector detector = new CountingDetector();
+    DiffCommandsCalculator<String> calculator = new DiffCommandsCalculator<>(detector);
+
+    List<String> items = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      items.add("Item " + i);
+    }
+    PersistentList<String> list = PersistentList.of(items);
+    calculator.diff(list);
+
+    PersistentList<String> updated = list.with(5000, new String("Item 5000")).plus("Item new");
+    List<AdapterCommand> commands = calculator.diff(updated);
+    new ShadowList(list).apply(commands).assertBoundTo(updated);
+    Assert.assertTrue("Detector called " + detector.calls + " times", detector.calls <= 1);
+
+    detector.calls = 0;
+    Assert.assertTrue(calculator.diff(updated).isEmpty());
+    Assert.assertEquals(0, detector.calls);
+  }
+
+  @Test public void randomDiffs() {
+    Random random = new Random(4646);
+    DiffCommandsCalculator<String> calculator = new DiffCommandsCalculator<>();
+    PersistentList<String> list = PersistentList.empty();
+    calculator.diff(list);
+    int next = 0;
+    for (int round = 0; round < 300; round++) {
+      PersistentList<String> newList = list;
+      for (int i = random.nextInt(5); i >= 0; i--) {
+        int op = random.nextInt(4);
+        if (op == 0 || newList.isEmpty()) {
+          newList = newList.plus(random.nextInt(newList.size() + 1), "Item " + next++);
+        } else if (op == 1) {
+          newList = newList.minus(random.nextInt(newList.size()));
+        } else {
+          newList = newList.plus("Item " + next++);
+        }
+      }
+      new ShadowList(list).apply(calculator.diff(newList)).assertTransformedTo(newList);
+      list = newList;
+    }
+
+    // Patching a persistent snapshot works on a mutable copy
+    calculator.applyPatch(new ListPatch<String>().insert(0, "Patched"));
+    Assert.assertTrue(calculator.diff(list.plus(0, "Patched")).isEmpty());
+  }
+
+  static class CountingDetector implements ItemChangedDetector<String> {
+    int calls;
+
+    @Override public boolean hasChanged(String oldItem, String newItem) {
+      calls++;
+      return false;
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+
+/**
+ * Applies {@link AdapterCommand}s to a copy of a list, like RecyclerView does with its view
+ * holders, to verify that a list of commands transforms an old list into a new list.
+ *
+ * @author Hannes Dorfmann
+ */
+class ShadowList {
+
+  /**
+   * Placeholder for inserted items
+   */
+  static final Object INSERTED = new Object() {
+    @Override public String toString() {
+      return "INSERTED";
+    }
+  };
+
+  final List<Object> items;
+  final List<Integer> changedPositions = new ArrayList<>();
+
+  /**
+   * Whether the item at the same position in {@link #items} has been changed
+   */
+  final List<Boolean> changed = new ArrayList<>();
+
+  ShadowList(List<?> oldItems) {
+    this.items = new ArrayList<Object>(oldItems);
+    for (int i = 0; i < oldItems.size(); i++) {
+      changed.add(false);
+    }
+  }
+
+  ShadowList apply(List<AdapterCommand> commands) {
+    for (AdapterCommand command : commands) {
+      apply(command);
+    }
+    return this;
+  }
+
+  void apply(AdapterCommand command) {
+    if (command instanceof ItemInsertedCommand) {
+      items.add(((ItemInsertedCommand) command).position, INSERTED);
+      changed.add(((ItemInsertedCommand) command).position, false);
+    } else if (command instanceof ItemRangeInsertedCommand) {
+      ItemRangeInsertedCommand c = (ItemRangeInsertedCommand) command;
+      for (int i = 0; i < c.itemCount; i++) {
+        items.add(c.startPosition, INSERTED);
+        changed.add(c.startPosition, false);
+      }
+    } else if (command instanceof ItemRemovedCommand) {
+      items.remove(((ItemRemovedCommand) command).position);
+      changed.remove(((ItemRemovedCommand) command).position);
+    } else if (command instanceof ItemRangeRemovedCommand) {
+      ItemRangeRemovedCommand c = (ItemRangeRemovedCommand) command;
+      for (int i = 0; i < c.itemCount; i++) {
+        items.remove(c.startPosition);
+        changed.remove(c.startPosition);
+      }
+    } else if (command instanceof ItemMovedCommand) {
+      ItemMovedCommand c = (ItemMovedCommand) command;
+      items.add(c.toPosition, items.remove(c.fromPosition));
+      changed.add(c.toPosition, changed.remove(c.fromPosition));
+    } else if (command instanceof ItemChangedCommand) {
+      int position = ((ItemChangedCommand) command).position;
+      Assert.assertTrue("Changed position out of bounds", position < items.size());
+      changedPositions.add(position);
+      changed.set(position, true);
+    } else if (command instanceof ItemRangeChangedCommand) {
+      ItemRangeChangedCommand c = (ItemRangeChangedCommand) command;
+      Assert.assertTrue("Changed range out of bounds", c.startPosition + c.itemCount <= items.size());
+      for (int i = 0; i < c.itemCount; i++) {
+        changedPositions.add(c.startPosition + i);
+        changed.set(c.startPosition + i, true);
+      }
+    } else {
+      Assert.fail("Unexpected command " + command);
+    }
+  }
+
+  /**
+   * Asserts that every item that is left over from the old list is at the same position as in
+   * the new list and that all other positions are inserted ones.
+   */
+  void assertTransformedTo(List<?> newItems) {
+    Assert.assertEquals("Size", newItems.size(), items.size());
+    for (int i = 0; i < items.size(); i++) {
+      Object item = items.get(i);
+      if (item != INSERTED) {
+        Assert.assertEquals("Item at position " + i, newItems.get(i), item);
+      }
+    }
+  }
+
+  /**
+   * Like {@link #assertTransformedTo(List)}, but changed positions may show any item, as they are
+   * bound again
+   */
+  void assertBoundTo(List<?> newItems) {
+    Assert.assertEquals("Size", newItems.size(), items.size());
+    for (int i = 0; i < items.size(); i++) {
+      Object item = items.get(i);
+      if (item != INSERTED && !changed.get(i)) {
+        Assert.assertEquals("Item at position " + i, newItems.get(i), item);
+      }
+    }
+  }
+
+  /**
+   * Asserts that both lists have the same size and that every position either shows the same old
+   * item in both lists or is bound again (inserted or changed) in both lists.
+   */
+  void assertEquivalentTo(ShadowList other) {
+    Assert.assertEquals("Size", other.items.size(), items.size());
+    for (int i = 0; i < items.size(); i++) {
+      boolean bound = items.get(i) == INSERTED || changed.get(i);
+      boolean otherBound = other.items.get(i) == INSERTED || other.changed.get(i);
+      Assert.assertEquals("Bound at position " + i, otherBound, bound);
+      if (!bound) {
+        Assert.assertEquals("Item at position " + i, other.items.get(i), items.get(i));
+      }
+    }
+  }
+
+  /**
+   * @return number of items from the old list that are still in this list
+   */
+  int keptItems() {
+    int kept = 0;
+    for (Object item : items) {
+      if (item != INSERTED) {
+        kept++;
+      }
+    }
+    return kept;
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemChangedDetector;
+import com.hannesdorfmann.adaptercommands.ItemKeyProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class SortedLiveListTest {
+
+  /**
+   * Identified by id, sorted by score
+   */
+  static class Player {
+    final long id;
+    final int score;
+
+    Player(long id, int score) {
+      this.id = id;
+      this.score = score;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Player && ((Player) o).id == id;
+    }
+
+    @Override public int hashCode() {
+      return (int) id;
+    }
+
+    @Override public String toString() {
+      return id + ":" + score;
+    }
+  }
+
+  private static final Comparator<Player> BY_SCORE = new Comparator<Player>() {
+    @Override public int compare(Player lhs, Player rhs) {
+      return lhs.score < rhs.score ? -1 : (lhs.score == rhs.score ? 0 : 1);
+    }
+  };
+
+  private static final ItemKeyProvider<Player> KEY = new ItemKeyProvider<Player>() {
+    @Override public long getKey(Player item) {
+      return item.id;
+    }
+  };
+
+  @Test public void insertUpdateRemove() {
+    SortedLiveList<Player> list = new SortedLiveList<>(BY_SCORE, KEY);
+
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemInsertedCommand(0)),
+        list.put(new Player(1, 10)));
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemInsertedCommand(1)),
+        list.put(new Player(2, 20)));
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemInsertedCommand(1)),
+        list.put(new Player(3, 15)));
+
+    // Same position
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemChangedCommand(1)),
+        list.put(new Player(3, 16)));
+
+    // Moved to the end
+    Assert.assertEquals(
+        Arrays.<AdapterCommand>asList(new ItemMovedCommand(0, 2), new ItemChangedCommand(2)),
+        list.put(new Player(1, 30)));
+    Assert.assertEquals(2, list.indexOfKey(1));
+
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRemovedCommand(0)), list.remove(3));
+    Assert.assertTrue(list.remove(3).isEmpty());
+    Assert.assertEquals(2, list.size());
+  }
+
+  @Test public void unchangedItemIsNotReported() {
+    SortedLiveList<Player> list =
+        new SortedLiveList<>(BY_SCORE, KEY, new ItemChangedDetector<Player>() {
+          @Override public boolean hasChanged(Player oldItem, Player newItem) {
+            return oldItem.score != newItem.score;
+          }
+        });
+    list.put(new Player(1, 10));
+    Assert.assertTrue(list.put(new Player(1, 10)).isEmpty());
+  }
+
+  @Test public void batchCoalescesToRanges() {
+    SortedLiveList<Player> list = new SortedLiveList<>(BY_SCORE, KEY);
+    List<Player> players = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      players.add(new Player(i, i));
+    }
+    List<AdapterCommand> commands = list.putAll(players);
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRangeInsertedCommand(0, 10)),
+        commands);
+
+    list.beginBatch();
+    for (int i = 3; i < 6; i++) {
+      Assert.assertTrue(list.remove(i).isEmpty());
+    }
+    Assert.assertEquals(Arrays.<AdapterCommand>asList(new ItemRangeRemovedCommand(3, 3)),
+        list.endBatch());
+  }
+
+  @Test public void randomOperations() {
+    Random random = new Random(42);
+    SortedLiveList<Player> list = new SortedLiveList<>(BY_SCORE, KEY);
+    for (int round = 0; round < 300; round++) {
+      List<Player> before = new ArrayList<>(list.asList());
+      boolean batch = random.nextInt(4) == 0;
+      if (batch) {
+        list.beginBatch();
+      }
+
+      List<AdapterCommand> commands = new ArrayList<>();
+      int operations = batch ? 1 + random.nextInt(10) : 1;
+      for (int i = 0; i < operations; i++) {
+        long id = random.nextInt(30);
+        if (random.nextInt(3) == 0) {
+          commands.addAll(list.remove(id));
+        } else {
+          commands.addAll(list.put(new Player(id, random.nextInt(20))));
+        }
+      }
+      if (batch) {
+        commands = list.endBatch();
+      }
+
+      List<Player> after = list.asList();
+      // Batches may fold a removed and an inserted item into a change
+      new ShadowList(before).apply(commands).assertBoundTo(after);
+      for (int i = 1; i < after.size(); i++) {
+        Assert.assertTrue(after.get(i - 1).score <= after.get(i).score);
+      }
+    }
+  }
+}
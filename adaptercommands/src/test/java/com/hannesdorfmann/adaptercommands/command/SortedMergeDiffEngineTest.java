@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class SortedMergeDiffEngineTest {
+
+  private static final Comparator<Integer> NATURAL = new Comparator<Integer>() {
+    @Override public int compare(Integer lhs, Integer rhs) {
+      return lhs.compareTo(rhs);
+    }
+  };
+
+  @Test public void insertRemoveSorted() {
+    DiffCommandsCalculator<Integer> calculator = newCalculator(NATURAL);
+    calculator.diff(list(1, 3, 5, 7));
+
+    List<AdapterCommand> commands = calculator.diff(list(0, 1, 5, 6, 7, 8));
+    Assert.assertEquals(4, commands.size());
+    Assert.assertEquals(new ItemInsertedCommand(0), commands.get(0));
+    Assert.assertEquals(new ItemRemovedCommand(2), commands.get(1));
+    Assert.assertEquals(new ItemInsertedCommand(3), commands.get(2));
+    Assert.assertEquals(new ItemInsertedCommand(5), commands.get(3));
+  }
+
+  @Test public void sameResultAsLcsForSortedLists() {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      List<Integer> oldList = randomSortedList(random);
+      List<Integer> newList = randomSortedList(random);
+
+      DiffCommandsCalculator<Integer> sorted = newCalculator(NATURAL);
+      DiffCommandsCalculator<Integer> lcs = new DiffCommandsCalculator<>();
+      sorted.diff(oldList);
+      lcs.diff(oldList);
+
+      List<AdapterCommand> sortedCommands = sorted.diff(newList);
+      List<AdapterCommand> lcsCommands = lcs.diff(newList);
+
+      new ShadowList(oldList).apply(sortedCommands).assertTransformedTo(newList);
+      Assert.assertEquals(lcsCommands.size(), sortedCommands.size());
+    }
+  }
+
+  @Test public void equalRankDifferentItems() {
+    // Sorted by tens only, so 11, 12 and 13 have the same rank
+    Comparator<Integer> tens = new Comparator<Integer>() {
+      @Override public int compare(Integer lhs, Integer rhs) {
+        return lhs / 10 - rhs / 10;
+      }
+    };
+
+    DiffCommandsCalculator<Integer> calculator = newCalculator(tens);
+    List<Integer> oldList = list(5, 11, 12, 13, 20);
+    List<Integer> newList = list(5, 13, 14, 11, 20);
+    calculator.diff(oldList);
+
+    List<AdapterCommand> commands = calculator.diff(newList);
+    new ShadowList(oldList).apply(commands).assertTransformedTo(newList);
+  }
+
+  @Test public void unsortedListsStillCorrect() {
+    DiffCommandsCalculator<Integer> calculator = newCalculator(NATURAL);
+    List<Integer> oldList = list(5, 1, 4, 2);
+    List<Integer> newList = list(2, 5, 3, 1);
+    calculator.diff(oldList);
+
+    List<AdapterCommand> commands = calculator.diff(newList);
+    new ShadowList(oldList).apply(commands).assertTransformedTo(newList);
+  }
+
+  private DiffCommandsCalculator<Integer> newCalculator(Comparator<Integer> comparator) {
+    return new DiffCommandsCalculator<>(false, null, new SortedMergeDiffEngine<>(comparator));
+  }
+
+  private List<Integer> randomSortedList(Random random) {
+    List<Integer> list = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      if (random.nextBoolean()) {
+        list.add(i);
+      }
+    }
+    Collections.sort(list);
+    return list;
+  }
+
+  private List<Integer> list(Integer... items) {
+    List<Integer> list = new ArrayList<>();
+    Collections.addAll(list, items);
+    return list;
+  }
+}
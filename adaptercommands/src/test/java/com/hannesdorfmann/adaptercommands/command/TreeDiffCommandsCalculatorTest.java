@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016 Hannes Dorfmann
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.hannesdorfmann.adaptercommands.command;
+
+import com.hannesdorfmann.adaptercommands.ItemFingerprinter;
+import com.hannesdorfmann.adaptercommands.TreeNodeProvider;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Hannes Dorfmann
+ */
+public class TreeDiffCommandsCalculatorTest {
+
+  private int nextId;
+  private TreeDiffCommandsCalculator<Node> calculator;
+
+  @Before public void init() {
+    nextId = 0;
+    calculator = new TreeDiffCommandsCalculator<>(false, new Provider(), new Fingerprinter());
+  }
+
+  @Test public void expandAndCollapseAreSingleRangeCommands() {
+    Node a = node(node(), node(node(), node()), node());
+    Node b = node();
+    List<Node> roots = list(a, b);
+    calculator.diff(roots);
+
+    a.expanded = true;
+    List<AdapterCommand> commands = calculator.diff(roots);
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals(new ItemRangeInsertedCommand(1, 3), commands.get(0));
+
+    a.children.get(1).expanded = true;
+    commands = calculator.diff(roots);
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals(new ItemRangeInsertedCommand(3, 2), commands.get(0));
+    Assert.assertEquals(7, calculator.getFlattenedSize());
+
+    a.expanded = false;
+    commands = calculator.diff(roots);
+    Assert.assertEquals(1, commands.size());
+    Assert.assertEquals(new ItemRangeRemovedCommand(1, 5), commands.get(0));
+  }
+
+  @Test public void changedNodeAndInsertedChild() {
+    Node child = node();
+    Node a = node(child);
+    a.expanded = true;
+    List<Node> roots = list(node(), a, node());
+    calculator.diff(roots);
+
+    child.value = "changed";
+    a.children.add(0, node());
+    List<AdapterCommand> commands = calculator.diff(roots);
+    Assert.assertEquals(2, commands.size());
+    Assert.assertEquals(new ItemInsertedCommand(2), commands.get(0));
+    Assert.assertEquals(new ItemChangedCommand(3), commands.get(1));
+  }
+
+  @Test public void randomTreesMatchFlattenedLists() {
+    Random random = new Random(7);
+    List<Node> roots = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      roots.add(randomNode(random, 3));
+    }
+    calculator.diff(roots);
+    List<Long> flattened = flatten(roots);
+
+    for (int round = 0; round < 300; round++) {
+      mutate(random, roots, 0);
+      List<AdapterCommand> commands = calculator.diff(roots);
+      List<Long> newFlattened = flatten(roots);
+      new ShadowList(flattened).apply(commands).assertTransformedTo(newFlattened);
+      Assert.assertEquals(newFlattened.size(), calculator.getFlattenedSize());
+      flattened = newFlattened;
+    }
+  }
+
+  private void mutate(Random random, List<Node> nodes, int depth) {
+    int action = random.nextInt(10);
+    if (action == 0 || nodes.isEmpty()) {
+      nodes.add(random.nextInt(nodes.size() + 1), randomNode(random, 2));
+    } else if (action == 1) {
+      nodes.remove(random.nextInt(nodes.size()));
+    } else {
+      Node node = nodes.get(random.nextInt(nodes.size()));
+      if (action == 2) {
+        node.expanded = !node.expanded;
+      } else if (action == 3) {
+        node.value = "v" + random.nextInt();
+      } else if (depth < 4) {
+        mutate(random, node.children, depth + 1);
+      }
+    }
+  }
+
+  private Node randomNode(Random random, int depth) {
+    Node node = node();
+    node.expanded = random.nextBoolean();
+    if (depth > 0) {
+      int children = random.nextInt(4);
+      for (int i = 0; i < children; i++) {
+        node.children.add(randomNode(random, depth - 1));
+      }
+    }
+    return node;
+  }
+
+  private List<Long> flatten(List<Node> nodes) {
+    List<Long> result = new ArrayList<>();
+    flatten(nodes, result);
+    return result;
+  }
+
+  private void flatten(List<Node> nodes, List<Long> result) {
+    for (Node node : nodes) {
+      result.add(node.id);
+      if (node.expanded) {
+        flatten(node.children, result);
+      }
+    }
+  }
+
+  private Node node(Node... children) {
+    Node node = new Node(nextId++);
+    for (Node child : children) {
+      node.children.add(child);
+    }
+    return node;
+  }
+
+  private List<Node> list(Node... nodes) {
+    List<Node> list = new ArrayList<>();
+    for (Node node : nodes) {
+      list.add(node);
+    }
+    return list;
+  }
+
+  static class Node {
+    final long id;
+    String value = "";
+    boolean expanded;
+    final List<Node> children = new ArrayList<>();
+
+    Node(long id) {
+      this.id = id;
+    }
+  }
+
+  static class Provider implements TreeNodeProvider<Node> {
+    @Override public long getId(Node node) {
+      return node.id;
+    }
+
+    /**
+     * Content based version, changes whenever anything in the subtree changes
+     */
+    @Override public long getVersion(Node node) {
+      long version = node.value.hashCode() * 31L + (node.expanded ? 1 : 0);
+      for (Node child : node.children) {
+        version = version * 31 + child.id;
+        version = version * 31 + getVersion(child);
+      }
+      return version;
+    }
+
+    @Override public boolean isExpanded(Node node) {
+      return node.expanded;
+    }
+
+    @Override public List<Node> getChildren(Node node) {
+      return node.children;
+    }
+  }
+
+  static class Fingerprinter implements ItemFingerprinter<Node> {
+    @Override public long fingerprint(Node node) {
+      return node.value.hashCode();
+    }
+  }
+}